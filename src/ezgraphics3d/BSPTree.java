@@ -0,0 +1,586 @@
+package ezgraphics3d;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * BSPTree Class.
+ * A binary space partitioning tree over the triangles of a static mesh. Every node is the plane of
+ * one of the triangles (or an axis aligned plane that halves a convex part), with the triangles that
+ * lie in that plane, a subtree in front of the plane and a subtree behind it. Triangles that cross
+ * a plane are split in two.
+ *
+ * Walking the tree and always visiting the side of each plane the camera is NOT on first gives
+ * the triangles in exact back to front order for any camera position, so a mesh with a tree never
+ * has to be depth sorted. Building the tree is slow and it holds its own (split) copy of the
+ * geometry, so it is meant to be built once, saved with save() and loaded with load().
+ * Attach it to the mesh with Mesh.setBSPTree().
+ * @author Ryan Theriot
+ */
+public class BSPTree implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Vertices closer to a plane than this are treated as being on it */
+	public static final float PLANE_EPSILON = 1e-5f;
+	/** Number of triangles tried as the splitting plane of each node */
+	private static final int SPLITTER_CANDIDATES = 16;
+	/** How much worse a split triangle is than an unbalanced tree when picking a plane */
+	private static final int SPLIT_WEIGHT = 8;
+	/** Largest number of triangles that is checked for being convex, which takes time squared in it */
+	private static final int CONVEX_LEAF_LIMIT = 1024;
+
+	/** The split geometry. Triangles are ordered so every node's triangles are one range */
+	private float[] positions;
+	private int numVertices;
+	private int[] indices;
+	private int numTriangles;
+
+	/** The nodes. Node 0 is the root, -1 means no child */
+	private float[] planes;
+	private int[] front;
+	private int[] back;
+	private int[] triangleStart;
+	private int[] triangleCount;
+	/** True for a leaf over a convex part, whose triangles are ordered by which way they face. Null in trees saved without them */
+	private boolean[] convex;
+	private int numNodes;
+
+	/** Reused by traverse */
+	private transient int[] order;
+	private transient int[] stack;
+
+	/** Used while building */
+	private transient float[] buildPositions;
+	private transient int buildVertices;
+	private transient int[] buildIndices;
+	private transient int buildTriangles;
+
+	private BSPTree() {
+	}
+
+	/**
+	 * Builds a tree over a mesh's triangles, in the mesh's model space. The mesh is not changed
+	 * @param mesh The mesh
+	 * @return The tree
+	 */
+	public static BSPTree build(Mesh mesh) {
+		BSPTree tree = new BSPTree();
+		tree.buildTree(mesh);
+		return tree;
+	}
+
+	private void buildTree(Mesh mesh) {
+		buildVertices = mesh.getNumVertices();
+		buildPositions = Arrays.copyOf(mesh.getPositions(), Math.max(3, buildVertices * 3 * 2));
+		buildTriangles = mesh.getNumTriangles();
+		buildIndices = Arrays.copyOf(mesh.getIndices(), Math.max(3, buildTriangles * 3 * 2));
+
+		int capacity = Math.max(1, buildTriangles);
+		planes = new float[capacity * 4];
+		front = new int[capacity];
+		back = new int[capacity];
+		triangleStart = new int[capacity];
+		triangleCount = new int[capacity];
+		convex = new boolean[capacity];
+		numNodes = 0;
+
+		positions = new float[0];
+		indices = new int[Math.max(3, buildTriangles * 3)];
+		numTriangles = 0;
+
+		int[] all = new int[buildTriangles];
+		for (int i = 0; i < buildTriangles; i++) all[i] = i;
+
+		/** Nodes are built from a work stack instead of recursively, so a deep tree can not overflow the call stack */
+		ArrayDeque<BuildTask> tasks = new ArrayDeque<BuildTask>();
+		if (buildTriangles > 0) tasks.push(new BuildTask(all, buildTriangles, -1, false));
+		while (!tasks.isEmpty()) {
+			buildNode(tasks.pop(), tasks);
+		}
+
+		numVertices = buildVertices;
+		positions = Arrays.copyOf(buildPositions, numVertices * 3);
+		indices = Arrays.copyOf(indices, numTriangles * 3);
+		planes = Arrays.copyOf(planes, numNodes * 4);
+		front = Arrays.copyOf(front, numNodes);
+		back = Arrays.copyOf(back, numNodes);
+		triangleStart = Arrays.copyOf(triangleStart, numNodes);
+		triangleCount = Arrays.copyOf(triangleCount, numNodes);
+		convex = Arrays.copyOf(convex, numNodes);
+		buildPositions = null;
+		buildIndices = null;
+	}
+
+	/** A node that still has to be built: its triangles and where it hangs in the tree */
+	private static class BuildTask {
+		int[] triangles;
+		int count;
+		int parent;
+		boolean inFront;
+
+		BuildTask(int[] triangles, int count, int parent, boolean inFront) {
+			this.triangles = triangles;
+			this.count = count;
+			this.parent = parent;
+			this.inFront = inFront;
+		}
+	}
+
+	/**
+	 * Builds a node over a list of build triangles and pushes its children. The back child is
+	 * pushed first, so nodes are still numbered front subtree first
+	 */
+	private void buildNode(BuildTask task, ArrayDeque<BuildTask> tasks) {
+		int[] triangles = task.triangles;
+		int count = task.count;
+		int node = numNodes++;
+		if (node == front.length) growNodes();
+		if (task.parent >= 0) {
+			if (task.inFront) front[task.parent] = node;
+			else back[task.parent] = node;
+		}
+		front[node] = -1;
+		back[node] = -1;
+
+		/** A convex part needs no splitting at all, see traverse() */
+		if (count <= CONVEX_LEAF_LIMIT && isConvex(triangles, count)) {
+			convex[node] = true;
+			triangleStart[node] = numTriangles;
+			for (int i = 0; i < count; i++) emit(triangles[i]);
+			triangleCount[node] = count;
+			return;
+		}
+
+		float[] plane = new float[4];
+		int splitter = pickSplitter(triangles, count, plane);
+		System.arraycopy(plane, 0, planes, node * 4, 4);
+
+		int[] frontList = new int[count];
+		int[] backList = new int[count];
+		int frontCount = 0, backCount = 0;
+		HashMap<Long, Integer> splitVertices = new HashMap<Long, Integer>();
+
+		triangleStart[node] = numTriangles;
+		for (int i = 0; i < count; i++) {
+			int t = triangles[i];
+			int side = classify(t, plane);
+
+			/** A splitter triangle always stays in its node, even if it has no area, so every node makes progress */
+			if (side == 0 || t == splitter) {
+				emit(t);
+			} else if (side == 1) {
+				frontList = add(frontList, frontCount++, t);
+			} else if (side == -1) {
+				backList = add(backList, backCount++, t);
+			} else {
+				/** The triangle crosses the plane, split it into a polygon on each side and fan them into triangles */
+				int[] frontPolygon = new int[4];
+				int[] backPolygon = new int[4];
+				int frontSize = 0, backSize = 0;
+
+				for (int k = 0; k < 3; k++) {
+					int v = buildIndices[t * 3 + k];
+					int w = buildIndices[t * 3 + (k + 1) % 3];
+					float dv = distance(v, plane);
+					float dw = distance(w, plane);
+
+					if (dv >= -PLANE_EPSILON) frontPolygon[frontSize++] = v;
+					if (dv <= PLANE_EPSILON) backPolygon[backSize++] = v;
+					if ((dv > PLANE_EPSILON && dw < -PLANE_EPSILON) || (dv < -PLANE_EPSILON && dw > PLANE_EPSILON)) {
+						int split = splitEdge(v, w, plane, splitVertices);
+						frontPolygon[frontSize++] = split;
+						backPolygon[backSize++] = split;
+					}
+				}
+
+				for (int k = 2; k < frontSize; k++) {
+					frontList = add(frontList, frontCount++, addBuildTriangle(frontPolygon[0], frontPolygon[k - 1], frontPolygon[k]));
+				}
+				for (int k = 2; k < backSize; k++) {
+					backList = add(backList, backCount++, addBuildTriangle(backPolygon[0], backPolygon[k - 1], backPolygon[k]));
+				}
+			}
+		}
+		triangleCount[node] = numTriangles - triangleStart[node];
+
+		if (backCount > 0) tasks.push(new BuildTask(backList, backCount, node, false));
+		if (frontCount > 0) tasks.push(new BuildTask(frontList, frontCount, node, true));
+	}
+
+	/** classify() result for a triangle with vertices on both sides of the plane */
+	private static final int SPANNING = -2;
+
+	/**
+	 * Which side of a plane a triangle is on
+	 * @return 1 for in front, -1 for behind, 0 for in the plane, SPANNING for both sides
+	 */
+	private int classify(int triangle, float[] plane) {
+		boolean inFront = false, behind = false;
+		for (int k = 0; k < 3; k++) {
+			float d = distance(buildIndices[triangle * 3 + k], plane);
+			if (d > PLANE_EPSILON) inFront = true;
+			else if (d < -PLANE_EPSILON) behind = true;
+		}
+		if (inFront && behind) return SPANNING;
+		if (inFront) return 1;
+		if (behind) return -1;
+		return 0;
+	}
+
+	/**
+	 * Picks the splitting plane among a few evenly spaced triangles and one axis aligned plane through
+	 * the middle of the triangles, preferring planes that split few triangles and leave about as many
+	 * in front as behind. A convex part has every other triangle behind each of its own planes, so
+	 * without the axis aligned plane it would be taken apart one triangle per node
+	 * @param plane Gets the plane
+	 * @return The triangle whose plane it is, or -1 for the axis aligned plane
+	 */
+	private int pickSplitter(int[] triangles, int count, float[] plane) {
+		int step = Math.max(1, count / SPLITTER_CANDIDATES);
+		float[] candidatePlane = new float[4];
+		int best = triangles[0];
+		long bestScore = Long.MAX_VALUE;
+		trianglePlane(best, plane, 0);
+
+		for (int i = 0; i < count; i += step) {
+			int candidate = triangles[i];
+			if (!trianglePlane(candidate, candidatePlane, 0)) continue;
+
+			long score = score(triangles, count, candidatePlane, false);
+			if (score < bestScore) {
+				bestScore = score;
+				best = candidate;
+				System.arraycopy(candidatePlane, 0, plane, 0, 4);
+			}
+		}
+
+		if (count > 1 && medianPlane(triangles, count, candidatePlane)) {
+			long score = score(triangles, count, candidatePlane, true);
+			if (score < bestScore) {
+				best = -1;
+				System.arraycopy(candidatePlane, 0, plane, 0, 4);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Whether a list of triangles is convex: no triangle has a vertex of any of the others in front of its plane
+	 */
+	private boolean isConvex(int[] triangles, int count) {
+		float[] plane = new float[4];
+		for (int i = 0; i < count; i++) {
+			if (!trianglePlane(triangles[i], plane, 0)) continue;
+			for (int j = 0; j < count; j++) {
+				int t = triangles[j] * 3;
+				for (int k = 0; k < 3; k++) {
+					if (distance(buildIndices[t + k], plane) > PLANE_EPSILON) return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Scores a splitting plane, lower is better
+	 * @param mustShrink True if the plane has no triangle of its own, it is then only allowed if both sides get smaller
+	 * @return The score, Long.MAX_VALUE if the plane is not allowed
+	 */
+	private long score(int[] triangles, int count, float[] plane, boolean mustShrink) {
+		int frontCount = 0, backCount = 0, splits = 0;
+		for (int j = 0; j < count; j++) {
+			int side = classify(triangles[j], plane);
+			if (side == SPANNING) splits++;
+			else if (side > 0) frontCount++;
+			else if (side < 0) backCount++;
+		}
+
+		/** A split triangle can become two on each side */
+		if (mustShrink && (frontCount + 2 * splits >= count || backCount + 2 * splits >= count)) return Long.MAX_VALUE;
+		return (long) splits * SPLIT_WEIGHT + Math.abs(frontCount - backCount);
+	}
+
+	/**
+	 * Writes the axis aligned plane through the median triangle center, across the longest side of the centers' bounds
+	 * @return False if all the centers are the same point
+	 */
+	private boolean medianPlane(int[] triangles, int count, float[] dst) {
+		float[] p = buildPositions;
+		float[] centers = new float[count * 3];
+		float[] min = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+		float[] max = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+
+		for (int i = 0; i < count; i++) {
+			int t = triangles[i] * 3;
+			for (int axis = 0; axis < 3; axis++) {
+				float c = (p[buildIndices[t] * 3 + axis] + p[buildIndices[t + 1] * 3 + axis] + p[buildIndices[t + 2] * 3 + axis]) / 3;
+				centers[axis * count + i] = c;
+				min[axis] = Math.min(min[axis], c);
+				max[axis] = Math.max(max[axis], c);
+			}
+		}
+
+		int axis = 0;
+		for (int k = 1; k < 3; k++) {
+			if (max[k] - min[k] > max[axis] - min[axis]) axis = k;
+		}
+		if (max[axis] - min[axis] <= PLANE_EPSILON) return false;
+
+		float[] values = Arrays.copyOfRange(centers, axis * count, axis * count + count);
+		Arrays.sort(values);
+		dst[0] = 0; dst[1] = 0; dst[2] = 0;
+		dst[axis] = 1;
+		dst[3] = -values[count / 2];
+		return true;
+	}
+
+	/**
+	 * Writes the normalized plane of a triangle
+	 * @return False if the triangle has no area
+	 */
+	private boolean trianglePlane(int triangle, float[] dst, int offset) {
+		float[] p = buildPositions;
+		int a = buildIndices[triangle * 3] * 3;
+		int b = buildIndices[triangle * 3 + 1] * 3;
+		int c = buildIndices[triangle * 3 + 2] * 3;
+
+		float ux = p[b] - p[a], uy = p[b + 1] - p[a + 1], uz = p[b + 2] - p[a + 2];
+		float vx = p[c] - p[a], vy = p[c + 1] - p[a + 1], vz = p[c + 2] - p[a + 2];
+		float nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+		float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+		if (length == 0) {
+			/** A degenerate triangle still needs a plane through it */
+			dst[offset] = 0; dst[offset + 1] = 1; dst[offset + 2] = 0; dst[offset + 3] = -p[a + 1];
+			return false;
+		}
+		dst[offset] = nx / length;
+		dst[offset + 1] = ny / length;
+		dst[offset + 2] = nz / length;
+		dst[offset + 3] = -(dst[offset] * p[a] + dst[offset + 1] * p[a + 1] + dst[offset + 2] * p[a + 2]);
+		return true;
+	}
+
+	private float distance(int vertex, float[] plane) {
+		float[] p = buildPositions;
+		return plane[0] * p[vertex * 3] + plane[1] * p[vertex * 3 + 1] + plane[2] * p[vertex * 3 + 2] + plane[3];
+	}
+
+	/**
+	 * Adds the vertex where an edge crosses a plane. The same edge always gives the same vertex,
+	 * so neighboring triangles split by the plane stay connected
+	 */
+	private int splitEdge(int v, int w, float[] plane, HashMap<Long, Integer> splitVertices) {
+		int lo = Math.min(v, w), hi = Math.max(v, w);
+		Long key = ((long) lo << 32) | hi;
+		Integer existing = splitVertices.get(key);
+		if (existing != null) return existing;
+
+		float dLo = distance(lo, plane);
+		float dHi = distance(hi, plane);
+		float t = dLo / (dLo - dHi);
+		float[] p = buildPositions;
+
+		if (buildVertices * 3 + 3 > p.length) {
+			buildPositions = p = Arrays.copyOf(p, p.length * 2);
+		}
+		int o = buildVertices * 3;
+		p[o] = p[lo * 3] + (p[hi * 3] - p[lo * 3]) * t;
+		p[o + 1] = p[lo * 3 + 1] + (p[hi * 3 + 1] - p[lo * 3 + 1]) * t;
+		p[o + 2] = p[lo * 3 + 2] + (p[hi * 3 + 2] - p[lo * 3 + 2]) * t;
+
+		splitVertices.put(key, buildVertices);
+		return buildVertices++;
+	}
+
+	private int addBuildTriangle(int a, int b, int c) {
+		if (buildTriangles * 3 + 3 > buildIndices.length) {
+			buildIndices = Arrays.copyOf(buildIndices, buildIndices.length * 2);
+		}
+		buildIndices[buildTriangles * 3] = a;
+		buildIndices[buildTriangles * 3 + 1] = b;
+		buildIndices[buildTriangles * 3 + 2] = c;
+		return buildTriangles++;
+	}
+
+	/**
+	 * Adds a build triangle to the final triangles, in the node that is being built
+	 */
+	private void emit(int triangle) {
+		if (numTriangles * 3 + 3 > indices.length) {
+			indices = Arrays.copyOf(indices, indices.length * 2);
+		}
+		System.arraycopy(buildIndices, triangle * 3, indices, numTriangles * 3, 3);
+		numTriangles++;
+	}
+
+	private static int[] add(int[] list, int size, int value) {
+		if (size == list.length) list = Arrays.copyOf(list, Math.max(4, size * 2));
+		list[size] = value;
+		return list;
+	}
+
+	private void growNodes() {
+		int capacity = front.length * 2;
+		planes = Arrays.copyOf(planes, capacity * 4);
+		front = Arrays.copyOf(front, capacity);
+		back = Arrays.copyOf(back, capacity);
+		triangleStart = Arrays.copyOf(triangleStart, capacity);
+		triangleCount = Arrays.copyOf(triangleCount, capacity);
+		convex = Arrays.copyOf(convex, capacity);
+	}
+
+	/**
+	 * Walks the tree and lists every triangle from farthest to closest to a point
+	 * @param eyeX X of the camera in the mesh's model space
+	 * @param eyeY Y of the camera in the mesh's model space
+	 * @param eyeZ Z of the camera in the mesh's model space
+	 * @return The number of triangles, always getNumTriangles(). They are read with getOrder()
+	 */
+	public int traverse(float eyeX, float eyeY, float eyeZ) {
+		if (order == null || order.length < numTriangles) {
+			order = new int[numTriangles];
+		}
+		if (stack == null) {
+			stack = new int[64];
+		}
+
+		int count = 0;
+		int top = 0;
+		if (numNodes > 0) stack[top++] = 0;
+
+		/** Entries >= 0 visit a node, entries < 0 output the triangles of node -entry - 1 */
+		while (top > 0) {
+			int entry = stack[--top];
+
+			if (entry < 0) {
+				int node = -entry - 1;
+				for (int t = triangleStart[node], end = t + triangleCount[node]; t < end; t++) {
+					order[count++] = t;
+				}
+				continue;
+			}
+
+			if (convex != null && convex[entry]) {
+				count = convexOrder(entry, eyeX, eyeY, eyeZ, count);
+				continue;
+			}
+
+			int o = entry * 4;
+			float side = planes[o] * eyeX + planes[o + 1] * eyeY + planes[o + 2] * eyeZ + planes[o + 3];
+			int near = (side >= 0) ? front[entry] : back[entry];
+			int far = (side >= 0) ? back[entry] : front[entry];
+
+			if (top + 3 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+			if (near >= 0) stack[top++] = near;
+			stack[top++] = -entry - 1;
+			if (far >= 0) stack[top++] = far;
+		}
+		return count;
+	}
+
+	/**
+	 * Lists the triangles of a convex leaf. Any line crosses a convex part at most twice, leaving it
+	 * through a triangle that faces away from the camera and entering it through one that faces it,
+	 * so all the triangles facing away come first and no two triangles facing the same way overlap
+	 * @return The new number of triangles in order
+	 */
+	private int convexOrder(int node, float eyeX, float eyeY, float eyeZ, int count) {
+		int start = triangleStart[node], end = start + triangleCount[node];
+		for (int pass = 0; pass < 2; pass++) {
+			for (int t = start; t < end; t++) {
+				if (facesEye(t, eyeX, eyeY, eyeZ) == (pass == 1)) order[count++] = t;
+			}
+		}
+		return count;
+	}
+
+	private boolean facesEye(int triangle, float eyeX, float eyeY, float eyeZ) {
+		float[] p = positions;
+		int a = indices[triangle * 3] * 3;
+		int b = indices[triangle * 3 + 1] * 3;
+		int c = indices[triangle * 3 + 2] * 3;
+
+		float ux = p[b] - p[a], uy = p[b + 1] - p[a + 1], uz = p[b + 2] - p[a + 2];
+		float vx = p[c] - p[a], vy = p[c + 1] - p[a + 1], vz = p[c + 2] - p[a + 2];
+		float nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+		return nx * (eyeX - p[a]) + ny * (eyeY - p[a + 1]) + nz * (eyeZ - p[a + 2]) > 0;
+	}
+
+	/**
+	 * Returns the triangle order from the last traverse()
+	 * @return Triangle indices, farthest first
+	 */
+	public int[] getOrder() {
+		return order;
+	}
+
+	/**
+	 * Returns the split vertex positions, 3 floats (x, y, z) per vertex
+	 * @return The positions. Do not modify them
+	 */
+	public float[] getPositions() {
+		return positions;
+	}
+
+	/**
+	 * Returns the split triangles, 3 vertex indices per triangle
+	 * @return The indices. Do not modify them
+	 */
+	public int[] getIndices() {
+		return indices;
+	}
+
+	public int getNumVertices() {
+		return numVertices;
+	}
+
+	public int getNumTriangles() {
+		return numTriangles;
+	}
+
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	/**
+	 * Saves the tree to a file
+	 * @param file The file to write
+	 * @throws IOException If the file can not be written
+	 */
+	public void save(File file) throws IOException {
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+		try {
+			out.writeObject(this);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Loads a tree saved with save()
+	 * @param file The file to read
+	 * @return The tree
+	 * @throws IOException If the file can not be read or is not a BSPTree
+	 */
+	public static BSPTree load(File file) throws IOException {
+		ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+		try {
+			return (BSPTree) in.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Not a BSPTree file: " + file, e);
+		} finally {
+			in.close();
+		}
+	}
+
+}
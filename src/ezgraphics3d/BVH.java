@@ -0,0 +1,543 @@
+package ezgraphics3d;
+
+import java.util.Arrays;
+
+/**
+ * BVH Class.
+ * A bounding volume hierarchy over a set of primitives that are each given as an axis aligned box.
+ * It knows nothing about what the primitives are, so the same tree is used for the triangles of a mesh
+ * (MeshBVH) and for the meshes of a scene (SceneBVH).
+ *
+ * The tree is built top down with the surface area heuristic: the primitives are put into bins along
+ * the longest axis and the split that makes (area of left box * primitives on the left + the same for
+ * the right) smallest is used. Nodes are stored in flat arrays, and the primitives of every node are a
+ * contiguous range of one array, so a whole subtree can be collected without visiting its children.
+ *
+ * When a primitive's box changes, update() marks its leaf and refit() grows or shrinks only the
+ * boxes on the way from the changed leaves up to the root. The tree is not rebuilt.
+ * @author Ryan Theriot
+ */
+public class BVH {
+
+	/** Nodes with this many primitives or fewer are always leaves */
+	public static final int MAX_LEAF_SIZE = 4;
+	/** Nodes with more primitives than this are always split, even if the heuristic says not to */
+	private static final int MAX_SAH_LEAF_SIZE = 16;
+	/** Number of bins the primitives are sorted into when looking for a split */
+	private static final int BINS = 16;
+	/** Deeper than this, splits are made at the median so the tree never gets too deep */
+	private static final int MAX_SAH_DEPTH = 64;
+
+	/**
+	 * Tests a ray against one primitive. Used by raycast()
+	 */
+	public interface RayTest {
+		/**
+		 * @param primitive The primitive to test
+		 * @param maxDistance Hits farther than this can be ignored
+		 * @return The distance along the ray to the hit, or Float.POSITIVE_INFINITY if there is none
+		 */
+		float intersect(int primitive, float maxDistance);
+	}
+
+	/** Box of every primitive, 6 floats (minX, minY, minZ, maxX, maxY, maxZ) each */
+	private float[] boxes = new float[0];
+	private int numPrimitives;
+
+	/** Primitive indices ordered so every node's primitives are one range */
+	private int[] order = new int[0];
+	/** The leaf each primitive is in */
+	private int[] leafOf = new int[0];
+
+	/** The nodes. Node 0 is the root and an inner node's left child is the node right after it */
+	private float[] nodeBounds = new float[0];
+	private int[] nodeStart = new int[0];
+	private int[] nodeSize = new int[0];
+	private int[] nodeRight = new int[0];
+	private int[] nodeParent = new int[0];
+	private int numNodes;
+
+	/** Leaves whose primitives moved since the last refit */
+	private boolean[] nodeDirty = new boolean[0];
+	private int[] dirtyLeaves = new int[16];
+	private int numDirtyLeaves;
+
+	/** Reused by build */
+	private float[] centroids = new float[0];
+	private int[] binCounts = new int[BINS];
+	private float[] binBounds = new float[BINS * 6];
+	private float[] rightAreas = new float[BINS];
+	private float[] bounds = new float[6];
+
+	/** Reused by the queries */
+	private int[] stack = new int[128];
+	private int[] results = new int[64];
+	private int numResults;
+	private int hitPrimitive = -1;
+
+	/**
+	 * Builds the tree
+	 * @param primitiveBoxes 6 floats (minX, minY, minZ, maxX, maxY, maxZ) per primitive. Copied
+	 * @param count Number of primitives
+	 */
+	public void build(float[] primitiveBoxes, int count) {
+		numPrimitives = count;
+		if (boxes.length < count * 6) {
+			boxes = new float[count * 6];
+			centroids = new float[count * 3];
+			order = new int[count];
+			leafOf = new int[count];
+		}
+		System.arraycopy(primitiveBoxes, 0, boxes, 0, count * 6);
+
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+			centroids[i * 3] = (boxes[i * 6] + boxes[i * 6 + 3]) / 2;
+			centroids[i * 3 + 1] = (boxes[i * 6 + 1] + boxes[i * 6 + 4]) / 2;
+			centroids[i * 3 + 2] = (boxes[i * 6 + 2] + boxes[i * 6 + 5]) / 2;
+		}
+
+		int maxNodes = Math.max(1, 2 * count - 1);
+		if (nodeStart.length < maxNodes) {
+			nodeBounds = new float[maxNodes * 6];
+			nodeStart = new int[maxNodes];
+			nodeSize = new int[maxNodes];
+			nodeRight = new int[maxNodes];
+			nodeParent = new int[maxNodes];
+			nodeDirty = new boolean[maxNodes];
+		}
+		numNodes = 0;
+		numDirtyLeaves = 0;
+		Arrays.fill(nodeDirty, false);
+
+		buildNode(-1, 0, count, 0);
+	}
+
+	/**
+	 * Builds a node over a range of the order array and then its children
+	 * @return The index of the node
+	 */
+	private int buildNode(int parent, int first, int count, int depth) {
+		int node = numNodes++;
+		nodeParent[node] = parent;
+		nodeStart[node] = first;
+		nodeSize[node] = count;
+		nodeRight[node] = -1;
+		rangeBounds(first, count, boxes, 6, nodeBounds, node * 6);
+
+		if (count <= MAX_LEAF_SIZE) {
+			makeLeaf(node);
+			return node;
+		}
+
+		/** Bounds of the centroids pick the axis and the bins */
+		rangeBounds(first, count, centroids, 3, bounds, 0);
+		int axis = 0;
+		float extent = bounds[3] - bounds[0];
+		if (bounds[4] - bounds[1] > extent) { axis = 1; extent = bounds[4] - bounds[1]; }
+		if (bounds[5] - bounds[2] > extent) { axis = 2; extent = bounds[5] - bounds[2]; }
+		float binMin = bounds[axis];
+
+		int mid = -1;
+		if (extent > 0 && depth < MAX_SAH_DEPTH) {
+			float binScale = BINS / extent;
+
+			Arrays.fill(binCounts, 0);
+			for (int b = 0; b < BINS; b++) emptyBox(binBounds, b * 6);
+			for (int i = first; i < first + count; i++) {
+				int p = order[i];
+				int b = bin(centroids[p * 3 + axis], binMin, binScale);
+				binCounts[b]++;
+				includeBox(binBounds, b * 6, boxes, p * 6);
+			}
+
+			/** Sweep from the right to get the area of everything right of each split */
+			emptyBox(bounds, 0);
+			for (int b = BINS - 1; b > 0; b--) {
+				includeBox(bounds, 0, binBounds, b * 6);
+				rightAreas[b] = halfArea(bounds, 0);
+			}
+
+			/** Sweep from the left and keep the cheapest split */
+			emptyBox(bounds, 0);
+			int leftCount = 0;
+			int bestSplit = -1;
+			float bestCost = Float.POSITIVE_INFINITY;
+			for (int b = 0; b < BINS - 1; b++) {
+				includeBox(bounds, 0, binBounds, b * 6);
+				leftCount += binCounts[b];
+				if (leftCount == 0 || leftCount == count) continue;
+				float cost = halfArea(bounds, 0) * leftCount + rightAreas[b + 1] * (count - leftCount);
+				if (cost < bestCost) {
+					bestCost = cost;
+					bestSplit = b;
+				}
+			}
+
+			/** Splitting costs one more box test, so keep small nodes whole when testing every primitive is cheaper */
+			float area = halfArea(nodeBounds, node * 6);
+			if (count <= MAX_SAH_LEAF_SIZE && (bestSplit < 0 || (area > 0 && 1 + bestCost / area >= count))) {
+				makeLeaf(node);
+				return node;
+			}
+
+			if (bestSplit >= 0) {
+				int i = first;
+				int j = first + count - 1;
+				while (i <= j) {
+					if (bin(centroids[order[i] * 3 + axis], binMin, binScale) <= bestSplit) {
+						i++;
+					} else {
+						int t = order[i]; order[i] = order[j]; order[j] = t;
+						j--;
+					}
+				}
+				mid = i;
+			}
+		}
+
+		/** No useful split was found, split in the middle of the order instead */
+		if (mid <= first || mid >= first + count) {
+			if (count <= MAX_SAH_LEAF_SIZE) {
+				makeLeaf(node);
+				return node;
+			}
+			mid = first + count / 2;
+		}
+
+		buildNode(node, first, mid - first, depth + 1);
+		nodeRight[node] = buildNode(node, mid, first + count - mid, depth + 1);
+		return node;
+	}
+
+	private void makeLeaf(int node) {
+		for (int i = nodeStart[node]; i < nodeStart[node] + nodeSize[node]; i++) {
+			leafOf[order[i]] = node;
+		}
+	}
+
+	private static int bin(float centroid, float binMin, float binScale) {
+		int b = (int) ((centroid - binMin) * binScale);
+		return (b < 0) ? 0 : (b >= BINS) ? BINS - 1 : b;
+	}
+
+	/**
+	 * Bounds of a range of the order array. stride is 6 for boxes and 3 for points
+	 */
+	private void rangeBounds(int first, int count, float[] src, int stride, float[] dst, int offset) {
+		emptyBox(dst, offset);
+		for (int i = first; i < first + count; i++) {
+			int p = order[i] * stride;
+			int hi = (stride == 6) ? p + 3 : p;
+			for (int k = 0; k < 3; k++) {
+				if (src[p + k] < dst[offset + k]) dst[offset + k] = src[p + k];
+				if (src[hi + k] > dst[offset + 3 + k]) dst[offset + 3 + k] = src[hi + k];
+			}
+		}
+	}
+
+	private static void emptyBox(float[] box, int offset) {
+		box[offset] = box[offset + 1] = box[offset + 2] = Float.POSITIVE_INFINITY;
+		box[offset + 3] = box[offset + 4] = box[offset + 5] = Float.NEGATIVE_INFINITY;
+	}
+
+	private static void includeBox(float[] dst, int d, float[] src, int s) {
+		for (int k = 0; k < 3; k++) {
+			if (src[s + k] < dst[d + k]) dst[d + k] = src[s + k];
+			if (src[s + 3 + k] > dst[d + 3 + k]) dst[d + 3 + k] = src[s + 3 + k];
+		}
+	}
+
+	private static float halfArea(float[] box, int o) {
+		float dx = box[o + 3] - box[o], dy = box[o + 4] - box[o + 1], dz = box[o + 5] - box[o + 2];
+		if (dx < 0 || dy < 0 || dz < 0) return 0;
+		return dx * dy + dy * dz + dz * dx;
+	}
+
+	/**
+	 * Changes the box of a primitive. The tree is fixed up by the next refit()
+	 * @param primitive The primitive
+	 * @param box Its new box
+	 */
+	public void update(int primitive, BoundingBox box) {
+		int p = primitive * 6;
+		boxes[p] = box.getMinX();
+		boxes[p + 1] = box.getMinY();
+		boxes[p + 2] = box.getMinZ();
+		boxes[p + 3] = box.getMaxX();
+		boxes[p + 4] = box.getMaxY();
+		boxes[p + 5] = box.getMaxZ();
+
+		int leaf = leafOf[primitive];
+		if (!nodeDirty[leaf]) {
+			nodeDirty[leaf] = true;
+			if (numDirtyLeaves == dirtyLeaves.length) {
+				dirtyLeaves = Arrays.copyOf(dirtyLeaves, numDirtyLeaves * 2);
+			}
+			dirtyLeaves[numDirtyLeaves++] = leaf;
+		}
+	}
+
+	/**
+	 * Recalculates the boxes of the leaves changed by update() and of their ancestors.
+	 * Walking up stops as soon as a node's box comes out the same as before
+	 */
+	public void refit() {
+		for (int i = 0; i < numDirtyLeaves; i++) {
+			int node = dirtyLeaves[i];
+			nodeDirty[node] = false;
+			rangeBounds(nodeStart[node], nodeSize[node], boxes, 6, nodeBounds, node * 6);
+
+			for (int parent = nodeParent[node]; parent >= 0; parent = nodeParent[parent]) {
+				int o = parent * 6;
+				float minX = nodeBounds[o], minY = nodeBounds[o + 1], minZ = nodeBounds[o + 2];
+				float maxX = nodeBounds[o + 3], maxY = nodeBounds[o + 4], maxZ = nodeBounds[o + 5];
+
+				emptyBox(nodeBounds, o);
+				includeBox(nodeBounds, o, nodeBounds, (parent + 1) * 6);
+				includeBox(nodeBounds, o, nodeBounds, nodeRight[parent] * 6);
+
+				if (minX == nodeBounds[o] && minY == nodeBounds[o + 1] && minZ == nodeBounds[o + 2] &&
+				    maxX == nodeBounds[o + 3] && maxY == nodeBounds[o + 4] && maxZ == nodeBounds[o + 5]) break;
+			}
+		}
+		numDirtyLeaves = 0;
+	}
+
+	/**
+	 * Finds every primitive whose box is at least partly inside a set of planes, like Camera.getFrustumPlanes().
+	 * Subtrees completely inside every plane are added without testing their children.
+	 * The result is read with getResults()
+	 * @param planes The planes, 4 floats (a, b, c, d) per plane. Inside is a * x + b * y + c * z + d >= 0
+	 * @param numPlanes Number of planes
+	 * @return The number of primitives found
+	 */
+	public int queryPlanes(float[] planes, int numPlanes) {
+		numResults = 0;
+		if (numPrimitives == 0) return 0;
+
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			int o = node * 6;
+
+			boolean inside = true;
+			boolean outside = false;
+			for (int i = 0; i < numPlanes * 4 && !outside; i += 4) {
+				float a = planes[i], b = planes[i + 1], c = planes[i + 2], d = planes[i + 3];
+				float far = a * nodeBounds[o + ((a >= 0) ? 3 : 0)] + b * nodeBounds[o + ((b >= 0) ? 4 : 1)] + c * nodeBounds[o + ((c >= 0) ? 5 : 2)] + d;
+				float near = a * nodeBounds[o + ((a >= 0) ? 0 : 3)] + b * nodeBounds[o + ((b >= 0) ? 1 : 4)] + c * nodeBounds[o + ((c >= 0) ? 2 : 5)] + d;
+				if (far < 0) outside = true;
+				else if (near < 0) inside = false;
+			}
+			if (outside) continue;
+
+			if (inside || nodeRight[node] < 0) {
+				addResults(node, inside, planes, numPlanes);
+			} else {
+				top = push(top, nodeRight[node]);
+				top = push(top, node + 1);
+			}
+		}
+		return numResults;
+	}
+
+	/**
+	 * Adds the primitives of a node. Primitives of a leaf that is only partly inside are tested one by one
+	 */
+	private void addResults(int node, boolean inside, float[] planes, int numPlanes) {
+		for (int i = nodeStart[node]; i < nodeStart[node] + nodeSize[node]; i++) {
+			int p = order[i];
+			if (inside || boxIntersectsPlanes(p * 6, planes, numPlanes)) {
+				addResult(p);
+			}
+		}
+	}
+
+	private boolean boxIntersectsPlanes(int o, float[] planes, int numPlanes) {
+		for (int i = 0; i < numPlanes * 4; i += 4) {
+			float a = planes[i], b = planes[i + 1], c = planes[i + 2];
+			float far = a * boxes[o + ((a >= 0) ? 3 : 0)] + b * boxes[o + ((b >= 0) ? 4 : 1)] + c * boxes[o + ((c >= 0) ? 5 : 2)] + planes[i + 3];
+			if (far < 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Finds every primitive whose box overlaps a box. The result is read with getResults()
+	 * @param box The box to test against
+	 * @return The number of primitives found
+	 */
+	public int queryBox(BoundingBox box) {
+		numResults = 0;
+		if (numPrimitives == 0) return 0;
+
+		float minX = box.getMinX(), minY = box.getMinY(), minZ = box.getMinZ();
+		float maxX = box.getMaxX(), maxY = box.getMaxY(), maxZ = box.getMaxZ();
+
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			if (!overlaps(nodeBounds, node * 6, minX, minY, minZ, maxX, maxY, maxZ)) continue;
+
+			if (nodeRight[node] < 0) {
+				for (int i = nodeStart[node]; i < nodeStart[node] + nodeSize[node]; i++) {
+					int p = order[i];
+					if (overlaps(boxes, p * 6, minX, minY, minZ, maxX, maxY, maxZ)) addResult(p);
+				}
+			} else {
+				top = push(top, nodeRight[node]);
+				top = push(top, node + 1);
+			}
+		}
+		return numResults;
+	}
+
+	private static boolean overlaps(float[] b, int o, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		return b[o] <= maxX && b[o + 3] >= minX && b[o + 1] <= maxY && b[o + 4] >= minY && b[o + 2] <= maxZ && b[o + 5] >= minZ;
+	}
+
+	/**
+	 * Finds the closest primitive a ray hits. Children are visited nearest first and anything farther
+	 * than the closest hit so far is skipped. The primitive is read with getHitPrimitive()
+	 * @param ox Ray origin X
+	 * @param oy Ray origin Y
+	 * @param oz Ray origin Z
+	 * @param dx Ray direction X
+	 * @param dy Ray direction Y
+	 * @param dz Ray direction Z
+	 * @param maxDistance Hits farther than this are ignored
+	 * @param test Tests the ray against a single primitive
+	 * @return The distance to the hit, in multiples of the direction, or Float.POSITIVE_INFINITY if nothing was hit
+	 */
+	public float raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance, RayTest test) {
+		hitPrimitive = -1;
+		if (numPrimitives == 0) return Float.POSITIVE_INFINITY;
+
+		float invX = 1 / dx, invY = 1 / dy, invZ = 1 / dz;
+		float closest = maxDistance;
+
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			if (slab(nodeBounds, node * 6, ox, oy, oz, invX, invY, invZ, closest) > closest) continue;
+
+			if (nodeRight[node] < 0) {
+				for (int i = nodeStart[node]; i < nodeStart[node] + nodeSize[node]; i++) {
+					int p = order[i];
+					if (slab(boxes, p * 6, ox, oy, oz, invX, invY, invZ, closest) > closest) continue;
+					float t = test.intersect(p, closest);
+					if (t >= 0 && t < closest) {
+						closest = t;
+						hitPrimitive = p;
+					}
+				}
+			} else {
+				int left = node + 1;
+				int right = nodeRight[node];
+				float tLeft = slab(nodeBounds, left * 6, ox, oy, oz, invX, invY, invZ, closest);
+				float tRight = slab(nodeBounds, right * 6, ox, oy, oz, invX, invY, invZ, closest);
+
+				/** The nearer child is pushed last so it is visited first */
+				if (tLeft <= tRight) {
+					if (tRight <= closest) top = push(top, right);
+					if (tLeft <= closest) top = push(top, left);
+				} else {
+					if (tLeft <= closest) top = push(top, left);
+					if (tRight <= closest) top = push(top, right);
+				}
+			}
+		}
+		return (hitPrimitive < 0) ? Float.POSITIVE_INFINITY : closest;
+	}
+
+	/**
+	 * Ray box slab test
+	 * @return The distance where the ray enters the box, or Float.POSITIVE_INFINITY if it misses
+	 */
+	private static float slab(float[] b, int o, float ox, float oy, float oz, float invX, float invY, float invZ, float maxDistance) {
+		float t1 = (b[o] - ox) * invX, t2 = (b[o + 3] - ox) * invX;
+		float tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+		t1 = (b[o + 1] - oy) * invY;
+		t2 = (b[o + 4] - oy) * invY;
+		tMin = Math.max(tMin, Math.min(t1, t2));
+		tMax = Math.min(tMax, Math.max(t1, t2));
+		t1 = (b[o + 2] - oz) * invZ;
+		t2 = (b[o + 5] - oz) * invZ;
+		tMin = Math.max(tMin, Math.min(t1, t2));
+		tMax = Math.min(tMax, Math.max(t1, t2));
+
+		/** The negated test also throws out NaN from a zero direction on an edge of the box */
+		if (!(tMax >= Math.max(tMin, 0)) || tMin > maxDistance) return Float.POSITIVE_INFINITY;
+		return Math.max(tMin, 0);
+	}
+
+	private int push(int top, int node) {
+		if (top == stack.length) {
+			stack = Arrays.copyOf(stack, top * 2);
+		}
+		stack[top] = node;
+		return top + 1;
+	}
+
+	private void addResult(int primitive) {
+		if (numResults == results.length) {
+			results = Arrays.copyOf(results, numResults * 2);
+		}
+		results[numResults++] = primitive;
+	}
+
+	/**
+	 * Returns the primitives found by the last queryPlanes() or queryBox()
+	 * @return The primitive indices. Only the first getNumResults() are valid
+	 */
+	public int[] getResults() {
+		return results;
+	}
+
+	/**
+	 * Getter for the number of primitives found by the last query
+	 * @return The number of results
+	 */
+	public int getNumResults() {
+		return numResults;
+	}
+
+	/**
+	 * Getter for the primitive hit by the last raycast()
+	 * @return The primitive, or -1 if nothing was hit
+	 */
+	public int getHitPrimitive() {
+		return hitPrimitive;
+	}
+
+	/**
+	 * Copies the box around every primitive into a BoundingBox
+	 * @param dst The box to write to
+	 * @return dst
+	 */
+	public BoundingBox getBounds(BoundingBox dst) {
+		if (numPrimitives == 0) return dst.setEmpty();
+		return dst.set(nodeBounds[0], nodeBounds[1], nodeBounds[2], nodeBounds[3], nodeBounds[4], nodeBounds[5]);
+	}
+
+	/**
+	 * Getter for the number of nodes in the tree
+	 * @return The number of nodes
+	 */
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	/**
+	 * Getter for the number of primitives in the tree
+	 * @return The number of primitives
+	 */
+	public int getNumPrimitives() {
+		return numPrimitives;
+	}
+
+}
@@ -0,0 +1,193 @@
+package ezgraphics3d;
+
+/**
+ * BoundingBox Class.
+ * An axis aligned bounding box, stored as its minimum and maximum corners.
+ * An empty box has its minimum above its maximum, so including the first point sets both corners.
+ * @author Ryan Theriot
+ */
+public class BoundingBox {
+
+	private float minX, minY, minZ;
+	private float maxX, maxY, maxZ;
+
+	/**
+	 * Constructor Method
+	 * Creates an empty box
+	 */
+	public BoundingBox() {
+		setEmpty();
+	}
+
+	/**
+	 * Empties the box
+	 * @return This box
+	 */
+	public BoundingBox setEmpty() {
+		minX = minY = minZ = Float.POSITIVE_INFINITY;
+		maxX = maxY = maxZ = Float.NEGATIVE_INFINITY;
+		return this;
+	}
+
+	/**
+	 * Sets both corners of the box
+	 * @return This box
+	 */
+	public BoundingBox set(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+		return this;
+	}
+
+	/**
+	 * Copies another box into this one
+	 * @param other The box to copy
+	 * @return This box
+	 */
+	public BoundingBox set(BoundingBox other) {
+		return set(other.minX, other.minY, other.minZ, other.maxX, other.maxY, other.maxZ);
+	}
+
+	/**
+	 * Grows the box to hold a point
+	 * @return This box
+	 */
+	public BoundingBox include(float x, float y, float z) {
+		if (x < minX) minX = x;
+		if (y < minY) minY = y;
+		if (z < minZ) minZ = z;
+		if (x > maxX) maxX = x;
+		if (y > maxY) maxY = y;
+		if (z > maxZ) maxZ = z;
+		return this;
+	}
+
+	/**
+	 * Grows the box to hold another box
+	 * @param other The box to include
+	 * @return This box
+	 */
+	public BoundingBox include(BoundingBox other) {
+		if (other.minX < minX) minX = other.minX;
+		if (other.minY < minY) minY = other.minY;
+		if (other.minZ < minZ) minZ = other.minZ;
+		if (other.maxX > maxX) maxX = other.maxX;
+		if (other.maxY > maxY) maxY = other.maxY;
+		if (other.maxZ > maxZ) maxZ = other.maxZ;
+		return this;
+	}
+
+	/**
+	 * Transforms the box by a matrix and stores the box around the result in dst.
+	 * Each corner of the result only takes the larger or smaller product for every matrix entry,
+	 * so the eight corners do not have to be transformed one by one.
+	 * @param matrix The matrix
+	 * @param dst The box the result is written to. Must not be this box
+	 * @return dst
+	 */
+	public BoundingBox transform(Mat4 matrix, BoundingBox dst) {
+		if (isEmpty()) return dst.setEmpty();
+
+		float[] m = matrix.m;
+		float newMinX = m[3], newMaxX = m[3];
+		float newMinY = m[7], newMaxY = m[7];
+		float newMinZ = m[11], newMaxZ = m[11];
+
+		for (int col = 0; col < 3; col++) {
+			float lo = (col == 0) ? minX : (col == 1) ? minY : minZ;
+			float hi = (col == 0) ? maxX : (col == 1) ? maxY : maxZ;
+
+			float a = m[col] * lo, b = m[col] * hi;
+			newMinX += Math.min(a, b);
+			newMaxX += Math.max(a, b);
+			a = m[4 + col] * lo;
+			b = m[4 + col] * hi;
+			newMinY += Math.min(a, b);
+			newMaxY += Math.max(a, b);
+			a = m[8 + col] * lo;
+			b = m[8 + col] * hi;
+			newMinZ += Math.min(a, b);
+			newMaxZ += Math.max(a, b);
+		}
+		return dst.set(newMinX, newMinY, newMinZ, newMaxX, newMaxY, newMaxZ);
+	}
+
+	/**
+	 * Checks if the box holds nothing
+	 * @return True if the box is empty
+	 */
+	public boolean isEmpty() {
+		return minX > maxX || minY > maxY || minZ > maxZ;
+	}
+
+	/**
+	 * Checks if this box overlaps another box
+	 * @param other The other box
+	 * @return True if the boxes overlap or touch
+	 */
+	public boolean intersects(BoundingBox other) {
+		return minX <= other.maxX && maxX >= other.minX &&
+		       minY <= other.maxY && maxY >= other.minY &&
+		       minZ <= other.maxZ && maxZ >= other.minZ;
+	}
+
+	/**
+	 * Checks if the box is at least partly inside a set of planes, like Camera.getFrustumPlanes().
+	 * For each plane only the corner farthest along the plane's normal is tested, so the test
+	 * can keep some boxes that are just outside a corner of the frustum, but never throws out a visible one.
+	 * @param planes The planes, 4 floats (a, b, c, d) per plane. Inside is a * x + b * y + c * z + d >= 0
+	 * @param numPlanes Number of planes
+	 * @return False if the box is completely outside one of the planes
+	 */
+	public boolean intersectsPlanes(float[] planes, int numPlanes) {
+		for (int i = 0; i < numPlanes * 4; i += 4) {
+			float a = planes[i], b = planes[i + 1], c = planes[i + 2];
+			float x = (a >= 0) ? maxX : minX;
+			float y = (b >= 0) ? maxY : minY;
+			float z = (c >= 0) ? maxZ : minZ;
+			if (a * x + b * y + c * z + planes[i + 3] < 0) return false;
+		}
+		return true;
+	}
+
+	public float getMinX() {
+		return minX;
+	}
+
+	public float getMinY() {
+		return minY;
+	}
+
+	public float getMinZ() {
+		return minZ;
+	}
+
+	public float getMaxX() {
+		return maxX;
+	}
+
+	public float getMaxY() {
+		return maxY;
+	}
+
+	public float getMaxZ() {
+		return maxZ;
+	}
+
+	public float getCenterX() {
+		return (minX + maxX) / 2;
+	}
+
+	public float getCenterY() {
+		return (minY + maxY) / 2;
+	}
+
+	public float getCenterZ() {
+		return (minZ + maxZ) / 2;
+	}
+
+}
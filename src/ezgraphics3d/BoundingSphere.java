@@ -0,0 +1,75 @@
+package ezgraphics3d;
+
+/**
+ * BoundingSphere Class.
+ * A sphere around an object, stored as its center and radius.
+ * Cheaper to test than a BoundingBox, but usually looser.
+ * @author Ryan Theriot
+ */
+public class BoundingSphere {
+
+	private float x, y, z;
+	private float radius;
+
+	/**
+	 * Sets the center and radius of the sphere
+	 * @return This sphere
+	 */
+	public BoundingSphere set(float x, float y, float z, float radius) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.radius = radius;
+		return this;
+	}
+
+	/**
+	 * Transforms the sphere by a matrix and stores the result in dst.
+	 * The radius is scaled by the largest scale in the matrix, so the result always holds the transformed object
+	 * @param matrix The matrix
+	 * @param dst The sphere the result is written to
+	 * @return dst
+	 */
+	public BoundingSphere transform(Mat4 matrix, BoundingSphere dst) {
+		float[] m = matrix.m;
+		float scaleX = m[0] * m[0] + m[4] * m[4] + m[8] * m[8];
+		float scaleY = m[1] * m[1] + m[5] * m[5] + m[9] * m[9];
+		float scaleZ = m[2] * m[2] + m[6] * m[6] + m[10] * m[10];
+		float scale = (float) Math.sqrt(Math.max(scaleX, Math.max(scaleY, scaleZ)));
+
+		return dst.set(m[0] * x + m[1] * y + m[2] * z + m[3],
+		               m[4] * x + m[5] * y + m[6] * z + m[7],
+		               m[8] * x + m[9] * y + m[10] * z + m[11],
+		               radius * scale);
+	}
+
+	/**
+	 * Checks if the sphere is at least partly inside a set of planes, like Camera.getFrustumPlanes()
+	 * @param planes The planes, 4 floats (a, b, c, d) per plane with normalized normals
+	 * @param numPlanes Number of planes
+	 * @return False if the sphere is completely outside one of the planes
+	 */
+	public boolean intersectsPlanes(float[] planes, int numPlanes) {
+		for (int i = 0; i < numPlanes * 4; i += 4) {
+			if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius) return false;
+		}
+		return true;
+	}
+
+	public float getX() {
+		return x;
+	}
+
+	public float getY() {
+		return y;
+	}
+
+	public float getZ() {
+		return z;
+	}
+
+	public float getRadius() {
+		return radius;
+	}
+
+}
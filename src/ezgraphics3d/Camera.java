@@ -16,6 +16,23 @@ public class Camera {
 	private float speed = 0.3f;
 	private float turnSpeed = 3f;
 	
+	/** Reused for every camera movement */
+	private Mat4 move = new Mat4();
+
+	/** Reused to build the frustum planes */
+	private Mat4 view = new Mat4();
+	private Mat4 perspective = new Mat4();
+	private Mat4 viewPerspective = new Mat4();
+	private float[] frustumPlanes = new float[24];
+
+	/** Indices of the planes returned by getFrustumPlanes() */
+	public static final int PLANE_LEFT = 0;
+	public static final int PLANE_RIGHT = 1;
+	public static final int PLANE_BOTTOM = 2;
+	public static final int PLANE_TOP = 3;
+	public static final int PLANE_NEAR = 4;
+	public static final int PLANE_FAR = 5;
+	
 	/**
 	 * Camera Constructor
 	 * @param x - X Coordinate location of camera
@@ -92,28 +109,28 @@ public class Camera {
 		if (EZInteraction.wasKeyPressed("w")) {
 			float x = (float) Math.sin(Math.toRadians(yaw)) * speed;
 			float z = (float) Math.cos(Math.toRadians(yaw)) * speed;
-			cameraLocation.translate(Matrix.translateMatrix(-x, 0, -z));
+			cameraLocation.translate(move.setTranslation(-x, 0, -z));
 		}
 		if (EZInteraction.wasKeyPressed("s")) {
 			float x = (float) Math.sin(Math.toRadians(yaw)) * speed;
 			float z = (float) Math.cos(Math.toRadians(yaw)) * speed;
-			cameraLocation.translate(Matrix.translateMatrix(x, 0, z));
+			cameraLocation.translate(move.setTranslation(x, 0, z));
 		}
 		if (EZInteraction.wasKeyPressed("a")) {
 			float x = (float) Math.sin(Math.toRadians(yaw) + Math.PI/2) * speed;
 			float z = (float) Math.cos(Math.toRadians(yaw) + Math.PI/2) * speed;
-			cameraLocation.translate(Matrix.translateMatrix(-x, 0, -z));
+			cameraLocation.translate(move.setTranslation(-x, 0, -z));
 		}
 		if (EZInteraction.wasKeyPressed("d")) {
 			float x = (float) Math.sin(Math.toRadians(yaw) + Math.PI/2) * speed;
 			float z = (float) Math.cos(Math.toRadians(yaw) + Math.PI/2) * speed;
-			cameraLocation.translate(Matrix.translateMatrix(x, 0, z));
+			cameraLocation.translate(move.setTranslation(x, 0, z));
 		}
 		if (EZInteraction.wasKeyPressed("e")) {
-			cameraLocation.translate(Matrix.translateMatrix(0, speed, 0));
+			cameraLocation.translate(move.setTranslation(0, speed, 0));
 		}
 		if (EZInteraction.wasKeyPressed("q")) {
-			cameraLocation.translate(Matrix.translateMatrix(0, -speed, 0));
+			cameraLocation.translate(move.setTranslation(0, -speed, 0));
 		}
 		
 		//Axis and WireFrame Toggle. Temporary Location
@@ -121,6 +138,84 @@ public class Camera {
 		if (EZInteraction.wasKeyPressed('y')) Renderer.toggleWireFrame();
 	}
 	
+	/**
+	 * Perspective Matrix
+	 * @param matrix The matrix to write to
+	 * @return The Calculated Perspective Matrix (matrix)
+	 */
+	public Mat4 getPerspectiveMatrix(Mat4 matrix) {
+		
+		float tanHalfFOV = (float) Math.tan(Math.toRadians(FOV / 2));
+
+		return matrix.set(1 / tanHalfFOV, 0, 0, 0, 
+				          0, 1 / tanHalfFOV, 0, 0,
+				          0, 0, -((zFar) / (zFar - zNear)), -( zFar * zNear) / (zFar - zNear), 
+				          0, 0, -1.0f, 0);
+	}
+	
+	/**
+	 * The View Matrix
+	 * @param matrix The matrix to write to
+	 * @return The View Matrix (matrix)
+	 */
+	public Mat4 getViewMatrix(Mat4 matrix)
+	{
+		Vector cLOC = getCameraLocation();
+		
+		float cosPitch = (float) Math.cos(Math.toRadians(pitch));
+	    float sinPitch = (float) Math.sin(Math.toRadians(pitch));
+	    float cosYaw = (float) Math.cos(Math.toRadians(yaw));
+	    float sinYaw = (float) Math.sin(Math.toRadians(yaw));
+	 
+	    float xaxis0 =            cosYaw, xaxis1 =         0, xaxis2 =           -sinYaw;
+	    float yaxis0 = sinYaw * sinPitch, yaxis1 =  cosPitch, yaxis2 = cosYaw * sinPitch;
+	    float zaxis0 = sinYaw * cosPitch, zaxis1 = -sinPitch, zaxis2 = cosPitch * cosYaw;
+	    
+	    float dotX = (xaxis0 * -cLOC.getX()) + (xaxis1 * -cLOC.getY()) + (xaxis2 * -cLOC.getZ()) ;
+	    float dotY = (yaxis0 * -cLOC.getX()) + (yaxis1 * -cLOC.getY()) + (yaxis2 * -cLOC.getZ()) ;
+	    float dotZ = (zaxis0 * -cLOC.getX()) + (zaxis1 * -cLOC.getY()) + (zaxis2 * -cLOC.getZ()) ;
+	 
+	    return matrix.set(xaxis0, xaxis1, xaxis2, -dotX,
+                          yaxis0, yaxis1, yaxis2, -dotY,
+                          zaxis0, zaxis1, zaxis2, -dotZ,
+                               0,      0,      0,     1);
+	    
+	}
+
+	/**
+	 * Returns the six planes of the view frustum in world space, taken from the rows of the
+	 * perspective matrix times the view matrix. They match what the Renderer clips against.
+	 * Each plane is 4 floats (a, b, c, d), in the order of the PLANE_ constants, and a point
+	 * is inside a plane when a * x + b * y + c * z + d >= 0. The normals are normalized so
+	 * the result is the distance to the plane.
+	 * @return The frustum planes, 24 floats. The array is reused by the next call
+	 */
+	public float[] getFrustumPlanes() {
+		float[] m = getPerspectiveMatrix(perspective).mulInto(getViewMatrix(view), viewPerspective).m;
+
+		/** x and y are inside when -w <= x, y <= w. z is inside when 0 <= z <= w */
+		setPlane(PLANE_LEFT, m[12] + m[0], m[13] + m[1], m[14] + m[2], m[15] + m[3]);
+		setPlane(PLANE_RIGHT, m[12] - m[0], m[13] - m[1], m[14] - m[2], m[15] - m[3]);
+		setPlane(PLANE_BOTTOM, m[12] + m[4], m[13] + m[5], m[14] + m[6], m[15] + m[7]);
+		setPlane(PLANE_TOP, m[12] - m[4], m[13] - m[5], m[14] - m[6], m[15] - m[7]);
+		setPlane(PLANE_NEAR, m[8], m[9], m[10], m[11]);
+		setPlane(PLANE_FAR, m[12] - m[8], m[13] - m[9], m[14] - m[10], m[15] - m[11]);
+
+		return frustumPlanes;
+	}
+
+	/**
+	 * Normalizes a plane and writes it into the frustum planes
+	 */
+	private void setPlane(int plane, float a, float b, float c, float d) {
+		float length = (float) Math.sqrt(a * a + b * b + c * c);
+		int i = plane * 4;
+		frustumPlanes[i] = a / length;
+		frustumPlanes[i + 1] = b / length;
+		frustumPlanes[i + 2] = c / length;
+		frustumPlanes[i + 3] = d / length;
+	}
+
 	/**
 	 * Sets the yaw of the camera
 	 * @param yaw The desired yaw in degrees
@@ -0,0 +1,250 @@
+package ezgraphics3d;
+
+/**
+ * Clipper Class.
+ * Clips triangles in homogeneous screen space, after the combined matrix and before the divide by w.
+ * Each vertex gets an outcode with one bit for every plane it is outside of, so most triangles are
+ * accepted or rejected with a couple of bitwise operations.
+ *
+ * Only the near plane really has to be clipped, since vertices behind it divide into huge or flipped
+ * screen positions. The other planes are handled by a guard band: triangles that stick out of the
+ * screen but stay inside the guard band are drawn as they are and the fill cuts them off.
+ * Only the rare triangle that goes past the guard band is clipped against it too.
+ * The clipped polygon is written into buffers owned by the Clipper, so nothing is allocated.
+ * @author Ryan Theriot
+ */
+public class Clipper {
+
+	/** Outcode bits for the view frustum */
+	public static final int OUT_LEFT = 1;
+	public static final int OUT_RIGHT = 2;
+	public static final int OUT_TOP = 4;
+	public static final int OUT_BOTTOM = 8;
+	public static final int OUT_NEAR = 16;
+	public static final int OUT_FAR = 32;
+	public static final int OUT_FRUSTUM = OUT_LEFT | OUT_RIGHT | OUT_TOP | OUT_BOTTOM | OUT_NEAR | OUT_FAR;
+
+	/** Outcode bits for the guard band */
+	public static final int GUARD_LEFT = 64;
+	public static final int GUARD_RIGHT = 128;
+	public static final int GUARD_TOP = 256;
+	public static final int GUARD_BOTTOM = 512;
+	public static final int OUT_GUARD = GUARD_LEFT | GUARD_RIGHT | GUARD_TOP | GUARD_BOTTOM;
+
+	/** Outcode bits that mean a triangle has to be clipped before it is drawn */
+	public static final int OUT_CLIP = OUT_NEAR | OUT_GUARD;
+
+	/** How far past each screen edge the guard band goes, in screen widths (or heights) */
+	public static final float DEFAULT_GUARD_BAND = 1f;
+
+	/** A triangle clipped by the near plane and the four guard band planes has at most 8 vertices */
+	private static final int MAX_VERTICES = 8;
+
+	private float width;
+	private float height;
+	private float zNear;
+	private float zFar;
+	private float guardBand = DEFAULT_GUARD_BAND;
+	private float guardLeft, guardRight, guardTop, guardBottom;
+
+	/** Homogeneous polygons clipping goes back and forth between, 4 floats per vertex */
+	private float[] polygon = new float[MAX_VERTICES * 4];
+	private float[] scratch = new float[MAX_VERTICES * 4];
+
+	/** The clipped polygon on the screen, 3 floats (x, y, depth) per vertex */
+	private float[] vertices = new float[MAX_VERTICES * 3];
+
+	/**
+	 * Sets the screen and the near and far planes to clip against
+	 * @param width Width of the screen in pixels
+	 * @param height Height of the screen in pixels
+	 * @param zNear Distance to the near plane
+	 * @param zFar Distance to the far plane
+	 */
+	public void setViewport(float width, float height, float zNear, float zFar) {
+		this.width = width;
+		this.height = height;
+		this.zNear = zNear;
+		this.zFar = zFar;
+		guardLeft = -guardBand * width;
+		guardRight = (1 + guardBand) * width;
+		guardTop = -guardBand * height;
+		guardBottom = (1 + guardBand) * height;
+	}
+
+	/**
+	 * Sets how far past the screen edges triangles are drawn without being clipped
+	 * @param guardBand Distance past each edge in screen widths (or heights)
+	 */
+	public void setGuardBand(float guardBand) {
+		this.guardBand = Math.max(0, guardBand);
+		setViewport(width, height, zNear, zFar);
+	}
+
+	/**
+	 * Computes the outcodes and the screen positions of transformed vertices.
+	 * Screen positions are only meaningful for vertices without the OUT_NEAR bit
+	 * @param clip Homogeneous vertices from VertexTransformer.transformHomogeneous, 4 floats per vertex
+	 * @param screen Output screen positions, 4 floats (x, y, depth, w) per vertex
+	 * @param outcodes Output outcodes, one per vertex
+	 * @param first The first vertex
+	 * @param vertexCount Number of vertices
+	 */
+	public void project(float[] clip, float[] screen, int[] outcodes, int first, int vertexCount) {
+		for (int i = first, o = first * 4, end = first + vertexCount; i < end; i++, o += 4) {
+			float x = clip[o];
+			float y = clip[o + 1];
+			float w = clip[o + 3];
+
+			outcodes[i] = outcode(x, y, w);
+
+			float invW = 1 / w;
+			screen[o] = x * invW;
+			screen[o + 1] = y * invW;
+			screen[o + 2] = clip[o + 2] * invW;
+			screen[o + 3] = w;
+		}
+	}
+
+	/**
+	 * Computes the outcode of one homogeneous vertex
+	 * @param x Homogeneous screen x
+	 * @param y Homogeneous screen y
+	 * @param w The vertex's w, its distance in front of the camera
+	 * @return The outcode
+	 */
+	public int outcode(float x, float y, float w) {
+		int code = 0;
+		if (x < 0) code |= OUT_LEFT;
+		if (x > width * w) code |= OUT_RIGHT;
+		if (y < 0) code |= OUT_TOP;
+		if (y > height * w) code |= OUT_BOTTOM;
+		if (w < zNear) code |= OUT_NEAR;
+		if (w > zFar) code |= OUT_FAR;
+		if (x < guardLeft * w) code |= GUARD_LEFT;
+		if (x > guardRight * w) code |= GUARD_RIGHT;
+		if (y < guardTop * w) code |= GUARD_TOP;
+		if (y > guardBottom * w) code |= GUARD_BOTTOM;
+		return code;
+	}
+
+	/**
+	 * Clips a triangle with Sutherland-Hodgman against the near plane, and against the guard band
+	 * if the triangle goes past it. The result is read with getVertices()
+	 * @param clip Homogeneous vertices, 4 floats per vertex
+	 * @param v1 Offset of vertex 1 in clip
+	 * @param v2 Offset of vertex 2 in clip
+	 * @param v3 Offset of vertex 3 in clip
+	 * @param codes The outcodes of the three vertices or'ed together
+	 * @return The number of vertices in the clipped polygon. Less than 3 if nothing is left
+	 */
+	public int clipTriangle(float[] clip, int v1, int v2, int v3, int codes) {
+		System.arraycopy(clip, v1, polygon, 0, 4);
+		System.arraycopy(clip, v2, polygon, 4, 4);
+		System.arraycopy(clip, v3, polygon, 8, 4);
+		int count = 3;
+
+		if ((codes & OUT_NEAR) != 0) {
+			count = clipPlane(count, 0, 0, 1, -zNear);
+
+			/** Vertices behind the camera say nothing about the guard band, so check the new polygon instead */
+			codes = 0;
+			for (int i = 0; i < count; i++) {
+				codes |= outcode(polygon[i * 4], polygon[i * 4 + 1], polygon[i * 4 + 3]);
+			}
+		}
+		if ((codes & GUARD_LEFT) != 0) count = clipPlane(count, 1, 0, -guardLeft, 0);
+		if ((codes & GUARD_RIGHT) != 0) count = clipPlane(count, -1, 0, guardRight, 0);
+		if ((codes & GUARD_TOP) != 0) count = clipPlane(count, 0, 1, -guardTop, 0);
+		if ((codes & GUARD_BOTTOM) != 0) count = clipPlane(count, 0, -1, guardBottom, 0);
+
+		for (int i = 0; i < count; i++) {
+			float invW = 1 / polygon[i * 4 + 3];
+			vertices[i * 3] = polygon[i * 4] * invW;
+			vertices[i * 3 + 1] = polygon[i * 4 + 1] * invW;
+			vertices[i * 3 + 2] = polygon[i * 4 + 2] * invW;
+		}
+		return count;
+	}
+
+	/**
+	 * Clips the polygon against one plane. A vertex is kept where a * x + b * y + c * w + d >= 0
+	 * @return The number of vertices left
+	 */
+	private int clipPlane(int count, float a, float b, float c, float d) {
+		if (count < 3) return 0;
+
+		float[] in = polygon;
+		float[] out = scratch;
+		int outCount = 0;
+
+		int p = (count - 1) * 4;
+		float pDist = a * in[p] + b * in[p + 1] + c * in[p + 3] + d;
+
+		for (int i = 0; i < count; i++) {
+			int q = i * 4;
+			float qDist = a * in[q] + b * in[q + 1] + c * in[q + 3] + d;
+
+			/** The edge crosses the plane, add the point where it crosses */
+			if ((pDist >= 0) != (qDist >= 0)) {
+				float t = pDist / (pDist - qDist);
+				int o = outCount * 4;
+				for (int k = 0; k < 4; k++) {
+					out[o + k] = in[p + k] + (in[q + k] - in[p + k]) * t;
+				}
+				outCount++;
+			}
+			if (qDist >= 0) {
+				System.arraycopy(in, q, out, outCount * 4, 4);
+				outCount++;
+			}
+
+			p = q;
+			pDist = qDist;
+		}
+
+		polygon = out;
+		scratch = in;
+		return outCount;
+	}
+
+	/**
+	 * Clips a line against the near plane. The result is read with getVertices()
+	 * @param clip Homogeneous vertices, 4 floats per vertex
+	 * @param v1 Offset of the first end in clip
+	 * @param v2 Offset of the second end in clip
+	 * @return False if the whole line is behind the near plane
+	 */
+	public boolean clipLine(float[] clip, int v1, int v2) {
+		float d1 = clip[v1 + 3] - zNear;
+		float d2 = clip[v2 + 3] - zNear;
+		if (d1 < 0 && d2 < 0) return false;
+
+		System.arraycopy(clip, v1, polygon, 0, 4);
+		System.arraycopy(clip, v2, polygon, 4, 4);
+		if (d1 < 0 || d2 < 0) {
+			float t = d1 / (d1 - d2);
+			int moved = (d1 < 0) ? 0 : 4;
+			for (int k = 0; k < 4; k++) {
+				polygon[moved + k] = clip[v1 + k] + (clip[v2 + k] - clip[v1 + k]) * t;
+			}
+		}
+
+		for (int i = 0; i < 2; i++) {
+			float invW = 1 / polygon[i * 4 + 3];
+			vertices[i * 3] = polygon[i * 4] * invW;
+			vertices[i * 3 + 1] = polygon[i * 4 + 1] * invW;
+			vertices[i * 3 + 2] = polygon[i * 4 + 2] * invW;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the screen positions of the last clipped polygon or line, 3 floats (x, y, depth) per vertex
+	 * @return The clipped vertices
+	 */
+	public float[] getVertices() {
+		return vertices;
+	}
+
+}
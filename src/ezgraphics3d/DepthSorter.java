@@ -0,0 +1,250 @@
+package ezgraphics3d;
+
+import java.util.Arrays;
+
+/**
+ * DepthSorter Class.
+ * Orders triangles for the painter's algorithm, farthest first.
+ * Each triangle is stored as one long: its depth turned into an order preserving 32 bit key
+ * in the upper half and its index in the lower half. The keys are sorted with an LSD radix sort
+ * on the upper half, so there is no Comparator, no boxing and no allocation once the arrays
+ * are big enough. Very large counts can be handed to Arrays.parallelSort instead.
+ *
+ * The camera only moves a little between frames, so the order barely changes. The sorter remembers
+ * the last order and starts from it, repairing it with an insertion sort that is close to linear
+ * when only a few triangles swapped places. If the repair needs too many swaps, or invalidate()
+ * was called because the camera jumped, it does a full sort instead.
+ * @author Ryan Theriot
+ */
+public class DepthSorter {
+
+	/** Number of keys above which Arrays.parallelSort is used by default */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 18;
+
+	/** Swaps per key the insertion sort may make before giving up for a full sort */
+	public static final int MAX_SWAPS_PER_KEY = 4;
+
+	private long[] keys = new long[1024];
+	private long[] scratch = new long[1024];
+	private int count = 0;
+
+	/** Indices in the order they were added, and each index's key for this frame */
+	private int[] added = new int[1024];
+	private long[] keyOf = new long[1024];
+	private int[] addedFrame = new int[1024];
+	private int[] placedFrame = new int[1024];
+	private int frame = 0;
+
+	/** The order from the last sort */
+	private int[] previous = new int[1024];
+	private int previousCount = 0;
+	private boolean coherent = true;
+
+	private int swaps = 0;
+	private boolean fullSort = false;
+
+	private int[] histogram = new int[256];
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+	/**
+	 * Removes every key
+	 */
+	public void clear() {
+		count = 0;
+		frame++;
+	}
+
+	/**
+	 * Adds a triangle
+	 * @param index The triangle's index. Must not be negative and must only be added once per frame
+	 * @param depth The triangle's distance from the camera. Larger is drawn first
+	 */
+	public void add(int index, float depth) {
+		if (count == added.length) {
+			added = Arrays.copyOf(added, count * 2);
+		}
+		if (index >= keyOf.length) {
+			int length = Math.max(index + 1, keyOf.length * 2);
+			keyOf = Arrays.copyOf(keyOf, length);
+			addedFrame = Arrays.copyOf(addedFrame, length);
+			placedFrame = Arrays.copyOf(placedFrame, length);
+		}
+		keyOf[index] = ((long) depthKey(depth) << 32) | index;
+		addedFrame[index] = frame;
+		added[count++] = index;
+	}
+
+	/**
+	 * Turns a depth into a 32 bit key whose signed order is farthest first.
+	 * Float bits already sort like integers for positive floats. Negative floats are flipped
+	 * so they sort below the positive ones, and the result is inverted for the descending order.
+	 */
+	private static int depthKey(float depth) {
+		if (depth != depth) depth = Float.NEGATIVE_INFINITY;
+		int bits = Float.floatToIntBits(depth + 0.0f);
+		int ascending = bits ^ ((bits >> 31) | 0x80000000);
+		return ~ascending ^ 0x80000000;
+	}
+
+	/**
+	 * Sorts the keys from farthest to closest.
+	 * Starts from the last frame's order when it can, otherwise triangles at the same depth
+	 * stay in the order they were added.
+	 */
+	public void sort() {
+		if (keys.length < count) {
+			keys = new long[added.length];
+			scratch = new long[added.length];
+		}
+
+		swaps = 0;
+		fullSort = !coherent || previousCount == 0 || !repair();
+		if (fullSort) {
+			for (int i = 0; i < count; i++) {
+				keys[i] = keyOf[added[i]];
+			}
+			if (count >= parallelThreshold) {
+				Arrays.parallelSort(keys, 0, count);
+			} else {
+				radixSort();
+			}
+		}
+
+		if (previous.length < count) {
+			previous = new int[added.length];
+		}
+		for (int i = 0; i < count; i++) {
+			previous[i] = (int) keys[i];
+		}
+		previousCount = count;
+		coherent = true;
+	}
+
+	/**
+	 * Lays the keys out in last frame's order, with triangles that are new this frame at the end,
+	 * and insertion sorts them
+	 * @return False if it took too many swaps and the keys are not sorted
+	 */
+	private boolean repair() {
+		int n = 0;
+		for (int i = 0; i < previousCount; i++) {
+			int index = previous[i];
+			if (index < addedFrame.length && addedFrame[index] == frame) {
+				keys[n++] = keyOf[index];
+				placedFrame[index] = frame;
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			int index = added[i];
+			if (placedFrame[index] != frame) {
+				keys[n++] = keyOf[index];
+			}
+		}
+
+		long maxSwaps = (long) count * MAX_SWAPS_PER_KEY;
+		for (int i = 1; i < count; i++) {
+			long key = keys[i];
+			long depth = key >> 32;
+			int j = i - 1;
+			while (j >= 0 && (keys[j] >> 32) > depth) {
+				keys[j + 1] = keys[j];
+				j--;
+			}
+			swaps += i - 1 - j;
+			if (swaps > maxSwaps) return false;
+			keys[j + 1] = key;
+		}
+		return true;
+	}
+
+	/**
+	 * Forgets the last order so the next sort is a full sort.
+	 * Call this when the view changed too much for the last order to be a good start
+	 */
+	public void invalidate() {
+		coherent = false;
+	}
+
+	/**
+	 * LSD radix sort on the upper 32 bits, one byte per pass.
+	 * Passes where every key has the same byte are skipped.
+	 */
+	private void radixSort() {
+		long[] src = keys;
+		long[] dst = scratch;
+		int[] counts = histogram;
+
+		for (int shift = 32; shift < 64; shift += 8) {
+			/** The top byte holds the sign, flipping it makes the bucket order match the signed order */
+			int flip = (shift == 56) ? 0x80 : 0;
+
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < count; i++) {
+				counts[((int) (src[i] >>> shift) & 0xFF) ^ flip]++;
+			}
+			if (counts[((int) (src[0] >>> shift) & 0xFF) ^ flip] == count) continue;
+
+			int total = 0;
+			for (int b = 0; b < 256; b++) {
+				int c = counts[b];
+				counts[b] = total;
+				total += c;
+			}
+
+			for (int i = 0; i < count; i++) {
+				long key = src[i];
+				dst[counts[((int) (key >>> shift) & 0xFF) ^ flip]++] = key;
+			}
+
+			long[] t = src;
+			src = dst;
+			dst = t;
+		}
+
+		keys = src;
+		scratch = dst;
+	}
+
+	/**
+	 * Sets how many keys there need to be before Arrays.parallelSort is used instead of the radix sort
+	 * @param threshold The number of keys. Integer.MAX_VALUE always uses the radix sort
+	 */
+	public void setParallelThreshold(int threshold) {
+		this.parallelThreshold = threshold;
+	}
+
+	/**
+	 * Getter for the number of swaps the last sort made repairing the previous order.
+	 * If the repair gave up, this is how far it got before the full sort
+	 * @return The number of swaps
+	 */
+	public int getSwaps() {
+		return swaps;
+	}
+
+	/**
+	 * Checks if the last sort sorted from scratch instead of repairing the previous order
+	 * @return True if the last sort was a full sort
+	 */
+	public boolean wasFullSort() {
+		return fullSort;
+	}
+
+	/**
+	 * Getter for the number of keys
+	 * @return The number of keys
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Gets the triangle index at a position in the sorted order
+	 * @param i The position, 0 is the farthest
+	 * @return The triangle index
+	 */
+	public int getIndex(int i) {
+		return (int) keys[i];
+	}
+
+}
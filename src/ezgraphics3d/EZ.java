@@ -113,6 +113,9 @@ public class EZ extends JPanel {
   private static int errorCounter = 0;
   private static String errorMsg = "";
 
+  /** Used for showing an image that is drawn into every frame. See addFrameImage(). */
+  private static EZImage frameImage;
+
   /**
    * This frustrating variable is necessary to get keyboard input detection working. Determined through trial and error.
    * There doesn't seem to be any documentation why and really it could have been for any other button. Clarification:
@@ -493,6 +496,25 @@ public class EZ extends JPanel {
     return vc;
   }
 
+  /**
+   * Adds an image that is drawn into every frame, such as a software rendered 3D frame, underneath every other
+   * element. The same element is reused every time, only the image it displays is swapped, so this is meant to be
+   * called once per frame after the elements were removed.
+   * 
+   * @param image to display.
+   * @param x center.
+   * @param y center.
+   */
+  public static void addFrameImage(BufferedImage image, int x, int y) {
+    if (frameImage == null) {
+      frameImage = new EZImage(image, x, y);
+    } else {
+      frameImage.setImage(image);
+      frameImage.translateTo(x, y);
+    }
+    addElement(frameImage, 0);
+  }
+
   /**
    * Adds a line to the window. Returns the line for later manipulation. If not immediately assigned to a variable,
    * chances are you will have this element stuck on screen which cannot be removed. As result in most cases you will
@@ -2268,6 +2290,29 @@ class EZImage extends EZElement {
     xCenter = x;
     yCenter = y;
   } // end constructor
+
+  /**
+   * Creates a visual image from an image that already exists in memory, such as an image that is drawn into every
+   * frame. The image is not added to the loaded image cache.
+   * 
+   * @param image to display.
+   * @param x center coordinate.
+   * @param y center coordinate.
+   */
+  public EZImage(BufferedImage image, int x, int y) {
+    img = image;
+    xCenter = x;
+    yCenter = y;
+  } // end constructor
+
+  /**
+   * Swaps the image being displayed. The new image should be the same size as the old one unless a focus area is set.
+   * 
+   * @param image to display.
+   */
+  public void setImage(BufferedImage image) {
+    img = image;
+  }
   
   @Override public void paint(Graphics2D g2) {
     if (this.isShowing) {
@@ -0,0 +1,120 @@
+package ezgraphics3d;
+
+/**
+ * LODChain Class.
+ * Levels of detail of one model, from the full mesh (level 0) to coarser and coarser versions of it.
+ * A chain is shared like a Mesh. Every MeshInstance or Node using it keeps its own current level,
+ * which the Renderer picks each frame from how big the instance's bounding sphere is on the screen.
+ *
+ * Level i + 1 is used once the model is smaller than getScreenSize(i) pixels across. To keep a model
+ * sitting right at a switch size from popping back and forth, it only goes coarser once it is a
+ * bit smaller than the switch size, and only goes finer again once it is a bit bigger.
+ * @author Ryan Theriot
+ */
+public class LODChain {
+
+	/** Default screen size, in pixels across, below which level 1 is used. Each level after that switches at half the size */
+	public static final float DEFAULT_SCREEN_SIZE = 400;
+	/** Default fraction of the switch size a model has to pass before its level changes */
+	public static final float DEFAULT_HYSTERESIS = 0.15f;
+
+	private Mesh[] levels;
+	private float[] screenSizes;
+	private float hysteresis = DEFAULT_HYSTERESIS;
+
+	/**
+	 * Constructor Method
+	 * Builds the levels with MeshSimplifier, each with half the triangles of the one before
+	 * @param base The full mesh
+	 * @param numLevels Number of levels, including the full mesh
+	 */
+	public LODChain(Mesh base, int numLevels) {
+		levels = new Mesh[Math.max(1, numLevels)];
+		levels[0] = base;
+		for (int i = 1; i < levels.length; i++) {
+			levels[i] = MeshSimplifier.simplify(levels[i - 1], levels[i - 1].getNumTriangles() / 2);
+		}
+		setDefaultScreenSizes();
+	}
+
+	/**
+	 * Constructor Method
+	 * Uses levels that were already made, for example simplified ahead of time
+	 * @param levels The meshes, finest first
+	 */
+	public LODChain(Mesh... levels) {
+		if (levels.length == 0) throw new IllegalArgumentException("A LODChain needs at least one level");
+		this.levels = levels.clone();
+		setDefaultScreenSizes();
+	}
+
+	private void setDefaultScreenSizes() {
+		screenSizes = new float[levels.length - 1];
+		for (int i = 0; i < screenSizes.length; i++) {
+			screenSizes[i] = DEFAULT_SCREEN_SIZE / (1 << i);
+		}
+	}
+
+	/**
+	 * Picks the level for a model of a given size on the screen
+	 * @param screenSize How many pixels across the model is
+	 * @param current The level the model uses now
+	 * @return The level to use
+	 */
+	public int selectLevel(float screenSize, int current) {
+		int level = Math.max(0, Math.min(current, levels.length - 1));
+		while (level < screenSizes.length && screenSize < screenSizes[level] * (1 - hysteresis)) {
+			level++;
+		}
+		while (level > 0 && screenSize > screenSizes[level - 1] * (1 + hysteresis)) {
+			level--;
+		}
+		return level;
+	}
+
+	/**
+	 * Gets one level of the chain
+	 * @param level The level, 0 is the full mesh
+	 * @return The mesh of that level
+	 */
+	public Mesh getLevel(int level) {
+		return levels[level];
+	}
+
+	public int getNumLevels() {
+		return levels.length;
+	}
+
+	/**
+	 * Sets the screen sizes the levels switch at
+	 * @param screenSizes Pixels across below which level i + 1 is used, one for each level after the first, largest first
+	 */
+	public void setScreenSizes(float... screenSizes) {
+		if (screenSizes.length != levels.length - 1) {
+			throw new IllegalArgumentException("Expected " + (levels.length - 1) + " screen sizes");
+		}
+		this.screenSizes = screenSizes.clone();
+	}
+
+	/**
+	 * Getter for the size a level switch happens at
+	 * @param level The level, below getNumLevels() - 1
+	 * @return Pixels across below which level + 1 is used
+	 */
+	public float getScreenSize(int level) {
+		return screenSizes[level];
+	}
+
+	/**
+	 * Sets how far past a switch size a model has to get before its level changes
+	 * @param hysteresis Fraction of the switch size, 0 switches right at it
+	 */
+	public void setHysteresis(float hysteresis) {
+		this.hysteresis = Math.max(0, Math.min(0.9f, hysteresis));
+	}
+
+	public float getHysteresis() {
+		return hysteresis;
+	}
+
+}
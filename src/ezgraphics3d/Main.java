@@ -1,7 +1,8 @@
 package ezgraphics3d;
 
 import java.awt.Color;
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * EZGraphics3D
@@ -9,8 +10,8 @@ import java.util.ArrayList;
  * This is the basic setup procedure for EZGraphics3D
  * 1. Initialize a window with EZ. 
  * 2. Setup a new Camera object and Renderer object. 
- * 3. Load up desired OBJ/TEXT Files into new Mesh objects.
- * 4. Add all the newly created meshes to an ArrayList
+ * 3. Start loading the desired OBJ Files. loadAllAsync returns right away
+ * 4. Put the loading meshes in Nodes and add the nodes to a Scene. Each node draws a box until its mesh is loaded
  * 5. Then start the main rendering loop (Explained Below)
  * 
  * @author Ryan Theriot
@@ -27,6 +28,8 @@ public class Main {
 	public static int framerate = 30;
 	/** Background color of window */
 	public static Color backGroundColor = Color.darkGray;
+	/** Renderer backend. SOFTWARE uses a z-buffered frame buffer, EZ_POLYGON adds an EZPolygon per triangle */
+	public static Renderer.Backend backend = Renderer.Backend.EZ_POLYGON;
 	
 	/**
 	 * Main Method
@@ -40,10 +43,13 @@ public class Main {
 	
 		/** Create the Camera and Renderer */
 		Camera camera = new Camera (2, 0, 2, 45, 0, 0.1f, 20, 60);
-		Renderer renderer = new Renderer();
+		Renderer renderer = new Renderer(backend);
+
+		//Load the meshes at the same time, in the background
+		List<CompletableFuture<Mesh>> meshes = MeshLoader.loadAllAsync("Resources/head.obj", "Resources/blockaderunner.obj");
 
 		//Head Mesh
-		Mesh head = MeshLoader.loadOBJFile("Resources/head.obj");
+		Node head = new Node(meshes.get(0));
 		head.setColor(Color.WHITE);
 		head.setCenter(0, 0, 0);
 		head.scale(1, 1, 1);
@@ -51,7 +57,7 @@ public class Main {
 		head.translate(0, 0, 0);
 		
 		//Blockade Runner Mesh
-		Mesh blockaderunner = MeshLoader.loadOBJFile("Resources/blockaderunner.obj");
+		Node blockaderunner = new Node(meshes.get(1));
 		blockaderunner.setColor(Color.red);
 		blockaderunner.setCenter(0, 0, 0);
 		blockaderunner.scale(1, 1, 1);
@@ -59,11 +65,11 @@ public class Main {
 		blockaderunner.translate(0, 3, 0);
 		
 
-		//Add all the created meshes to an ArrayList
-		//This will be used to pass all the meshes to the Renderer every frame
-		ArrayList<Mesh> meshList = new ArrayList<Mesh>();
-		meshList.add(head);
-		meshList.add(blockaderunner);
+		//Add all the created nodes to the Scene
+		//This is passed to the Renderer every frame. Nodes added to a node move with it
+		Scene scene = new Scene();
+		scene.add(head);
+		scene.add(blockaderunner);
 		
 		/**
 		* Main Rendering Loop
@@ -71,7 +77,7 @@ public class Main {
 		* 2. Scale, rotate, or translate any meshes 
 		*   **ORDER MUST BE SCALE, ROTATE AND THEN TRANSLATE**
 		* 3. The screen is cleared with EZ.removeAllEZElements();
-		* 4. Use the renderer's render() method to draw all the meshes in the MeshList to the screen
+		* 4. Use the renderer's render() method to draw all the meshes in the Scene to the screen
 		* 5. Refresh the screen with EZ
 		*/
 		while (true) {
@@ -81,14 +87,15 @@ public class Main {
 			
 	
 			//Scale, Rotate, and Translate Meshes. **SRT** (Scale, Rotate, Translate)
-			head.rotate(0, -40, 0);
-			blockaderunner.rotate(0, 45, 0);
+			//Rotations are in degrees per frame
+			head.rotate(0, -0.7f, 0);
+			blockaderunner.rotate(0, 0.8f, 0);
 
 			//Clear the screen
 			EZ.removeAllEZElements();
 
 			//Render The Image and refresh the screen
-			renderer.render(meshList, camera);
+			renderer.render(scene, camera);
 			EZ.refreshScreen();
 
 		}
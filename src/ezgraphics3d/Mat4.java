@@ -0,0 +1,338 @@
+package ezgraphics3d;
+
+/**
+ * Mat4 Class.
+ * A 4x4 matrix stored as a flat float[16] in row-major order, so m[row * 4 + col].
+ * All operations are unrolled and write into matrices or arrays the caller provides,
+ * so nothing is allocated once the matrices exist.
+ * The static methods in Matrix are kept as adapters that return float[][] arrays.
+ * @author Ryan Theriot
+ */
+public class Mat4 {
+
+	/** The matrix values in row-major order */
+	public final float[] m = new float[16];
+
+	/**
+	 * Constructor Method
+	 * Creates an identity matrix
+	 */
+	public Mat4() {
+		setIdentity();
+	}
+
+	/**
+	 * Constructor Method
+	 * @param matrix A 4x4 float[][] matrix to copy
+	 */
+	public Mat4(float[][] matrix) {
+		set(matrix);
+	}
+
+	/**
+	 * Sets this matrix to the identity matrix
+	 * @return This matrix
+	 */
+	public Mat4 setIdentity() {
+		return set(1, 0, 0, 0,
+		           0, 1, 0, 0,
+		           0, 0, 1, 0,
+		           0, 0, 0, 1);
+	}
+
+	/**
+	 * Sets every value of this matrix, row by row
+	 * @return This matrix
+	 */
+	public Mat4 set(float m00, float m01, float m02, float m03,
+	                float m10, float m11, float m12, float m13,
+	                float m20, float m21, float m22, float m23,
+	                float m30, float m31, float m32, float m33) {
+		float[] d = m;
+		d[0] = m00;  d[1] = m01;  d[2] = m02;  d[3] = m03;
+		d[4] = m10;  d[5] = m11;  d[6] = m12;  d[7] = m13;
+		d[8] = m20;  d[9] = m21;  d[10] = m22; d[11] = m23;
+		d[12] = m30; d[13] = m31; d[14] = m32; d[15] = m33;
+		return this;
+	}
+
+	/**
+	 * Copies another matrix into this one
+	 * @param other The matrix to copy
+	 * @return This matrix
+	 */
+	public Mat4 set(Mat4 other) {
+		System.arraycopy(other.m, 0, m, 0, 16);
+		return this;
+	}
+
+	/**
+	 * Copies a float[][] matrix into this one
+	 * @param matrix A 4x4 float[][] matrix
+	 * @return This matrix
+	 */
+	public Mat4 set(float[][] matrix) {
+		for (int row = 0; row < 4; row++) {
+			for (int col = 0; col < 4; col++) {
+				m[row * 4 + col] = matrix[row][col];
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Sets this matrix to a translation matrix
+	 * @param x The amount to translate on the x-axis
+	 * @param y The amount to translate on the y-axis
+	 * @param z The amount to translate on the z-axis
+	 * @return This matrix
+	 */
+	public Mat4 setTranslation(float x, float y, float z) {
+		return set(1, 0, 0, x,
+		           0, 1, 0, y,
+		           0, 0, 1, z,
+		           0, 0, 0, 1);
+	}
+
+	/**
+	 * Sets this matrix to a scale matrix
+	 * @param x The amount to scale on the x-axis
+	 * @param y The amount to scale on the y-axis
+	 * @param z The amount to scale on the z-axis
+	 * @return This matrix
+	 */
+	public Mat4 setScale(float x, float y, float z) {
+		return set(x, 0, 0, 0,
+		           0, y, 0, 0,
+		           0, 0, z, 0,
+		           0, 0, 0, 1);
+	}
+
+	/**
+	 * Sets this matrix to a rotation about the x-axis
+	 * @param degree The amount to rotate in degrees
+	 * @return This matrix
+	 */
+	public Mat4 setRotationX(float degree) {
+		float rad = (float) Math.toRadians(degree);
+		float cosD = (float) Math.cos(rad);
+		float sinD = (float) Math.sin(rad);
+		return set(1, 0, 0, 0,
+		           0, cosD, -sinD, 0,
+		           0, sinD, cosD, 0,
+		           0, 0, 0, 1);
+	}
+
+	/**
+	 * Sets this matrix to a rotation about the y-axis
+	 * @param degree The amount to rotate in degrees
+	 * @return This matrix
+	 */
+	public Mat4 setRotationY(float degree) {
+		float rad = (float) Math.toRadians(degree);
+		float cosD = (float) Math.cos(rad);
+		float sinD = (float) Math.sin(rad);
+		return set(cosD, 0, sinD, 0,
+		           0, 1, 0, 0,
+		           -sinD, 0, cosD, 0,
+		           0, 0, 0, 1);
+	}
+
+	/**
+	 * Sets this matrix to a rotation about the z-axis
+	 * @param degree The amount to rotate in degrees
+	 * @return This matrix
+	 */
+	public Mat4 setRotationZ(float degree) {
+		float rad = (float) Math.toRadians(degree);
+		float cosD = (float) Math.cos(rad);
+		float sinD = (float) Math.sin(rad);
+		return set(cosD, -sinD, 0, 0,
+		           sinD, cosD, 0, 0,
+		           0, 0, 1, 0,
+		           0, 0, 0, 1);
+	}
+
+	/**
+	 * Multiplies this matrix by another and stores the result in dst ( dst = this * other ).
+	 * dst may be this matrix or other.
+	 * @param other The matrix on the right side
+	 * @param dst The matrix the result is written to
+	 * @return dst
+	 */
+	public Mat4 mulInto(Mat4 other, Mat4 dst) {
+		float[] a = m;
+		float[] b = other.m;
+
+		float a00 = a[0],  a01 = a[1],  a02 = a[2],  a03 = a[3];
+		float a10 = a[4],  a11 = a[5],  a12 = a[6],  a13 = a[7];
+		float a20 = a[8],  a21 = a[9],  a22 = a[10], a23 = a[11];
+		float a30 = a[12], a31 = a[13], a32 = a[14], a33 = a[15];
+
+		float b00 = b[0],  b01 = b[1],  b02 = b[2],  b03 = b[3];
+		float b10 = b[4],  b11 = b[5],  b12 = b[6],  b13 = b[7];
+		float b20 = b[8],  b21 = b[9],  b22 = b[10], b23 = b[11];
+		float b30 = b[12], b31 = b[13], b32 = b[14], b33 = b[15];
+
+		return dst.set(a00 * b00 + a01 * b10 + a02 * b20 + a03 * b30,
+		               a00 * b01 + a01 * b11 + a02 * b21 + a03 * b31,
+		               a00 * b02 + a01 * b12 + a02 * b22 + a03 * b32,
+		               a00 * b03 + a01 * b13 + a02 * b23 + a03 * b33,
+
+		               a10 * b00 + a11 * b10 + a12 * b20 + a13 * b30,
+		               a10 * b01 + a11 * b11 + a12 * b21 + a13 * b31,
+		               a10 * b02 + a11 * b12 + a12 * b22 + a13 * b32,
+		               a10 * b03 + a11 * b13 + a12 * b23 + a13 * b33,
+
+		               a20 * b00 + a21 * b10 + a22 * b20 + a23 * b30,
+		               a20 * b01 + a21 * b11 + a22 * b21 + a23 * b31,
+		               a20 * b02 + a21 * b12 + a22 * b22 + a23 * b32,
+		               a20 * b03 + a21 * b13 + a22 * b23 + a23 * b33,
+
+		               a30 * b00 + a31 * b10 + a32 * b20 + a33 * b30,
+		               a30 * b01 + a31 * b11 + a32 * b21 + a33 * b31,
+		               a30 * b02 + a31 * b12 + a32 * b22 + a33 * b32,
+		               a30 * b03 + a31 * b13 + a32 * b23 + a33 * b33);
+	}
+
+	/**
+	 * Transforms a point (w = 1) and writes x, y, z and w into dst
+	 * @param x The X Coordinate
+	 * @param y The Y Coordinate
+	 * @param z The Z Coordinate
+	 * @param dst The array to write to
+	 * @param offset Where in dst to write the 4 values
+	 */
+	public void transformPoint(float x, float y, float z, float[] dst, int offset) {
+		float[] a = m;
+		dst[offset]     = a[0] * x + a[1] * y + a[2] * z + a[3];
+		dst[offset + 1] = a[4] * x + a[5] * y + a[6] * z + a[7];
+		dst[offset + 2] = a[8] * x + a[9] * y + a[10] * z + a[11];
+		dst[offset + 3] = a[12] * x + a[13] * y + a[14] * z + a[15];
+	}
+
+	/**
+	 * Transforms a direction (w = 0), such as a normal, and writes x, y and z into dst
+	 * @param x The X Coordinate
+	 * @param y The Y Coordinate
+	 * @param z The Z Coordinate
+	 * @param dst The array to write to
+	 * @param offset Where in dst to write the 3 values
+	 */
+	public void transformDirection(float x, float y, float z, float[] dst, int offset) {
+		float[] a = m;
+		dst[offset]     = a[0] * x + a[1] * y + a[2] * z;
+		dst[offset + 1] = a[4] * x + a[5] * y + a[6] * z;
+		dst[offset + 2] = a[8] * x + a[9] * y + a[10] * z;
+	}
+
+	/**
+	 * Writes the transpose of this matrix into dst. dst may be this matrix.
+	 * @param dst The matrix the result is written to
+	 * @return dst
+	 */
+	public Mat4 transpose(Mat4 dst) {
+		float[] a = m;
+		return dst.set(a[0], a[4], a[8],  a[12],
+		               a[1], a[5], a[9],  a[13],
+		               a[2], a[6], a[10], a[14],
+		               a[3], a[7], a[11], a[15]);
+	}
+
+	/**
+	 * Writes the inverse of this matrix into dst. dst may be this matrix.
+	 * @param dst The matrix the result is written to
+	 * @return True if the matrix could be inverted. False if it is singular, in which case dst is unchanged
+	 */
+	public boolean inverse(Mat4 dst) {
+		float[] a = m;
+		float a00 = a[0],  a01 = a[1],  a02 = a[2],  a03 = a[3];
+		float a10 = a[4],  a11 = a[5],  a12 = a[6],  a13 = a[7];
+		float a20 = a[8],  a21 = a[9],  a22 = a[10], a23 = a[11];
+		float a30 = a[12], a31 = a[13], a32 = a[14], a33 = a[15];
+
+		/** 2x2 determinants of the top two rows and the bottom two rows */
+		float b00 = a00 * a11 - a01 * a10;
+		float b01 = a00 * a12 - a02 * a10;
+		float b02 = a00 * a13 - a03 * a10;
+		float b03 = a01 * a12 - a02 * a11;
+		float b04 = a01 * a13 - a03 * a11;
+		float b05 = a02 * a13 - a03 * a12;
+		float b06 = a20 * a31 - a21 * a30;
+		float b07 = a20 * a32 - a22 * a30;
+		float b08 = a20 * a33 - a23 * a30;
+		float b09 = a21 * a32 - a22 * a31;
+		float b10 = a21 * a33 - a23 * a31;
+		float b11 = a22 * a33 - a23 * a32;
+
+		float det = b00 * b11 - b01 * b10 + b02 * b09 + b03 * b08 - b04 * b07 + b05 * b06;
+		if (det == 0) return false;
+		float invDet = 1 / det;
+
+		dst.set((a11 * b11 - a12 * b10 + a13 * b09) * invDet,
+		        (a02 * b10 - a01 * b11 - a03 * b09) * invDet,
+		        (a31 * b05 - a32 * b04 + a33 * b03) * invDet,
+		        (a22 * b04 - a21 * b05 - a23 * b03) * invDet,
+
+		        (a12 * b08 - a10 * b11 - a13 * b07) * invDet,
+		        (a00 * b11 - a02 * b08 + a03 * b07) * invDet,
+		        (a32 * b02 - a30 * b05 - a33 * b01) * invDet,
+		        (a20 * b05 - a22 * b02 + a23 * b01) * invDet,
+
+		        (a10 * b10 - a11 * b08 + a13 * b06) * invDet,
+		        (a01 * b08 - a00 * b10 - a03 * b06) * invDet,
+		        (a30 * b04 - a31 * b02 + a33 * b00) * invDet,
+		        (a21 * b02 - a20 * b04 - a23 * b00) * invDet,
+
+		        (a11 * b07 - a10 * b09 - a12 * b06) * invDet,
+		        (a00 * b09 - a01 * b07 + a02 * b06) * invDet,
+		        (a31 * b01 - a30 * b03 - a32 * b00) * invDet,
+		        (a20 * b03 - a21 * b01 + a22 * b00) * invDet);
+		return true;
+	}
+
+	/**
+	 * Writes the normal matrix of this matrix into dst. dst may be this matrix.
+	 * The normal matrix is the inverse transpose of the upper 3x3, used to transform
+	 * surface normals so they stay perpendicular under non-uniform scaling.
+	 * The translation part of dst is cleared.
+	 * @param dst The matrix the result is written to
+	 * @return True if the matrix could be inverted. False if it is singular, in which case dst is unchanged
+	 */
+	public boolean normalMatrix(Mat4 dst) {
+		float[] a = m;
+		float a00 = a[0], a01 = a[1], a02 = a[2];
+		float a10 = a[4], a11 = a[5], a12 = a[6];
+		float a20 = a[8], a21 = a[9], a22 = a[10];
+
+		/** Cofactors of the 3x3. The inverse transpose is the cofactor matrix divided by the determinant */
+		float c00 = a11 * a22 - a12 * a21;
+		float c01 = a12 * a20 - a10 * a22;
+		float c02 = a10 * a21 - a11 * a20;
+
+		float det = a00 * c00 + a01 * c01 + a02 * c02;
+		if (det == 0) return false;
+		float invDet = 1 / det;
+
+		dst.set(c00 * invDet, c01 * invDet, c02 * invDet, 0,
+		        (a02 * a21 - a01 * a22) * invDet, (a00 * a22 - a02 * a20) * invDet, (a01 * a20 - a00 * a21) * invDet, 0,
+		        (a01 * a12 - a02 * a11) * invDet, (a02 * a10 - a00 * a12) * invDet, (a00 * a11 - a01 * a10) * invDet, 0,
+		        0, 0, 0, 1);
+		return true;
+	}
+
+	/**
+	 * Returns this matrix as a new float[][] array
+	 * @return The matrix as a 4x4 float[][] array
+	 */
+	public float[][] toArray() {
+		float[][] matrix = new float[4][4];
+		for (int row = 0; row < 4; row++) {
+			for (int col = 0; col < 4; col++) {
+				matrix[row][col] = m[row * 4 + col];
+			}
+		}
+		return matrix;
+	}
+
+}
@@ -2,6 +2,8 @@ package ezgraphics3d;
 
 /**
  * Matrix Class.
+ * These methods return new float[][] arrays and are kept for convenience.
+ * Code that runs every frame should use Mat4, which does not allocate.
  * @author Ryan Theriot
  */
 public class Matrix {
@@ -14,12 +16,7 @@ public class Matrix {
 	 * @return The translation Matrix as float[][] array
 	 */
 	public static float[][] translateMatrix(float x, float y, float z) {
-
-		float[][] matrix = { { 1, 0, 0, x }, 
-				             { 0, 1, 0, y }, 
-				             { 0, 0, 1, z }, 
-				             { 0, 0, 0, 1 } };
-		return matrix;
+		return new Mat4().setTranslation(x, y, z).toArray();
 	}
 
 	/**
@@ -30,12 +27,7 @@ public class Matrix {
 	 * @return The scale matrix as a float[][] array
 	 */
 	public static float[][] scaleMatrix(float x, float y, float z) {
-
-		float[][] matrix = { { x, 0, 0, 0 }, 
-				             { 0, y, 0, 0 }, 
-				             { 0, 0, z, 0 }, 
-				             { 0, 0, 0, 1 } };
-		return matrix;
+		return new Mat4().setScale(x, y, z).toArray();
 	}
 
 	/**
@@ -44,16 +36,7 @@ public class Matrix {
 	 * @return The rotation matrix as a float[][] array
 	 */
 	public static float[][] rotateXMatrix(float degree) {
-
-		float rad = (float) Math.toRadians(degree);
-		float cosD = (float) Math.cos(rad);
-		float sinD = (float) Math.sin(rad);
-
-		float[][] matrix = { { 1, 0, 0, 0 }, 
-				             { 0, cosD, -sinD, 0 }, 
-				             { 0, sinD, cosD, 0 }, 
-				             { 0, 0, 0, 1 } };
-		return matrix;
+		return new Mat4().setRotationX(degree).toArray();
 	}
 
 	/**
@@ -62,17 +45,7 @@ public class Matrix {
 	 * @return The rotation matrix as a float[][] array
 	 */
 	public static float[][] rotateYMatrix(float degree) {
-
-		float rad = (float) Math.toRadians(degree);
-		float cosD = (float) Math.cos(rad);
-		float sinD = (float) Math.sin(rad);
-
-		float[][] matrix = { { cosD, 0, sinD, 0 }, 
-				             { 0, 1, 0, 0 }, 
-				             { -sinD, 0, cosD, 0 }, 
-				             { 0, 0, 0, 1 } };
-
-		return matrix;
+		return new Mat4().setRotationY(degree).toArray();
 	}
 
 	/**
@@ -81,17 +54,7 @@ public class Matrix {
 	 * @return The rotation matrix as a float[][] array
 	 */
 	public static float[][] rotateZMatrix(float degree) {
-
-		float rad = (float) Math.toRadians(degree);
-		float cosD = (float) Math.cos(rad);
-		float sinD = (float) Math.sin(rad);
-
-		float[][] matrix = { { cosD, -sinD, 0, 0 }, 
-				             { sinD, cosD, 0, 0 }, 
-				             { 0, 0, 1, 0 }, 
-				             { 0, 0, 0, 1 } };
-
-		return matrix;
+		return new Mat4().setRotationZ(degree).toArray();
 	}
 
 	/**
@@ -1,31 +1,201 @@
 package ezgraphics3d;
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Mesh Class.
- * Stores a collection of triangles that make up the mesh.
+ * Stores the triangles that make up the mesh as an indexed triangle list.
+ * Every vertex is stored once in a flat float[] of positions (x, y, z), and every triangle
+ * is 3 entries in an int[] index buffer that point into it, so vertices shared by
+ * neighboring triangles are only stored and transformed once.
+ * Triangle objects are lightweight views over these buffers.
+ * 
+ * Rotating, scaling and translating a Mesh does not touch its vertices. The vertices stay in
+ * model space and the mesh keeps a Transform whose model matrix the Renderer folds into the
+ * matrix it transforms the vertices with, so moving a mesh costs the same no matter how big it is.
  * @author Ryan Theriot
  */
-public class Mesh {
-	
+public class Mesh implements Renderable {
+
+	/**
+	 * Which triangles the Renderer skips
+	 * BACK: Triangles facing away from the camera. Right for closed meshes
+	 * FRONT: Triangles facing the camera
+	 * NONE: Nothing is culled. Needed for open meshes that can be seen from both sides
+	 */
+	public enum CullMode { BACK, FRONT, NONE }
+
+	private float[] positions;
+	private int numVertices;
+	private int[] indices;
+	private int numTriangles;
+
+	/** Triangle views, created the first time they are asked for */
 	private ArrayList<Triangle> mesh;
-	private float centerX, centerY, centerZ;
+
+	/** The transform, created when the mesh is first moved. Until then the model matrix is the identity */
+	private Transform transform;
 	private Color meshColor = Color.white;
-	
+	private CullMode cullMode = CullMode.BACK;
+
+	private static final float[] NO_FLOATS = new float[0];
+
+	/** Model and normal matrix of a mesh that has not been moved */
+	private static final Mat4 IDENTITY = new Mat4();
+
+	/** Number of shades in a shade ramp */
+	public static final int SHADES = 256;
+
+	/** Shades of the mesh's color from black to full brightness, built when first needed */
+	private int[] shadeRamp;
+	private Color[] shadeColors;
+
+	/**
+	 * Surface normals, 3 floats (x, y, z) per triangle, normalized.
+	 * The model space normals are calculated once and only again if the vertices change.
+	 * The world normals are the model normals rotated by the normal matrix, and are only
+	 * rotated again when the transform changes, so meshes that do not move never touch them.
+	 */
+	private float[] normals = NO_FLOATS;
+	private boolean normalsValid = false;
+	private float[] worldNormals = NO_FLOATS;
+	private boolean worldNormalsValid = false;
+	private int worldNormalsVersion;
+	private Mat4 normalMatrix;
+	private boolean normalMatrixValid = false;
+	private int normalMatrixVersion;
+
+	/**
+	 * Bounds of the vertices in model space, calculated when first needed, and the same
+	 * bounds moved into the world, updated when the transform changes.
+	 * They are created the first time they are calculated, so a mesh that only backs a Triangle does not carry them
+	 */
+	private BoundingBox localBox;
+	private BoundingSphere localSphere;
+	private boolean boundsValid = false;
+	private BoundingBox worldBox;
+	private BoundingSphere worldSphere;
+	private boolean worldBoundsValid = false;
+	private int worldBoundsVersion;
+	/** Goes up every time the world bounds are updated, see getBoundsVersion() */
+	private int boundsChanges;
+
+	/** Tree over the triangles for picking and collision, built when first needed */
+	private MeshBVH bvh;
+
+	/** Optional tree that gives the triangles in back to front order, see setBSPTree() */
+	private BSPTree bspTree;
+
+	/** Centroid of the vertices in model space, calculated when first needed */
+	private boolean centroidValid = false;
+	private float centroidX, centroidY, centroidZ;
+
 	/**
 	 * Constructor Method
 	 */
 	public Mesh () {
-		mesh = new ArrayList<Triangle>();
+		this(64, 64);
+	}
+
+	/**
+	 * Constructor Method
+	 * Reserves room for the expected number of vertices and triangles
+	 * @param vertexCapacity Expected number of vertices
+	 * @param triangleCapacity Expected number of triangles
+	 */
+	public Mesh (int vertexCapacity, int triangleCapacity) {
+		positions = new float[Math.max(1, vertexCapacity) * 3];
+		indices = new int[Math.max(1, triangleCapacity) * 3];
+	}
+
+	/**
+	 * Constructor Method
+	 * Creates a mesh of just one triangle, for Triangle(Vector, Vector, Vector).
+	 * It holds only its 3 vertices until it is moved or its bounds are asked for
+	 * @param v1 Vertex 1
+	 * @param v2 Vertex 2
+	 * @param v3 Vertex 3
+	 */
+	Mesh (Vector v1, Vector v2, Vector v3) {
+		positions = new float[] { v1.getX(), v1.getY(), v1.getZ(), v2.getX(), v2.getY(), v2.getZ(), v3.getX(), v3.getY(), v3.getZ() };
+		numVertices = 3;
+		indices = new int[] { 0, 1, 2 };
+		numTriangles = 1;
+	}
+
+	/**
+	 * Adds a vertex to the Mesh
+	 * @param x The X Coordinate
+	 * @param y The Y Coordinate
+	 * @param z The Z Coordinate
+	 * @return The index of the new vertex
+	 */
+	public int addVertex(float x, float y, float z) {
+		if (numVertices * 3 == positions.length) {
+			positions = Arrays.copyOf(positions, positions.length * 2);
+		}
+		int i = numVertices * 3;
+		positions[i] = x;
+		positions[i + 1] = y;
+		positions[i + 2] = z;
+		geometryChanged();
+		return numVertices++;
 	}
-	
+
+	/**
+	 * Adds a triangle made of three vertices that are already in the Mesh
+	 * @param v1 Index of vertex 1
+	 * @param v2 Index of vertex 2
+	 * @param v3 Index of vertex 3
+	 */
+	public void addTriangle(int v1, int v2, int v3) {
+		if (numTriangles * 3 == indices.length) {
+			indices = Arrays.copyOf(indices, indices.length * 2);
+		}
+		int i = numTriangles * 3;
+		indices[i] = v1;
+		indices[i + 1] = v2;
+		indices[i + 2] = v3;
+		numTriangles++;
+		mesh = null;
+		geometryChanged();
+	}
+
 	/**
 	 * Adds a triangle to the Mesh
+	 * The triangle's vertices are copied into the mesh as new vertices
 	 * @param triangle The triangle to be added
 	 */
 	public void addTriangle(Triangle triangle) {
-		mesh.add(triangle);
+		Vector v1 = triangle.getV1();
+		Vector v2 = triangle.getV2();
+		Vector v3 = triangle.getV3();
+		addTriangle(addVertex(v1.getX(), v1.getY(), v1.getZ()),
+		            addVertex(v2.getX(), v2.getY(), v2.getZ()),
+		            addVertex(v3.getX(), v3.getY(), v3.getZ()));
+	}
+
+	/**
+	 * Creates a box, for example to stand in for a mesh that is still loading
+	 * @param box The corners of the box
+	 * @return A closed mesh of 8 vertices and 12 triangles facing out
+	 */
+	public static Mesh createBox(BoundingBox box) {
+		Mesh mesh = new Mesh(8, 12);
+		for (int i = 0; i < 8; i++) {
+			mesh.addVertex(((i & 1) == 0) ? box.getMinX() : box.getMaxX(),
+			               ((i & 2) == 0) ? box.getMinY() : box.getMaxY(),
+			               ((i & 4) == 0) ? box.getMinZ() : box.getMaxZ());
+		}
+
+		/** The corners of each side, counter clockwise seen from outside */
+		int[] sides = { 0, 4, 6, 2,  1, 3, 7, 5,  0, 1, 5, 4,  2, 6, 7, 3,  0, 2, 3, 1,  4, 5, 7, 6 };
+		for (int i = 0; i < sides.length; i += 4) {
+			mesh.addTriangle(sides[i], sides[i + 1], sides[i + 2]);
+			mesh.addTriangle(sides[i], sides[i + 2], sides[i + 3]);
+		}
+		return mesh;
 	}
 
 	/**
@@ -35,16 +205,7 @@ public class Mesh {
 	 * @param zDeg The Z Degree of rotation
 	 */
 	public void rotate(float xDeg, float yDeg, float zDeg) {
-		
-		float[][] xMatrix = Matrix.rotateXMatrix((float)Math.toRadians(xDeg));
-		float[][] yMatrix = Matrix.rotateYMatrix((float)Math.toRadians(yDeg));
-		float[][] zMatrix = Matrix.rotateZMatrix((float)Math.toRadians(zDeg));
-		
-		for (int i = 0; i < this.getNumTriangles(); i++) {
-			this.getTriangle(i).rotate(xMatrix, centerX, centerY, centerZ);		
-			this.getTriangle(i).rotate(yMatrix, centerX, centerY, centerZ);	
-			this.getTriangle(i).rotate(zMatrix, centerX, centerY, centerZ);	
-		}
+		getTransform().rotate(xDeg, yDeg, zDeg);
 	}
 
 	/**
@@ -54,54 +215,387 @@ public class Mesh {
 	 * @param z The Z scaling
 	 */
 	public void scale (float x, float y, float z) {
-		float[][] matrix = Matrix.scaleMatrix(x, y, z);
-		
-		for (int i = 0; i < this.getNumTriangles(); i++) {
-			this.getTriangle(i).scale(matrix, centerX, centerY, centerZ);				
-		}
+		getTransform().scale(x, y, z);
 	}
 
 	/**
 	 * Translates the Mesh
+	 * Afterwards the mesh rotates and scales around its centroid
 	 * @param x The X translation
 	 * @param y The Y translation
 	 * @param z The Z translation
 	 */
 	public void translate (float x, float y, float z) {
-		float [][] matrix = Matrix.translateMatrix(x, y, z);
-		
-		for (int i = 0; i < this.getNumTriangles(); i++) {
-			this.getTriangle(i).translate(matrix);				
+		getTransform().translate(x, y, z);
+
+		calculateCentroid();
+		getTransform().setPivot(centroidX, centroidY, centroidZ);
+	}
+
+	/**
+	 * Getter for the mesh's model transform
+	 * @return The Transform
+	 */
+	public Transform getTransform() {
+		if (transform == null) transform = new Transform();
+		return transform;
+	}
+
+	/**
+	 * Returns the model matrix that takes the mesh's vertices to world space
+	 * @return The model matrix. Do not modify it
+	 */
+	public Mat4 getModelMatrix() {
+		return (transform == null) ? IDENTITY : transform.getMatrix();
+	}
+
+	/**
+	 * Version of the transform, 0 until the mesh is moved
+	 */
+	private int getTransformVersion() {
+		return (transform == null) ? 0 : transform.getVersion();
+	}
+
+	/**
+	 * A mesh is its own geometry
+	 * @return This mesh
+	 */
+	public Mesh getGeometry() {
+		return this;
+	}
+
+	/**
+	 * A mesh has only one level of detail. Use a MeshInstance or a Node with a LODChain for more
+	 * @param screenSize How many pixels across the mesh is on the screen
+	 */
+	public void selectLevelOfDetail(float screenSize) {
+	}
+
+	/**
+	 * Returns the matrix that takes surface normals to world space, rebuilt when the transform changes
+	 * @return The normal matrix. Do not modify it
+	 */
+	public Mat4 getNormalMatrix() {
+		if (transform == null) return IDENTITY;
+		if (!normalMatrixValid || normalMatrixVersion != transform.getVersion()) {
+			if (normalMatrix == null) normalMatrix = new Mat4();
+			getModelMatrix().normalMatrix(normalMatrix);
+			normalMatrixValid = true;
+			normalMatrixVersion = transform.getVersion();
+		}
+		return normalMatrix;
+	}
+
+	/**
+	 * Must be called after the vertex buffer is changed directly, so cached values are recalculated
+	 */
+	void geometryChanged() {
+		centroidValid = false;
+		normalsValid = false;
+		worldNormalsValid = false;
+		boundsValid = false;
+		worldBoundsValid = false;
+		bvh = null;
+		bspTree = null;
+	}
+
+	/**
+	 * Returns a BVH over the mesh's triangles in model space, building it if the vertices changed
+	 * @return The triangle BVH
+	 */
+	public MeshBVH getBVH() {
+		if (bvh == null) {
+			bvh = new MeshBVH(this);
+		}
+		return bvh;
+	}
+
+	/**
+	 * Gives the mesh a BSP tree, so the Renderer draws its triangles in the tree's order instead of sorting them.
+	 * The mesh takes over the tree's geometry, which is its own triangles with the ones that crossed a plane split,
+	 * so the tree must have been built from this mesh, or from the same model.
+	 * Changing the vertices afterwards drops the tree
+	 * @param tree The tree from BSPTree.build() or BSPTree.load(), or null to remove it
+	 */
+	public void setBSPTree(BSPTree tree) {
+		if (tree != null) {
+			positions = Arrays.copyOf(tree.getPositions(), Math.max(3, tree.getNumVertices() * 3));
+			numVertices = tree.getNumVertices();
+			indices = Arrays.copyOf(tree.getIndices(), Math.max(3, tree.getNumTriangles() * 3));
+			numTriangles = tree.getNumTriangles();
+			mesh = null;
+			geometryChanged();
 		}
-		
-		calculateCenter();
+		bspTree = tree;
+	}
+
+	/**
+	 * Points the mesh at vertex and index buffers, for ProgressiveMesh and OBJParser.
+	 * The buffers are used as they are, not copied
+	 * @param positions 3 floats (x, y, z) per vertex
+	 * @param numVertices Number of vertices in use
+	 * @param indices 3 vertex indices per triangle
+	 * @param numTriangles Number of triangles in use
+	 */
+	void setBuffers(float[] positions, int numVertices, int[] indices, int numTriangles) {
+		this.positions = positions;
+		this.numVertices = numVertices;
+		this.indices = indices;
+		this.numTriangles = numTriangles;
+		mesh = null;
+		geometryChanged();
+	}
+
+	/**
+	 * Uses surface normals and bounds that were calculated before, for MeshCache, instead of calculating them again.
+	 * They must match the vertices and triangles the mesh has now
+	 * @param normals 3 floats (x, y, z) per triangle, used as they are, not copied
+	 * @param box The bounding box of the vertices in model space
+	 * @param sphere The bounding sphere of the vertices in model space
+	 */
+	void setPrecalculated(float[] normals, BoundingBox box, BoundingSphere sphere) {
+		this.normals = normals;
+		normalsValid = true;
+		worldNormalsValid = false;
+		allocateLocalBounds();
+		localBox.set(box);
+		localSphere.set(sphere.getX(), sphere.getY(), sphere.getZ(), sphere.getRadius());
+		boundsValid = true;
+		worldBoundsValid = false;
+	}
+
+	/**
+	 * Getter for the mesh's BSP tree
+	 * @return The tree, or null if the mesh has none
+	 */
+	public BSPTree getBSPTree() {
+		return bspTree;
+	}
+
+	/**
+	 * Returns the axis aligned bounding box of the vertices in model space
+	 * @return The bounding box. Do not modify it
+	 */
+	public BoundingBox getLocalBoundingBox() {
+		if (!boundsValid) calculateBounds();
+		return localBox;
+	}
+
+	/**
+	 * Returns the bounding sphere of the vertices in model space
+	 * @return The bounding sphere. Do not modify it
+	 */
+	public BoundingSphere getLocalBoundingSphere() {
+		if (!boundsValid) calculateBounds();
+		return localSphere;
+	}
+
+	/**
+	 * Returns the axis aligned bounding box of the mesh in the world, including its transform
+	 * @return The bounding box. Do not modify it
+	 */
+	public BoundingBox getBoundingBox() {
+		updateWorldBounds();
+		return worldBox;
+	}
+
+	/**
+	 * Returns the bounding sphere of the mesh in the world, including its transform
+	 * @return The bounding sphere. Do not modify it
+	 */
+	public BoundingSphere getBoundingSphere() {
+		updateWorldBounds();
+		return worldSphere;
+	}
+
+	/**
+	 * Moves the model space bounds into the world if the transform or vertices changed since the last time
+	 */
+	private void updateWorldBounds() {
+		if (!boundsValid) calculateBounds();
+		if (!worldBoundsValid || worldBoundsVersion != getTransformVersion()) {
+			if (worldBox == null) {
+				worldBox = new BoundingBox();
+				worldSphere = new BoundingSphere();
+			}
+			Mat4 model = getModelMatrix();
+			localBox.transform(model, worldBox);
+			localSphere.transform(model, worldSphere);
+			worldBoundsValid = true;
+			worldBoundsVersion = getTransformVersion();
+			boundsChanges++;
+		}
+	}
+
+	/**
+	 * Returns a number that goes up every time the world bounds change
+	 * @return The version of the world bounds
+	 */
+	public int getBoundsVersion() {
+		updateWorldBounds();
+		return boundsChanges;
+	}
+
+	/**
+	 * Calculates the bounding box of the vertices, and a bounding sphere centered on the box
+	 */
+	private void calculateBounds() {
+		allocateLocalBounds();
+		localBox.setEmpty();
+		for (int i = 0; i < numVertices * 3; i += 3) {
+			localBox.include(positions[i], positions[i + 1], positions[i + 2]);
+		}
+
+		float cX = localBox.getCenterX(), cY = localBox.getCenterY(), cZ = localBox.getCenterZ();
+		float radiusSquared = 0;
+		for (int i = 0; i < numVertices * 3; i += 3) {
+			float dX = positions[i] - cX, dY = positions[i + 1] - cY, dZ = positions[i + 2] - cZ;
+			radiusSquared = Math.max(radiusSquared, dX * dX + dY * dY + dZ * dZ);
+		}
+		if (numVertices == 0) cX = cY = cZ = 0;
+		localSphere.set(cX, cY, cZ, (float) Math.sqrt(radiusSquared));
+
+		boundsValid = true;
+		worldBoundsValid = false;
+	}
+
+	private void allocateLocalBounds() {
+		if (localBox == null) {
+			localBox = new BoundingBox();
+			localSphere = new BoundingSphere();
+		}
+	}
+
+	/**
+	 * Returns the surface normal of every triangle in model space, calculating them if the vertices changed.
+	 * 3 floats (x, y, z) per triangle. Degenerate triangles have a normal of 0, 0, 0
+	 * @return The normal buffer. Do not modify it
+	 */
+	public float[] getNormals() {
+		if (!normalsValid) {
+			calculateNormals();
+		}
+		return normals;
+	}
+
+	/**
+	 * Returns the surface normal of every triangle in world space.
+	 * They are only rotated again when the mesh's transform or vertices changed since the last call
+	 * @return The world normal buffer, 3 floats (x, y, z) per triangle. Do not modify it
+	 */
+	public float[] getWorldNormals() {
+		if (!worldNormalsValid || worldNormalsVersion != getTransformVersion()) {
+			float[] n = getNormals();
+			if (worldNormals.length < n.length) {
+				worldNormals = new float[n.length];
+			}
+
+			float[] m = getNormalMatrix().m;
+			for (int i = 0, end = numTriangles * 3; i < end; i += 3) {
+				float x = m[0] * n[i] + m[1] * n[i + 1] + m[2] * n[i + 2];
+				float y = m[4] * n[i] + m[5] * n[i + 1] + m[6] * n[i + 2];
+				float z = m[8] * n[i] + m[9] * n[i + 1] + m[10] * n[i + 2];
+				normalize(worldNormals, i, x, y, z);
+			}
+
+			worldNormalsValid = true;
+			worldNormalsVersion = getTransformVersion();
+		}
+		return worldNormals;
+	}
+
+	/**
+	 * Calculates the model space surface normal of every triangle from the cross product of two of its edges
+	 */
+	private void calculateNormals() {
+		if (normals.length < numTriangles * 3) {
+			normals = new float[indices.length];
+		}
+
+		for (int t = 0; t < numTriangles; t++) {
+			int a = indices[t * 3] * 3;
+			int b = indices[t * 3 + 1] * 3;
+			int c = indices[t * 3 + 2] * 3;
+
+			float ux = positions[b] - positions[a], uy = positions[b + 1] - positions[a + 1], uz = positions[b + 2] - positions[a + 2];
+			float vx = positions[c] - positions[a], vy = positions[c + 1] - positions[a + 1], vz = positions[c + 2] - positions[a + 2];
+
+			normalize(normals, t * 3, (uy * vz) - (uz * vy), (uz * vx) - (ux * vz), (ux * vy) - (uy * vx));
+		}
+
+		normalsValid = true;
+		worldNormalsValid = false;
+	}
+
+	/**
+	 * Writes a normalized vector into a buffer. Vectors of length 0 are written as 0, 0, 0
+	 */
+	private static void normalize(float[] dst, int offset, float x, float y, float z) {
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		float scale = (length > 0) ? 1 / length : 0;
+		dst[offset] = x * scale;
+		dst[offset + 1] = y * scale;
+		dst[offset + 2] = z * scale;
 	}
 
 	/**
 	 * Returns the triangles that compose this mesh in an ArrayList
+	 * The triangles are views over the mesh's vertex and index buffers
 	 * @return An ArrayList of triangles in this Mesh
 	 */
 	public ArrayList<Triangle> getMesh() {
+		if (mesh == null) {
+			mesh = new ArrayList<Triangle>(numTriangles);
+			for (int i = 0; i < numTriangles; i++) {
+				mesh.add(new Triangle(this, i));
+			}
+		}
 		return mesh;
 	}
-	
+
 	/**
 	 * Gets the triangle in the Mesh at the specified index
 	 * @param index Index of the triangle in the mesh
 	 * @return The Triangle at index
 	 */
 	public Triangle getTriangle(int index) {
-		return mesh.get(index);
+		return getMesh().get(index);
 	}
-	
+
 	/**
 	 * Get the number of triangles in this mesh
 	 * @return The number of triangles in this mesh
 	 */
 	public int getNumTriangles() {
-		return mesh.size();
+		return numTriangles;
+	}
+
+	/**
+	 * Get the number of vertices in this mesh
+	 * @return The number of vertices in this mesh
+	 */
+	public int getNumVertices() {
+		return numVertices;
 	}
-	
+
+	/**
+	 * Returns the vertex buffer. 3 floats (x, y, z) per vertex.
+	 * The array may be longer than 3 * getNumVertices()
+	 * @return The vertex positions
+	 */
+	public float[] getPositions() {
+		return positions;
+	}
+
+	/**
+	 * Returns the index buffer. 3 vertex indices per triangle.
+	 * The array may be longer than 3 * getNumTriangles()
+	 * @return The triangle indices
+	 */
+	public int[] getIndices() {
+		return indices;
+	}
+
 	/**
 	 * Getter for mesh's color
 	 * @return The mesh's color
@@ -116,50 +610,113 @@ public class Mesh {
 	 */
 	public void setColor(Color meshColor) {
 		this.meshColor = meshColor;
+		this.shadeRamp = null;
+		this.shadeColors = null;
 	}
-	
+
+	/**
+	 * Returns the shades of the mesh's color, as packed ARGB ints.
+	 * Shade i has the hue and saturation of the mesh's color and a brightness of i / (SHADES - 1)
+	 * @return The shade ramp. Do not modify it
+	 */
+	public int[] getShadeRamp() {
+		if (shadeRamp == null) {
+			shadeRamp = buildShadeRamp(meshColor);
+		}
+		return shadeRamp;
+	}
+
+	/**
+	 * Builds the shades of a color from black to full brightness
+	 * @param color The color
+	 * @return SHADES packed ARGB ints
+	 */
+	static int[] buildShadeRamp(Color color) {
+		float[] hsbvals = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null);
+		int[] ramp = new int[SHADES];
+		for (int i = 0; i < SHADES; i++) {
+			ramp[i] = Color.HSBtoRGB(hsbvals[0], hsbvals[1], i / (float) (SHADES - 1));
+		}
+		return ramp;
+	}
+
+	/**
+	 * Returns one shade of the mesh's color as a Color. Each Color is only created once
+	 * @param shade The shade, 0 to SHADES - 1
+	 * @return The Color of the shade
+	 */
+	public Color getShadeColor(int shade) {
+		if (shadeColors == null) {
+			shadeColors = new Color[SHADES];
+		}
+		if (shadeColors[shade] == null) {
+			shadeColors[shade] = new Color(getShadeRamp()[shade]);
+		}
+		return shadeColors[shade];
+	}
+
+	/**
+	 * Getter for which triangles the Renderer culls
+	 * @return The cull mode
+	 */
+	public CullMode getCullMode() {
+		return cullMode;
+	}
+
+	/**
+	 * Setter for which triangles the Renderer culls
+	 * A triangle faces the camera when its vertices are counter clockwise as seen from the camera
+	 * @param cullMode The cull mode
+	 */
+	public void setCullMode(CullMode cullMode) {
+		this.cullMode = cullMode;
+	}
+
 	/**
 	 * Sets the center of the mesh to the specified coordinates
+	 * This is the point in the world that the mesh rotates and scales around
 	 * @param x - X coordinate
 	 * @param y - Y coordinate
 	 * @param z - Z coordinate
 	 */
 	public void setCenter(float x, float y, float z) {
-		this.centerX = x; 
-		this.centerY = y;
-		this.centerZ = z;
+		getTransform().setCenter(x, y, z);
+	}
+
+	/**
+	 * Returns the centroid of the vertices in model space
+	 * @return The centroid
+	 */
+	Vector getCentroid() {
+		calculateCentroid();
+		return new Vector(centroidX, centroidY, centroidZ);
 	}
 
 	/**
-	 * Calculates and sets the center of the mesh
+	 * Calculates the centroid of the mesh in model space, if it is not already known
+	 * Every corner of every triangle is counted, so vertices shared by more triangles weigh more
 	 */
-	private void calculateCenter() {
-		
-		int numVertices = 3 * this.getNumTriangles();
+	private void calculateCentroid() {
+
+		if (centroidValid) return;
+
+		int numCorners = 3 * this.getNumTriangles();
 		float xCoordTotal = 0;
 		float yCoordTotal = 0;
 		float zCoordTotal = 0;
-		
-		for (int i = 0; i < this.getNumTriangles(); i++) {
-			
-			xCoordTotal += this.getTriangle(i).getV1().getX() +
-						   this.getTriangle(i).getV2().getX() +
-						   this.getTriangle(i).getV3().getX();
-			
-			yCoordTotal += this.getTriangle(i).getV1().getY() +
-						   this.getTriangle(i).getV2().getY() +
-						   this.getTriangle(i).getV3().getY();
-			
-			zCoordTotal += this.getTriangle(i).getV1().getZ() +
-						   this.getTriangle(i).getV2().getZ() +
-						   this.getTriangle(i).getV3().getZ();
-						
-		}
-		
-		this.centerX = xCoordTotal / numVertices;
-		this.centerY = yCoordTotal / numVertices;
-		this.centerZ = zCoordTotal / numVertices;
-		
+
+		for (int i = 0; i < numCorners; i++) {
+			int v = indices[i] * 3;
+			xCoordTotal += positions[v];
+			yCoordTotal += positions[v + 1];
+			zCoordTotal += positions[v + 2];
+		}
+
+		this.centroidX = xCoordTotal / numCorners;
+		this.centroidY = yCoordTotal / numCorners;
+		this.centroidZ = zCoordTotal / numCorners;
+		centroidValid = true;
+
 	}
 
 }
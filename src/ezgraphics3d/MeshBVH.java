@@ -0,0 +1,142 @@
+package ezgraphics3d;
+
+/**
+ * MeshBVH Class.
+ * A BVH over the triangles of a Mesh, in the mesh's model space. Built with Mesh.getBVH(),
+ * which builds it the first time it is asked for and again only if the vertices change.
+ * Rays and boxes given to it must be in model space; SceneBVH moves them there for world queries.
+ * @author Ryan Theriot
+ */
+public class MeshBVH implements BVH.RayTest {
+
+	private Mesh mesh;
+	private BVH bvh = new BVH();
+
+	/** The ray being cast, used by intersect() */
+	private float rayOX, rayOY, rayOZ, rayDX, rayDY, rayDZ;
+
+	/**
+	 * Constructor Method
+	 * Builds the tree over every triangle in the mesh
+	 * @param mesh The mesh
+	 */
+	public MeshBVH(Mesh mesh) {
+		this.mesh = mesh;
+
+		float[] p = mesh.getPositions();
+		int[] ind = mesh.getIndices();
+		int numTriangles = mesh.getNumTriangles();
+		float[] boxes = new float[numTriangles * 6];
+
+		for (int t = 0; t < numTriangles; t++) {
+			int a = ind[t * 3] * 3, b = ind[t * 3 + 1] * 3, c = ind[t * 3 + 2] * 3;
+			for (int k = 0; k < 3; k++) {
+				boxes[t * 6 + k] = Math.min(p[a + k], Math.min(p[b + k], p[c + k]));
+				boxes[t * 6 + 3 + k] = Math.max(p[a + k], Math.max(p[b + k], p[c + k]));
+			}
+		}
+		bvh.build(boxes, numTriangles);
+	}
+
+	/**
+	 * Finds the closest triangle hit by a ray in model space
+	 * @param ox Ray origin X
+	 * @param oy Ray origin Y
+	 * @param oz Ray origin Z
+	 * @param dx Ray direction X
+	 * @param dy Ray direction Y
+	 * @param dz Ray direction Z
+	 * @param maxDistance Hits farther than this are ignored
+	 * @return The distance to the hit in multiples of the direction, or Float.POSITIVE_INFINITY. The triangle is getHitTriangle()
+	 */
+	public float raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+		rayOX = ox; rayOY = oy; rayOZ = oz;
+		rayDX = dx; rayDY = dy; rayDZ = dz;
+		return bvh.raycast(ox, oy, oz, dx, dy, dz, maxDistance, this);
+	}
+
+	/**
+	 * Moller-Trumbore ray triangle test, hits on both sides of the triangle count
+	 */
+	@Override
+	public float intersect(int triangle, float maxDistance) {
+		float[] p = mesh.getPositions();
+		int[] ind = mesh.getIndices();
+		int a = ind[triangle * 3] * 3, b = ind[triangle * 3 + 1] * 3, c = ind[triangle * 3 + 2] * 3;
+
+		float e1x = p[b] - p[a], e1y = p[b + 1] - p[a + 1], e1z = p[b + 2] - p[a + 2];
+		float e2x = p[c] - p[a], e2y = p[c + 1] - p[a + 1], e2z = p[c + 2] - p[a + 2];
+
+		float px = rayDY * e2z - rayDZ * e2y;
+		float py = rayDZ * e2x - rayDX * e2z;
+		float pz = rayDX * e2y - rayDY * e2x;
+		float det = e1x * px + e1y * py + e1z * pz;
+		if (det == 0) return Float.POSITIVE_INFINITY;
+		float invDet = 1 / det;
+
+		float tx = rayOX - p[a], ty = rayOY - p[a + 1], tz = rayOZ - p[a + 2];
+		float u = (tx * px + ty * py + tz * pz) * invDet;
+		if (u < 0 || u > 1) return Float.POSITIVE_INFINITY;
+
+		float qx = ty * e1z - tz * e1y;
+		float qy = tz * e1x - tx * e1z;
+		float qz = tx * e1y - ty * e1x;
+		float v = (rayDX * qx + rayDY * qy + rayDZ * qz) * invDet;
+		if (v < 0 || u + v > 1) return Float.POSITIVE_INFINITY;
+
+		float t = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+		return (t >= 0 && t < maxDistance) ? t : Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Getter for the triangle hit by the last raycast()
+	 * @return The triangle index, or -1 if nothing was hit
+	 */
+	public int getHitTriangle() {
+		return bvh.getHitPrimitive();
+	}
+
+	/**
+	 * Finds every triangle whose bounding box overlaps a box in model space
+	 * @param box The box
+	 * @return The number of triangles found. They are read with getResults()
+	 */
+	public int queryBox(BoundingBox box) {
+		return bvh.queryBox(box);
+	}
+
+	/**
+	 * Finds every triangle whose bounding box is at least partly inside a set of planes in model space
+	 * @param planes The planes, 4 floats (a, b, c, d) per plane
+	 * @param numPlanes Number of planes
+	 * @return The number of triangles found. They are read with getResults()
+	 */
+	public int queryPlanes(float[] planes, int numPlanes) {
+		return bvh.queryPlanes(planes, numPlanes);
+	}
+
+	/**
+	 * Returns the triangles found by the last query
+	 * @return The triangle indices. Only the first getNumResults() are valid
+	 */
+	public int[] getResults() {
+		return bvh.getResults();
+	}
+
+	/**
+	 * Getter for the number of triangles found by the last query
+	 * @return The number of results
+	 */
+	public int getNumResults() {
+		return bvh.getNumResults();
+	}
+
+	/**
+	 * Getter for the underlying tree
+	 * @return The BVH
+	 */
+	public BVH getBVH() {
+		return bvh;
+	}
+
+}
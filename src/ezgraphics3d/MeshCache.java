@@ -0,0 +1,245 @@
+package ezgraphics3d;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * MeshCache Class.
+ * A binary copy of a loaded mesh, kept next to the file it was loaded from, so the next load is a
+ * few bulk reads instead of parsing text. The cache remembers the size, last modified time and CRC32
+ * of the file it was made from, and is only used while all three still match. Every byte of the source
+ * is still read on each load to CRC it, so a cache hit saves the parsing, not the reading of the text file.
+ *
+ * The format is little endian:
+ * a header (magic, version, source size, modified time and hash, vertex and triangle counts, the bounding
+ * box and bounding sphere), then 3 floats per vertex, 3 floats of surface normal per triangle and
+ * 3 ints per triangle. The cache and its source are read a block at a time through a heap buffer and never
+ * mapped, because a mapped file can not be replaced or deleted on Windows until the mapping is collected.
+ * @author Ryan Theriot
+ */
+class MeshCache {
+
+	/** "EZMC" */
+	private static final int MAGIC = 0x434D5A45;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 80;
+
+	/** Bytes of a file that are read or written at once */
+	private static final int IO_BLOCK = 1 << 20;
+
+	/** What a cache has to match to be used: the size, last modified time and hash of its source */
+	static class Stamp {
+		long size;
+		long modified;
+		long hash;
+	}
+
+	private MeshCache() {
+	}
+
+	/**
+	 * Gets the cache file for a source file
+	 * @param source The file the mesh is loaded from
+	 * @return The cache file next to it
+	 */
+	static File cacheFile(File source) {
+		return new File(source.getPath() + ".ezmesh");
+	}
+
+	/**
+	 * Measures a source file
+	 * @param source The file the mesh is loaded from
+	 * @return Its size, last modified time and CRC32
+	 * @throws IOException If the file can not be read
+	 */
+	static Stamp stamp(File source) throws IOException {
+		Stamp stamp = new Stamp();
+		stamp.modified = source.lastModified();
+
+		CRC32 crc = new CRC32();
+		try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+			stamp.size = channel.size();
+			ByteBuffer buffer = ByteBuffer.allocate(IO_BLOCK);
+			for (long pos = 0; pos < stamp.size; pos += buffer.limit()) {
+				buffer.clear();
+				buffer.limit((int)Math.min(IO_BLOCK, stamp.size - pos));
+				fill(channel, buffer);
+				crc.update(buffer.array(), 0, buffer.limit());
+			}
+		}
+		stamp.hash = crc.getValue();
+		return stamp;
+	}
+
+	/**
+	 * Loads a mesh from a cache file if it was made from the same source
+	 * @param cache The cache file
+	 * @param stamp The source it has to match
+	 * @return The mesh with its surface normals and bounds, or null if there is no cache or it is out of date
+	 * @throws IOException If the cache exists but can not be read
+	 */
+	static Mesh read(File cache, Stamp stamp) throws IOException {
+		if (!cache.isFile()) return null;
+
+		try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length < HEADER_SIZE || length > Integer.MAX_VALUE) return null;
+			ByteBuffer buffer = ByteBuffer.allocate(IO_BLOCK).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.limit(HEADER_SIZE);
+			fill(channel, buffer);
+
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return null;
+			if (buffer.getLong(8) != stamp.size || buffer.getLong(16) != stamp.modified || buffer.getLong(24) != stamp.hash) return null;
+
+			int numVertices = buffer.getInt(32);
+			int numTriangles = buffer.getInt(36);
+			if (numVertices < 0 || numTriangles < 0 || length != HEADER_SIZE + 12L * numVertices + 24L * numTriangles) return null;
+
+			BoundingBox box = new BoundingBox();
+			box.set(buffer.getFloat(40), buffer.getFloat(44), buffer.getFloat(48), buffer.getFloat(52), buffer.getFloat(56), buffer.getFloat(60));
+			BoundingSphere sphere = new BoundingSphere();
+			sphere.set(buffer.getFloat(64), buffer.getFloat(68), buffer.getFloat(72), buffer.getFloat(76));
+
+			float[] positions = new float[Math.max(1, numVertices) * 3];
+			float[] normals = new float[numTriangles * 3];
+			int[] indices = new int[Math.max(1, numTriangles) * 3];
+			readFloats(channel, buffer, positions, numVertices * 3);
+			readFloats(channel, buffer, normals, numTriangles * 3);
+			for (int i = 0, count = numTriangles * 3; i < count; ) {
+				int n = Math.min(count - i, IO_BLOCK / 4);
+				buffer.clear();
+				buffer.limit(n * 4);
+				fill(channel, buffer);
+				buffer.asIntBuffer().get(indices, i, n);
+				i += n;
+			}
+
+			for (int i = 0; i < numTriangles * 3; i++) {
+				if (indices[i] < 0 || indices[i] >= numVertices) return null;
+			}
+
+			Mesh mesh = new Mesh(1, 1);
+			mesh.setBuffers(positions, numVertices, indices, numTriangles);
+			mesh.setPrecalculated(normals, box, sphere);
+			return mesh;
+		}
+	}
+
+	private static void readFloats(FileChannel channel, ByteBuffer buffer, float[] dst, int count) throws IOException {
+		for (int i = 0; i < count; ) {
+			int n = Math.min(count - i, IO_BLOCK / 4);
+			buffer.clear();
+			buffer.limit(n * 4);
+			fill(channel, buffer);
+			buffer.asFloatBuffer().get(dst, i, n);
+			i += n;
+		}
+	}
+
+	/**
+	 * Reads from the channel until the buffer is full up to its limit, and flips it
+	 */
+	private static void fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) throw new EOFException("Mesh cache ended early");
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Writes a mesh to a cache file. It is written to a temporary file first and then moved over
+	 * the cache, so a half written cache is never read, even with two loads of the same file at once
+	 * @param mesh The mesh loaded from the source
+	 * @param cache The cache file
+	 * @param stamp The source the mesh was loaded from, measured before it was loaded
+	 * @throws IOException If the cache can not be written
+	 */
+	static void write(Mesh mesh, File cache, Stamp stamp) throws IOException {
+		int numVertices = mesh.getNumVertices();
+		int numTriangles = mesh.getNumTriangles();
+		long length = HEADER_SIZE + 12L * numVertices + 24L * numTriangles;
+		if (length > Integer.MAX_VALUE) return;
+
+		float[] normals = mesh.getNormals();
+		BoundingBox box = mesh.getLocalBoundingBox();
+		BoundingSphere sphere = mesh.getLocalBoundingSphere();
+
+		File temp = Files.createTempFile(cache.getAbsoluteFile().getParentFile().toPath(), cache.getName(), ".tmp").toFile();
+		try {
+			try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.allocate(IO_BLOCK).order(ByteOrder.LITTLE_ENDIAN);
+
+				buffer.putInt(MAGIC);
+				buffer.putInt(VERSION);
+				buffer.putLong(stamp.size);
+				buffer.putLong(stamp.modified);
+				buffer.putLong(stamp.hash);
+				buffer.putInt(numVertices);
+				buffer.putInt(numTriangles);
+				buffer.putFloat(box.getMinX());
+				buffer.putFloat(box.getMinY());
+				buffer.putFloat(box.getMinZ());
+				buffer.putFloat(box.getMaxX());
+				buffer.putFloat(box.getMaxY());
+				buffer.putFloat(box.getMaxZ());
+				buffer.putFloat(sphere.getX());
+				buffer.putFloat(sphere.getY());
+				buffer.putFloat(sphere.getZ());
+				buffer.putFloat(sphere.getRadius());
+				flush(channel, buffer);
+
+				writeFloats(channel, buffer, mesh.getPositions(), numVertices * 3);
+				writeFloats(channel, buffer, normals, numTriangles * 3);
+				int[] indices = mesh.getIndices();
+				for (int i = 0, count = numTriangles * 3; i < count; ) {
+					int n = Math.min(count - i, IO_BLOCK / 4);
+					buffer.asIntBuffer().put(indices, i, n);
+					buffer.position(n * 4);
+					flush(channel, buffer);
+					i += n;
+				}
+				channel.force(false);
+			}
+
+			try {
+				Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	private static void writeFloats(FileChannel channel, ByteBuffer buffer, float[] src, int count) throws IOException {
+		for (int i = 0; i < count; ) {
+			int n = Math.min(count - i, IO_BLOCK / 4);
+			buffer.asFloatBuffer().put(src, i, n);
+			buffer.position(n * 4);
+			flush(channel, buffer);
+			i += n;
+		}
+	}
+
+	/**
+	 * Writes the buffer to the channel from the start up to its position, and clears it
+	 */
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+}
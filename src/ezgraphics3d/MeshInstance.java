@@ -0,0 +1,233 @@
+package ezgraphics3d;
+
+import java.awt.Color;
+
+/**
+ * MeshInstance Class.
+ * Draws a shared Mesh with its own transform and color. The vertices, triangles, surface normals
+ * and model space bounds all belong to the shared mesh, so an instance only costs its transform,
+ * its bounds in the world and its shade ramp, no matter how many triangles the mesh has.
+ * 500 copies of a model are one loaded Mesh and 500 MeshInstances.
+ *
+ * With a LODChain, each instance draws the level that fits its size on the screen.
+ * The shared mesh's own transform and color are not used by its instances.
+ * Its vertices should not change while instances use it.
+ * @author Ryan Theriot
+ */
+public class MeshInstance implements Renderable {
+
+	private Mesh geometry;
+	private LODChain lodChain;
+	private int level = 0;
+	private Transform transform = new Transform();
+	private Color color;
+
+	private int[] shadeRamp;
+	private Color[] shadeColors;
+
+	/** The normal matrix and the shared bounds moved into the world, updated when the transform changes */
+	private Mat4 normalMatrix = new Mat4();
+	private boolean normalMatrixValid = false;
+	private int normalMatrixVersion;
+	private BoundingBox worldBox = new BoundingBox();
+	private BoundingSphere worldSphere = new BoundingSphere();
+	private boolean worldBoundsValid = false;
+	private int worldBoundsVersion;
+	/** Goes up every time the world bounds are updated, see getBoundsVersion() */
+	private int boundsChanges;
+
+	/**
+	 * Constructor Method
+	 * Starts with the mesh's color
+	 * @param geometry The shared mesh
+	 */
+	public MeshInstance(Mesh geometry) {
+		this(geometry, geometry.getColor());
+	}
+
+	/**
+	 * Constructor Method
+	 * @param geometry The shared mesh
+	 * @param color The instance's color
+	 */
+	public MeshInstance(Mesh geometry, Color color) {
+		this.geometry = geometry;
+		this.color = color;
+	}
+
+	/**
+	 * Constructor Method
+	 * Draws the levels of a LODChain. Starts with the full mesh's color
+	 * @param lodChain The shared levels of detail
+	 */
+	public MeshInstance(LODChain lodChain) {
+		this(lodChain.getLevel(0));
+		this.lodChain = lodChain;
+	}
+
+	/**
+	 * Rotates the instance
+	 * @param xDeg The X Degree of rotation
+	 * @param yDeg The Y Degree of rotation
+	 * @param zDeg The Z Degree of rotation
+	 */
+	public void rotate(float xDeg, float yDeg, float zDeg) {
+		transform.rotate(xDeg, yDeg, zDeg);
+	}
+
+	/**
+	 * Scales the instance
+	 * @param x The X scaling
+	 * @param y The Y scaling
+	 * @param z The Z scaling
+	 */
+	public void scale(float x, float y, float z) {
+		transform.scale(x, y, z);
+	}
+
+	/**
+	 * Translates the instance
+	 * Afterwards the instance rotates and scales around the mesh's centroid, like a Mesh does
+	 * @param x The X translation
+	 * @param y The Y translation
+	 * @param z The Z translation
+	 */
+	public void translate(float x, float y, float z) {
+		transform.translate(x, y, z);
+
+		Vector centroid = geometry.getCentroid();
+		transform.setPivot(centroid.getX(), centroid.getY(), centroid.getZ());
+	}
+
+	/**
+	 * Sets the center of the instance to the specified coordinates
+	 * This is the point in the world that the instance rotates and scales around
+	 * @param x - X coordinate
+	 * @param y - Y coordinate
+	 * @param z - Z coordinate
+	 */
+	public void setCenter(float x, float y, float z) {
+		transform.setCenter(x, y, z);
+	}
+
+	/**
+	 * Getter for the instance's model transform
+	 * @return The Transform
+	 */
+	public Transform getTransform() {
+		return transform;
+	}
+
+	/**
+	 * Returns the mesh of the current level of detail
+	 * @return The geometry
+	 */
+	public Mesh getGeometry() {
+		return (lodChain != null) ? lodChain.getLevel(level) : geometry;
+	}
+
+	public void selectLevelOfDetail(float screenSize) {
+		if (lodChain != null) {
+			level = lodChain.selectLevel(screenSize, level);
+		}
+	}
+
+	/**
+	 * Getter for the instance's LODChain
+	 * @return The chain, or null if the instance always draws one mesh
+	 */
+	public LODChain getLODChain() {
+		return lodChain;
+	}
+
+	/**
+	 * Getter for the level of detail the instance drew last
+	 * @return The level, 0 is the full mesh
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	public Mat4 getModelMatrix() {
+		return transform.getMatrix();
+	}
+
+	public Mat4 getNormalMatrix() {
+		if (!normalMatrixValid || normalMatrixVersion != transform.getVersion()) {
+			getModelMatrix().normalMatrix(normalMatrix);
+			normalMatrixValid = true;
+			normalMatrixVersion = transform.getVersion();
+		}
+		return normalMatrix;
+	}
+
+	/**
+	 * Returns the shared mesh's bounding box moved into the world by this instance's transform
+	 * @return The bounding box. Do not modify it
+	 */
+	public BoundingBox getBoundingBox() {
+		updateWorldBounds();
+		return worldBox;
+	}
+
+	/**
+	 * Returns the shared mesh's bounding sphere moved into the world by this instance's transform
+	 * @return The bounding sphere. Do not modify it
+	 */
+	public BoundingSphere getBoundingSphere() {
+		updateWorldBounds();
+		return worldSphere;
+	}
+
+	private void updateWorldBounds() {
+		if (!worldBoundsValid || worldBoundsVersion != transform.getVersion()) {
+			Mat4 model = getModelMatrix();
+			geometry.getLocalBoundingBox().transform(model, worldBox);
+			geometry.getLocalBoundingSphere().transform(model, worldSphere);
+			worldBoundsValid = true;
+			worldBoundsVersion = transform.getVersion();
+			boundsChanges++;
+		}
+	}
+
+	/**
+	 * Returns a number that goes up every time the world bounds change
+	 * @return The version of the world bounds
+	 */
+	public int getBoundsVersion() {
+		updateWorldBounds();
+		return boundsChanges;
+	}
+
+	public Color getColor() {
+		return color;
+	}
+
+	/**
+	 * Setter for the instance's color
+	 * @param color Color to set the instance to
+	 */
+	public void setColor(Color color) {
+		this.color = color;
+		this.shadeRamp = null;
+		this.shadeColors = null;
+	}
+
+	public int[] getShadeRamp() {
+		if (shadeRamp == null) {
+			shadeRamp = Mesh.buildShadeRamp(color);
+		}
+		return shadeRamp;
+	}
+
+	public Color getShadeColor(int shade) {
+		if (shadeColors == null) {
+			shadeColors = new Color[Mesh.SHADES];
+		}
+		if (shadeColors[shade] == null) {
+			shadeColors[shade] = new Color(getShadeRamp()[shade]);
+		}
+		return shadeColors[shade];
+	}
+
+}
@@ -1,86 +1,532 @@
 package ezgraphics3d;
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * MeshLoader Class
  * Loads meshes/models from files 
- * Right now only supports OBJ files
+ * Right now only supports OBJ files, which are read by OBJParser
+ * 
+ * OBJ files on disk are split into parts at line starts. The parts are read and parsed in
+ * parallel, then their vertices and triangles are copied into one mesh at offsets added up from
+ * the sizes of the parts before them.
+ * 
+ * A binary copy of every mesh loaded from disk is kept next to its OBJ file (see MeshCache) and
+ * used instead of the OBJ file until the OBJ file changes.
+ * 
+ * loadAsync() loads on a thread of its own and returns right away, so a program can start drawing
+ * (a Node made from the future draws a box until the mesh is there). Each load gets a virtual
+ * thread on Java 21 and up, and a daemon thread on older Javas. Loading many files at once takes
+ * about as long as the slowest one, and they share one pool of parsing threads.
+ * 
+ * visitOBJFile() does not make a mesh at all. It streams the file through a MeshVisitor, for
+ * models that are too big to load.
  * @author Ryan Theriot
  *
  */
 
 public class MeshLoader {
 
+	/** Files are split into about this many parts per thread, so a slow part does not hold up the rest */
+	private static final int PARTS_PER_THREAD = 4;
+	/** Smallest part worth its own task */
+	private static final long MIN_PART_SIZE = 1 << 20;
+
+	private static int threads = Runtime.getRuntime().availableProcessors();
+	private static ForkJoinPool parsePool;
+	private static ExecutorService loadExecutor;
+	private static boolean useCache = true;
+
 	/**
 	 * Loads and OBJ file into a mesh
+	 * OBJ files that are on disk and not in a jar are loaded with loadOBJFile(File)
 	 * @param objFileLocation Location of the OBJ file
 	 * @return A Mesh of the OBJ file
 	 */
 	public static Mesh loadOBJFile(String objFileLocation) {
 		
-		Mesh loadedMesh = new Mesh();
-		Triangle newTriangle;
+		URL url = MeshLoader.class.getClassLoader().getResource(objFileLocation);
+		if (url != null && url.getProtocol().equals("file")) {
+			try {
+				return loadOBJFile(new File(url.toURI()));
+			} catch (URISyntaxException e) {
+				/** Read it as a stream below */
+			}
+		}
+
+		OBJParser parser = new OBJParser(1024, 2048);
+		Mesh loadedMesh = null;
 		
 		InputStream is = MeshLoader.class.getClassLoader().getResourceAsStream(objFileLocation);
-		InputStreamReader isr = new InputStreamReader(is);
-		BufferedReader reader = new BufferedReader(isr);
-		String line;
 
-		ArrayList<Vector> vectors = new ArrayList<Vector>();
-		ArrayList<Triangle> triangles = new ArrayList<Triangle>();
+		try {
+			parser.parse(is);
+			loadedMesh = parser.toMesh();
+		} catch (NumberFormatException e) {
+			System.out.println("Exception in MeshLoader: Text file in incorrect format. " + e);
+
+		} catch (IOException e) {
+			System.out.println("Exception in MeshLoader: Text file can not be read. " + e);
+		}
 
 		try {
-			while ((line = reader.readLine()) != null) {
-				String[] tokenize = line.split(" ");
+			is.close();
+		} catch (IOException e) {
+			System.out.println("Exception in MeshLoader: Failed to close streamers and buffers. " + e);
+		}
+
+		if (loadedMesh == null) {
+			loadedMesh = new Mesh();
+		}
+
+		/** Calculate the surface normals and bounds now instead of on the first frame */
+		loadedMesh.getNormals();
+		loadedMesh.getLocalBoundingBox();
+
+		return loadedMesh;
+
+	}
+
+	/**
+	 * Loads an OBJ file on disk into a mesh, from its cache if it has an up to date one,
+	 * and otherwise parsing it on getThreads() threads and writing the cache
+	 * @param objFile The OBJ file
+	 * @return A Mesh of the OBJ file. Empty if the file can not be read
+	 */
+	public static Mesh loadOBJFile(File objFile) {
+
+		File cacheFile = MeshCache.cacheFile(objFile);
+		MeshCache.Stamp stamp = null;
+		if (useCache) {
+			try {
+				stamp = MeshCache.stamp(objFile);
+			} catch (IOException e) {
+				/** The OBJ file can not be read either, which parsing it reports below */
+			}
+		}
+		if (stamp != null) {
+			try {
+				Mesh cachedMesh = MeshCache.read(cacheFile, stamp);
+				if (cachedMesh != null) return cachedMesh;
+			} catch (IOException e) {
+				System.out.println("Exception in MeshLoader: Mesh cache can not be read. " + e);
+			}
+		}
+
+		Mesh loadedMesh = parseOBJFile(objFile);
+
+		if (loadedMesh == null) {
+			loadedMesh = new Mesh();
+		} else if (stamp != null) {
+			try {
+				MeshCache.write(loadedMesh, cacheFile, stamp);
+			} catch (IOException e) {
+				System.out.println("Exception in MeshLoader: Mesh cache can not be written. " + e);
+			}
+		}
 
-				if (tokenize[0].equals("v")) {
+		/** Calculate the surface normals and bounds now instead of on the first frame */
+		loadedMesh.getNormals();
+		loadedMesh.getLocalBoundingBox();
 
-					float x = Float.parseFloat(tokenize[1]);
-					float y = Float.parseFloat(tokenize[2]);
-					float z = Float.parseFloat(tokenize[3]);
-					
-					vectors.add(new Vector(x, y, z));
+		return loadedMesh;
+	}
+
+	/**
+	 * Parses an OBJ file on disk on getThreads() threads
+	 * @return The mesh, or null if the file can not be read or is in the wrong format
+	 */
+	private static Mesh parseOBJFile(File objFile) {
+
+		Mesh loadedMesh = null;
+
+		try (FileChannel channel = FileChannel.open(objFile.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			/** One thread reads the whole file as one part */
+			long numParts = (threads > 1) ? (long)threads * PARTS_PER_THREAD : 1;
+			numParts = Math.max(1, Math.min(numParts, size / MIN_PART_SIZE));
+
+			OBJTask task = new OBJTask(channel, lineStarts(channel, (int)numParts));
+			ForkJoinPool pool = (numParts > 1) ? getParsePool() : null;
+			if (pool != null) {
+				pool.invoke(task);
+			} else {
+				task.computeHere();
+			}
+			loadedMesh = task.toMesh(pool);
+
+		} catch (NumberFormatException e) {
+			/** One thrown on another thread of the pool comes back as a copy without the message, caused by the original */
+			Throwable error = e;
+			while (error.getMessage() == null && error.getCause() != null) error = error.getCause();
+			System.out.println("Exception in MeshLoader: Text file in incorrect format. " + error);
+
+		} catch (IOException e) {
+			System.out.println("Exception in MeshLoader: Text file can not be read. " + e);
+
+		} catch (UncheckedIOException e) {
+			System.out.println("Exception in MeshLoader: Text file can not be read. " + e.getCause());
+		}
+
+		return loadedMesh;
+	}
+
+	/**
+	 * Splits a file into parts of about the same size that start at the start of a line
+	 * @return numParts + 1 offsets, the start of each part and then the size of the file
+	 */
+	private static long[] lineStarts(FileChannel channel, int numParts) throws IOException {
+		long size = channel.size();
+		long[] starts = new long[numParts + 1];
+		starts[numParts] = size;
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+		for (int i = 1; i < numParts; i++) {
+			long pos = Math.max(starts[i - 1], size * i / numParts);
+
+			/** Move up to just after the next \n, or the end of the file */
+			search: while (pos > 0 && pos < size) {
+				buffer.clear();
+				int read = channel.read(buffer, pos - 1);
+				if (read <= 0) break;
+				for (int k = 0; k < read; k++) {
+					if (buffer.get(k) == '\n') {
+						pos += k;
+						break search;
+					}
 				}
+				pos += read;
+			}
+			starts[i] = Math.min(pos, size);
+		}
+		return starts;
+	}
+
+	/**
+	 * Parses the parts of a file, and then copies them into one vertex and one index buffer.
+	 * A task covers a range of parts and splits itself in half until it has one
+	 */
+	private static class OBJTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private FileChannel channel;
+		private long[] starts;
+		private OBJParser[] parts;
+		private int first, last;
+
+		/** Set for the copy: the buffers, and the vertices and triangles before each part */
+		private boolean copy = false;
+		private float[] positions;
+		private int[] indices;
+		private int[] vertexStart;
+		private int[] triangleStart;
+
+		OBJTask(FileChannel channel, long[] starts) {
+			this.channel = channel;
+			this.starts = starts;
+			this.parts = new OBJParser[starts.length - 1];
+			this.first = 0;
+			this.last = parts.length;
+		}
 
-				else if (tokenize[0].equals("f")) {
-
-					String[] trigToken1 = tokenize[1].split("/");
-					String[] trigToken2 = tokenize[2].split("/");
-					String[] trigToken3 = tokenize[3].split("/");
-					
-					newTriangle = new Triangle (vectors.get(Integer.parseInt(trigToken1[0]) - 1),
-							                    vectors.get(Integer.parseInt(trigToken2[0]) - 1),
-							                    vectors.get(Integer.parseInt(trigToken3[0]) - 1));			
-					
-					triangles.add(newTriangle);
-					
+		private OBJTask(OBJTask task, int first, int last) {
+			this.channel = task.channel;
+			this.starts = task.starts;
+			this.parts = task.parts;
+			this.copy = task.copy;
+			this.positions = task.positions;
+			this.indices = task.indices;
+			this.vertexStart = task.vertexStart;
+			this.triangleStart = task.triangleStart;
+			this.first = first;
+			this.last = last;
+		}
+
+		protected void compute() {
+			if (last - first > 1) {
+				int middle = (first + last) >>> 1;
+				invokeAll(new OBJTask(this, first, middle), new OBJTask(this, middle, last));
+			} else if (copy) {
+				copyPart(first);
+			} else {
+				parsePart(first);
+			}
+		}
+
+		/**
+		 * Parses or copies the parts one after the other on the calling thread. invoke() outside
+		 * of a pool would fork the halves onto the common pool
+		 */
+		void computeHere() {
+			for (int part = first; part < last; part++) {
+				if (copy) copyPart(part);
+				else parsePart(part);
+			}
+		}
+
+		private void parsePart(int part) {
+			long start = starts[part];
+			long length = starts[part + 1] - start;
+			int estimate = (int)Math.min(length / 48, Integer.MAX_VALUE / 3);
+			OBJParser parser = new OBJParser(estimate, estimate, true);
+			if (length > 0) {
+				try {
+					parser.parse(channel, start, length);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				} catch (NumberFormatException e) {
+					throw new NumberFormatException(e.getMessage() + " of the part starting at byte " + start);
 				}
 			}
+			parts[part] = parser;
+		}
+
+		/**
+		 * Checks a part's indices against the vertices of the whole file, copies it into the buffers
+		 * and makes its negative indices count from the first vertex of the file
+		 */
+		private void copyPart(int part) {
+			OBJParser parser = parts[part];
+			try {
+				parser.checkIndices(vertexStart[parts.length]);
+			} catch (NumberFormatException e) {
+				throw new NumberFormatException(e.getMessage() + " of the part starting at byte " + starts[part]);
+			}
+			System.arraycopy(parser.getPositions(), 0, positions, vertexStart[part] * 3, parser.getNumVertices() * 3);
+
+			int offset = triangleStart[part] * 3;
+			System.arraycopy(parser.getIndices(), 0, indices, offset, parser.getNumTriangles() * 3);
+			int[] relative = parser.getRelative();
+			for (int i = 0; i < parser.getNumRelative(); i++) {
+				int index = offset + relative[i];
+				indices[index] += vertexStart[part];
+				if (indices[index] < 0) {
+					throw new NumberFormatException("Vertex index before the first vertex in the part starting at byte " + starts[part]);
+				}
+			}
+			parts[part] = null;
+		}
+
+		/**
+		 * Adds up where each part goes and copies the parts into one mesh
+		 * @param pool The pool to copy in parallel on, or null to copy on the calling thread
+		 */
+		Mesh toMesh(ForkJoinPool pool) {
+			vertexStart = new int[parts.length + 1];
+			triangleStart = new int[parts.length + 1];
+			for (int i = 0; i < parts.length; i++) {
+				vertexStart[i + 1] = Math.addExact(vertexStart[i], parts[i].getNumVertices());
+				triangleStart[i + 1] = Math.addExact(triangleStart[i], parts[i].getNumTriangles());
+			}
+			int numVertices = vertexStart[parts.length];
+			int numTriangles = triangleStart[parts.length];
+			positions = new float[Math.max(1, numVertices) * 3];
+			indices = new int[Math.max(1, numTriangles) * 3];
+
+			copy = true;
+			OBJTask copyTask = new OBJTask(this, 0, parts.length);
+			if (pool != null) pool.invoke(copyTask);
+			else copyTask.computeHere();
+
+			Mesh mesh = new Mesh(1, 1);
+			mesh.setBuffers(positions, numVertices, indices, numTriangles);
+			return mesh;
+		}
+	}
+
+	/**
+	 * Reads an OBJ file one line at a time and hands its vertices, faces and groups to a visitor.
+	 * Only a 1 MB read buffer is kept, so the file can be bigger than the heap
+	 * @param objFileLocation Location of the OBJ file, as for loadOBJFile(String)
+	 * @param visitor The visitor
+	 * @return True if the whole file was read
+	 */
+	public static boolean visitOBJFile(String objFileLocation, MeshVisitor visitor) {
+		InputStream is = MeshLoader.class.getClassLoader().getResourceAsStream(objFileLocation);
+		if (is == null) {
+			System.out.println("Exception in MeshLoader: Text file can not be read. " + objFileLocation + " not found");
+			return false;
+		}
+		return visit(is, visitor);
+	}
+
+	/**
+	 * Reads an OBJ file on disk one line at a time and hands its vertices, faces and groups to a visitor.
+	 * Only a 1 MB read buffer is kept, so the file can be bigger than the heap
+	 * @param objFile The OBJ file
+	 * @param visitor The visitor
+	 * @return True if the whole file was read
+	 */
+	public static boolean visitOBJFile(File objFile, MeshVisitor visitor) {
+		try {
+			return visit(new FileInputStream(objFile), visitor);
+		} catch (IOException e) {
+			System.out.println("Exception in MeshLoader: Text file can not be read. " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * Streams a file through a visitor and closes it
+	 */
+	private static boolean visit(InputStream is, MeshVisitor visitor) {
+		boolean read = false;
+		try {
+			new OBJParser(visitor).parse(is);
+			read = true;
 		} catch (NumberFormatException e) {
 			System.out.println("Exception in MeshLoader: Text file in incorrect format. " + e);
 
 		} catch (IOException e) {
 			System.out.println("Exception in MeshLoader: Text file can not be read. " + e);
 		}
-		
-		for (int i = 0; i < triangles.size(); i++) {
-			loadedMesh.addTriangle(triangles.get(i));
-		}
 
 		try {
 			is.close();
-			isr.close();
-			reader.close();
 		} catch (IOException e) {
 			System.out.println("Exception in MeshLoader: Failed to close streamers and buffers. " + e);
 		}
+		return read;
+	}
 
-		return loadedMesh;
+	/**
+	 * Loads an OBJ file into a mesh on another thread
+	 * @param objFileLocation Location of the OBJ file, as for loadOBJFile(String)
+	 * @return The mesh once it is loaded
+	 */
+	public static CompletableFuture<Mesh> loadAsync(final String objFileLocation) {
+		return CompletableFuture.supplyAsync(new Supplier<Mesh>() {
+			public Mesh get() {
+				return loadOBJFile(objFileLocation);
+			}
+		}, getLoadExecutor());
+	}
+
+	/**
+	 * Loads an OBJ file on disk into a mesh on another thread
+	 * @param objFile The OBJ file
+	 * @return The mesh once it is loaded
+	 */
+	public static CompletableFuture<Mesh> loadAsync(final File objFile) {
+		return CompletableFuture.supplyAsync(new Supplier<Mesh>() {
+			public Mesh get() {
+				return loadOBJFile(objFile);
+			}
+		}, getLoadExecutor());
+	}
+
+	/**
+	 * Starts loading many OBJ files at the same time
+	 * @param objFileLocations Locations of the OBJ files, as for loadOBJFile(String)
+	 * @return One future per file, in the same order. See allLoaded() to wait for all of them
+	 */
+	public static List<CompletableFuture<Mesh>> loadAllAsync(String... objFileLocations) {
+		List<CompletableFuture<Mesh>> futures = new ArrayList<CompletableFuture<Mesh>>(objFileLocations.length);
+		for (String objFileLocation : objFileLocations) {
+			futures.add(loadAsync(objFileLocation));
+		}
+		return futures;
+	}
+
+	/**
+	 * Combines the futures of a batch of loads
+	 * @param futures The loads, for example from loadAllAsync()
+	 * @return The meshes in the same order, once every one of them is loaded
+	 */
+	public static CompletableFuture<List<Mesh>> allLoaded(final List<CompletableFuture<Mesh>> futures) {
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(new Function<Void, List<Mesh>>() {
+			public List<Mesh> apply(Void done) {
+				List<Mesh> meshes = new ArrayList<Mesh>(futures.size());
+				for (CompletableFuture<Mesh> future : futures) {
+					meshes.add(future.join());
+				}
+				return meshes;
+			}
+		});
+	}
+
+	/**
+	 * Gets the executor loadAsync() runs loads on. A virtual thread per load where the Java has them
+	 * (Java 21 and up), and otherwise a daemon thread per load, so loads never keep the program running
+	 */
+	private static synchronized ExecutorService getLoadExecutor() {
+		if (loadExecutor == null) {
+			try {
+				loadExecutor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				loadExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "MeshLoader");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+		}
+		return loadExecutor;
+	}
+
+	/**
+	 * Gets the pool OBJ files are parsed on, shared by every load
+	 * @return The pool, or null to parse on the calling thread
+	 */
+	private static synchronized ForkJoinPool getParsePool() {
+		if (parsePool == null && threads > 1) {
+			parsePool = new ForkJoinPool(threads);
+		}
+		return parsePool;
+	}
+
+	/**
+	 * Sets the number of threads loadOBJFile(File) parses with. Loads that already started finish on
+	 * the old pool, whose threads then end on their own
+	 * @param threads Number of threads. 1 parses on the calling thread
+	 */
+	public static synchronized void setThreads(int threads) {
+		threads = Math.max(1, threads);
+		if (threads == MeshLoader.threads) return;
+
+		parsePool = null;
+		MeshLoader.threads = threads;
+	}
+
+	/**
+	 * Getter for the number of threads loadOBJFile(File) parses with
+	 * @return The number of threads
+	 */
+	public static int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets whether loadOBJFile(File) reads and writes binary caches next to the OBJ files
+	 * @param useCache True to use the caches
+	 */
+	public static void setUseCache(boolean useCache) {
+		MeshLoader.useCache = useCache;
+	}
 
+	public static boolean getUseCache() {
+		return useCache;
 	}
 
 }
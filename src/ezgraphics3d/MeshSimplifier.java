@@ -0,0 +1,435 @@
+package ezgraphics3d;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * MeshSimplifier Class.
+ * Reduces the number of triangles of a Mesh by collapsing edges, cheapest first, using quadric error metrics
+ * (Garland and Heckbert). Every vertex keeps a quadric, the sum of the squared distances to the planes of the
+ * triangles around it. Collapsing an edge merges the quadrics of its two vertices and puts the new vertex where
+ * the merged quadric is smallest, so the cost of a collapse is how far the surface moves.
+ *
+ * Edges used by only one triangle get extra planes standing up along them, so open borders keep their shape,
+ * and collapses that would flip a triangle over are skipped.
+ * It is slow enough that big meshes should be simplified once, ahead of time. See LODChain.
+ *
+ * ProgressiveMesh uses it with half edge collapses, where one end of the edge moves onto the other,
+ * so no vertex ever changes position, and records every collapse so it can be undone as a vertex split.
+ * @author Ryan Theriot
+ */
+public class MeshSimplifier {
+
+	/** How much more moving a border edge costs than moving the surface */
+	private static final double BORDER_WEIGHT = 1000;
+
+	private int numVertices;
+	private double[] positions;
+	private double[] quadrics;
+	private boolean[] vertexRemoved;
+	private int[] vertexVersion;
+
+	private int[] indices;
+	private boolean[] triangleRemoved;
+	private int liveTriangles;
+
+	/** The triangles around each vertex */
+	private int[][] vertexTriangles;
+	private int[] vertexTriangleCount;
+
+	private PriorityQueue<Collapse> queue = new PriorityQueue<Collapse>();
+
+	/** Only collapse edges onto one of their ends */
+	private boolean halfEdge = false;
+	private Recorder recorder;
+
+	/**
+	 * Told about every collapse as it happens, before the triangles are changed
+	 */
+	interface Recorder {
+		/** Vertex removed is collapsing onto vertex kept */
+		void collapse(int kept, int removed);
+		/** A triangle that had both vertices is going away. Its corners are indices[offset] to indices[offset + 2] */
+		void removeTriangle(int triangle, int[] indices, int offset);
+		/** Corner corner (0 to 2) of a triangle is changing from the removed vertex to the kept one */
+		void moveCorner(int triangle, int corner);
+	}
+
+	/** An edge collapse waiting in the queue. It is stale if either vertex changed since it was queued */
+	private static class Collapse implements Comparable<Collapse> {
+		int a, b;
+		int versionA, versionB;
+		double cost;
+		double x, y, z;
+
+		public int compareTo(Collapse other) {
+			return Double.compare(cost, other.cost);
+		}
+	}
+
+	private MeshSimplifier() {
+	}
+
+	/**
+	 * Constructor Method
+	 * For ProgressiveMesh, which needs half edge collapses and a record of them
+	 * @param mesh The mesh to simplify
+	 * @param halfEdge Only collapse edges onto one of their ends
+	 * @param recorder Told about every collapse, or null
+	 */
+	MeshSimplifier(Mesh mesh, boolean halfEdge, Recorder recorder) {
+		this.halfEdge = halfEdge;
+		this.recorder = recorder;
+		load(mesh);
+	}
+
+	/**
+	 * Simplifies a mesh into a new mesh. The mesh itself is not changed
+	 * @param mesh The mesh to simplify
+	 * @param targetTriangles The number of triangles to stop at. There may be a few more if the mesh can not be collapsed further
+	 * @return A new mesh with the mesh's color and cull mode
+	 */
+	public static Mesh simplify(Mesh mesh, int targetTriangles) {
+		MeshSimplifier simplifier = new MeshSimplifier();
+		simplifier.load(mesh);
+		simplifier.collapse(Math.max(0, targetTriangles));
+		Mesh simplified = simplifier.toMesh();
+		simplified.setColor(mesh.getColor());
+		simplified.setCullMode(mesh.getCullMode());
+		return simplified;
+	}
+
+	private void load(Mesh mesh) {
+		numVertices = mesh.getNumVertices();
+		int numTriangles = mesh.getNumTriangles();
+		float[] p = mesh.getPositions();
+
+		positions = new double[numVertices * 3];
+		for (int i = 0; i < numVertices * 3; i++) positions[i] = p[i];
+		quadrics = new double[numVertices * 10];
+		vertexRemoved = new boolean[numVertices];
+		vertexVersion = new int[numVertices];
+		indices = Arrays.copyOf(mesh.getIndices(), numTriangles * 3);
+		triangleRemoved = new boolean[numTriangles];
+		liveTriangles = numTriangles;
+
+		vertexTriangleCount = new int[numVertices];
+		for (int i = 0; i < numTriangles * 3; i++) vertexTriangleCount[indices[i]]++;
+		vertexTriangles = new int[numVertices][];
+		for (int v = 0; v < numVertices; v++) {
+			vertexTriangles[v] = new int[Math.max(1, vertexTriangleCount[v])];
+			vertexTriangleCount[v] = 0;
+		}
+
+		/** Each triangle adds its plane, weighted by its area, to its three vertices. Edges are counted to find the borders */
+		HashMap<Long, Integer> edgeUse = new HashMap<Long, Integer>();
+		double[] plane = new double[4];
+		for (int t = 0; t < numTriangles; t++) {
+			for (int k = 0; k < 3; k++) {
+				int v = indices[t * 3 + k];
+				vertexTriangles[v][vertexTriangleCount[v]++] = t;
+
+				Long key = edgeKey(v, indices[t * 3 + (k + 1) % 3]);
+				Integer used = edgeUse.get(key);
+				edgeUse.put(key, (used == null) ? 1 : used + 1);
+			}
+
+			double area = trianglePlane(t, plane);
+			if (area == 0) continue;
+			for (int k = 0; k < 3; k++) {
+				addPlane(indices[t * 3 + k], plane, area);
+			}
+		}
+
+		for (int t = 0; t < numTriangles; t++) {
+			double area = trianglePlane(t, plane);
+			if (area == 0) continue;
+			for (int k = 0; k < 3; k++) {
+				int a = indices[t * 3 + k], b = indices[t * 3 + (k + 1) % 3];
+				if (edgeUse.get(edgeKey(a, b)) != 1) continue;
+
+				/** A plane through the border edge, perpendicular to the triangle */
+				double ex = positions[b * 3] - positions[a * 3];
+				double ey = positions[b * 3 + 1] - positions[a * 3 + 1];
+				double ez = positions[b * 3 + 2] - positions[a * 3 + 2];
+				double nx = ey * plane[2] - ez * plane[1];
+				double ny = ez * plane[0] - ex * plane[2];
+				double nz = ex * plane[1] - ey * plane[0];
+				double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+				if (length == 0) continue;
+
+				double[] border = { nx / length, ny / length, nz / length, 0 };
+				border[3] = -(border[0] * positions[a * 3] + border[1] * positions[a * 3 + 1] + border[2] * positions[a * 3 + 2]);
+				double weight = BORDER_WEIGHT * (ex * ex + ey * ey + ez * ez);
+				addPlane(a, border, weight);
+				addPlane(b, border, weight);
+			}
+		}
+
+		for (Long key : edgeUse.keySet()) {
+			queueEdge((int) (key >>> 32), (int) (long) key);
+		}
+	}
+
+	private static Long edgeKey(int a, int b) {
+		return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+	}
+
+	/**
+	 * Writes the unit plane of a triangle
+	 * @return The triangle's area, 0 if it has none
+	 */
+	private double trianglePlane(int t, double[] plane) {
+		int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, c = indices[t * 3 + 2] * 3;
+		double ux = positions[b] - positions[a], uy = positions[b + 1] - positions[a + 1], uz = positions[b + 2] - positions[a + 2];
+		double vx = positions[c] - positions[a], vy = positions[c + 1] - positions[a + 1], vz = positions[c + 2] - positions[a + 2];
+		double nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+		double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (length == 0) return 0;
+
+		plane[0] = nx / length;
+		plane[1] = ny / length;
+		plane[2] = nz / length;
+		plane[3] = -(plane[0] * positions[a] + plane[1] * positions[a + 1] + plane[2] * positions[a + 2]);
+		return length / 2;
+	}
+
+	/**
+	 * Adds weight * p p^T to a vertex's quadric. The symmetric 4x4 matrix is stored as its upper 10 entries
+	 */
+	private void addPlane(int v, double[] p, double weight) {
+		int o = v * 10;
+		quadrics[o]     += weight * p[0] * p[0];
+		quadrics[o + 1] += weight * p[0] * p[1];
+		quadrics[o + 2] += weight * p[0] * p[2];
+		quadrics[o + 3] += weight * p[0] * p[3];
+		quadrics[o + 4] += weight * p[1] * p[1];
+		quadrics[o + 5] += weight * p[1] * p[2];
+		quadrics[o + 6] += weight * p[1] * p[3];
+		quadrics[o + 7] += weight * p[2] * p[2];
+		quadrics[o + 8] += weight * p[2] * p[3];
+		quadrics[o + 9] += weight * p[3] * p[3];
+	}
+
+	/**
+	 * Finds where the merged quadric of an edge is smallest and queues the collapse
+	 */
+	private void queueEdge(int a, int b) {
+		double[] q = new double[10];
+		for (int i = 0; i < 10; i++) q[i] = quadrics[a * 10 + i] + quadrics[b * 10 + i];
+
+		Collapse collapse = new Collapse();
+		collapse.a = a;
+		collapse.b = b;
+		collapse.versionA = vertexVersion[a];
+		collapse.versionB = vertexVersion[b];
+
+		/** Half edge collapses only try the ends. If b is the better one to keep, the edge is turned around */
+		if (halfEdge) {
+			collapse.cost = error(q, positions[a * 3], positions[a * 3 + 1], positions[a * 3 + 2]);
+			collapse.x = positions[a * 3];
+			collapse.y = positions[a * 3 + 1];
+			collapse.z = positions[a * 3 + 2];
+			double costB = error(q, positions[b * 3], positions[b * 3 + 1], positions[b * 3 + 2]);
+			if (costB < collapse.cost) {
+				collapse.a = b;
+				collapse.b = a;
+				collapse.versionA = vertexVersion[b];
+				collapse.versionB = vertexVersion[a];
+				collapse.cost = costB;
+				collapse.x = positions[b * 3];
+				collapse.y = positions[b * 3 + 1];
+				collapse.z = positions[b * 3 + 2];
+			}
+			queue.add(collapse);
+			return;
+		}
+
+		/** Try the ends and the middle of the edge */
+		collapse.cost = Double.POSITIVE_INFINITY;
+		for (int k = 0; k < 3; k++) {
+			double t = k * 0.5;
+			tryPosition(collapse, q, positions[a * 3] + (positions[b * 3] - positions[a * 3]) * t,
+			                         positions[a * 3 + 1] + (positions[b * 3 + 1] - positions[a * 3 + 1]) * t,
+			                         positions[a * 3 + 2] + (positions[b * 3 + 2] - positions[a * 3 + 2]) * t);
+		}
+
+		/**
+		 * And the point where the gradient of the quadric is 0, unless the matrix is close to singular
+		 * (a flat area) and the point ends up away from the edge
+		 */
+		double det = q[0] * (q[4] * q[7] - q[5] * q[5]) - q[1] * (q[1] * q[7] - q[5] * q[2]) + q[2] * (q[1] * q[5] - q[4] * q[2]);
+		if (det != 0) {
+			double bx = -q[3], by = -q[6], bz = -q[8];
+			double x = (bx * (q[4] * q[7] - q[5] * q[5]) - q[1] * (by * q[7] - q[5] * bz) + q[2] * (by * q[5] - q[4] * bz)) / det;
+			double y = (q[0] * (by * q[7] - bz * q[5]) - bx * (q[1] * q[7] - q[5] * q[2]) + q[2] * (q[1] * bz - by * q[2])) / det;
+			double z = (q[0] * (q[4] * bz - q[5] * by) - q[1] * (q[1] * bz - by * q[2]) + bx * (q[1] * q[5] - q[4] * q[2])) / det;
+
+			double ex = positions[b * 3] - positions[a * 3], ey = positions[b * 3 + 1] - positions[a * 3 + 1], ez = positions[b * 3 + 2] - positions[a * 3 + 2];
+			double mx = x - (positions[a * 3] + positions[b * 3]) / 2;
+			double my = y - (positions[a * 3 + 1] + positions[b * 3 + 1]) / 2;
+			double mz = z - (positions[a * 3 + 2] + positions[b * 3 + 2]) / 2;
+			if (mx * mx + my * my + mz * mz <= ex * ex + ey * ey + ez * ez) {
+				tryPosition(collapse, q, x, y, z);
+			}
+		}
+		queue.add(collapse);
+	}
+
+	private static void tryPosition(Collapse collapse, double[] q, double x, double y, double z) {
+		double cost = error(q, x, y, z);
+		if (cost < collapse.cost) {
+			collapse.cost = cost;
+			collapse.x = x;
+			collapse.y = y;
+			collapse.z = z;
+		}
+	}
+
+	private static double error(double[] q, double x, double y, double z) {
+		return q[0] * x * x + 2 * q[1] * x * y + 2 * q[2] * x * z + 2 * q[3] * x
+		     + q[4] * y * y + 2 * q[5] * y * z + 2 * q[6] * y
+		     + q[7] * z * z + 2 * q[8] * z + q[9];
+	}
+
+	/**
+	 * Collapses the cheapest edges until the mesh is down to the target
+	 */
+	void collapse(int targetTriangles) {
+		while (liveTriangles > targetTriangles && !queue.isEmpty()) {
+			Collapse c = queue.poll();
+			if (vertexRemoved[c.a] || vertexRemoved[c.b]) continue;
+			if (vertexVersion[c.a] != c.versionA || vertexVersion[c.b] != c.versionB) continue;
+			if (flips(c.a, c.b, c) || flips(c.b, c.a, c)) continue;
+
+			int a = c.a, b = c.b;
+			positions[a * 3] = c.x;
+			positions[a * 3 + 1] = c.y;
+			positions[a * 3 + 2] = c.z;
+			for (int i = 0; i < 10; i++) quadrics[a * 10 + i] += quadrics[b * 10 + i];
+			vertexRemoved[b] = true;
+			vertexVersion[a]++;
+			if (recorder != null) recorder.collapse(a, b);
+
+			/** Move b's triangles over to a. The ones that had both are now lines and go away */
+			for (int i = 0; i < vertexTriangleCount[b]; i++) {
+				int t = vertexTriangles[b][i];
+				if (triangleRemoved[t]) continue;
+
+				boolean hasA = false;
+				for (int k = 0; k < 3; k++) {
+					if (indices[t * 3 + k] == a) hasA = true;
+				}
+				if (hasA) {
+					if (recorder != null) recorder.removeTriangle(t, indices, t * 3);
+					triangleRemoved[t] = true;
+					liveTriangles--;
+				} else {
+					for (int k = 0; k < 3; k++) {
+						if (indices[t * 3 + k] != b) continue;
+						if (recorder != null) recorder.moveCorner(t, k);
+						indices[t * 3 + k] = a;
+					}
+					addVertexTriangle(a, t);
+				}
+			}
+			vertexTriangleCount[b] = 0;
+
+			/** Requeue the edges around a, whose quadric and position changed */
+			int count = 0;
+			int[] list = vertexTriangles[a];
+			for (int i = 0; i < vertexTriangleCount[a]; i++) {
+				int t = list[i];
+				if (triangleRemoved[t]) continue;
+				list[count++] = t;
+				for (int k = 0; k < 3; k++) {
+					int n = indices[t * 3 + k];
+					if (n != a) queueEdge(Math.min(a, n), Math.max(a, n));
+				}
+			}
+			vertexTriangleCount[a] = count;
+		}
+	}
+
+	private void addVertexTriangle(int v, int t) {
+		if (vertexTriangleCount[v] == vertexTriangles[v].length) {
+			vertexTriangles[v] = Arrays.copyOf(vertexTriangles[v], vertexTriangles[v].length * 2);
+		}
+		vertexTriangles[v][vertexTriangleCount[v]++] = t;
+	}
+
+	/**
+	 * Checks if moving vertex v to the collapse's position turns any of its triangles that do not
+	 * also have the other vertex upside down
+	 */
+	private boolean flips(int v, int other, Collapse c) {
+		for (int i = 0; i < vertexTriangleCount[v]; i++) {
+			int t = vertexTriangles[v][i];
+			if (triangleRemoved[t]) continue;
+
+			int corner = -1;
+			boolean hasOther = false;
+			for (int k = 0; k < 3; k++) {
+				if (indices[t * 3 + k] == v) corner = k;
+				if (indices[t * 3 + k] == other) hasOther = true;
+			}
+			if (hasOther) continue;
+
+			int p1 = indices[t * 3 + (corner + 1) % 3] * 3;
+			int p2 = indices[t * 3 + (corner + 2) % 3] * 3;
+			int p0 = v * 3;
+
+			double ux = positions[p1] - positions[p0], uy = positions[p1 + 1] - positions[p0 + 1], uz = positions[p1 + 2] - positions[p0 + 2];
+			double vx = positions[p2] - positions[p0], vy = positions[p2 + 1] - positions[p0 + 1], vz = positions[p2 + 2] - positions[p0 + 2];
+			double ox = uy * vz - uz * vy, oy = uz * vx - ux * vz, oz = ux * vy - uy * vx;
+
+			ux = positions[p1] - c.x; uy = positions[p1 + 1] - c.y; uz = positions[p1 + 2] - c.z;
+			vx = positions[p2] - c.x; vy = positions[p2 + 1] - c.y; vz = positions[p2 + 2] - c.z;
+			double nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+
+			if (ox * nx + oy * ny + oz * nz <= 0) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the index buffer as it is now. Removed triangles keep their last corners
+	 * @return 3 vertex indices per triangle of the original mesh
+	 */
+	int[] getIndices() {
+		return indices;
+	}
+
+	boolean isTriangleRemoved(int triangle) {
+		return triangleRemoved[triangle];
+	}
+
+	boolean isVertexRemoved(int vertex) {
+		return vertexRemoved[vertex];
+	}
+
+	/**
+	 * Copies the triangles that are left, and only the vertices they use, into a new mesh
+	 */
+	private Mesh toMesh() {
+		int[] newIndex = new int[numVertices];
+		Arrays.fill(newIndex, -1);
+		Mesh mesh = new Mesh(numVertices, liveTriangles);
+
+		for (int t = 0; t < triangleRemoved.length; t++) {
+			if (triangleRemoved[t]) continue;
+			int[] corners = new int[3];
+			for (int k = 0; k < 3; k++) {
+				int v = indices[t * 3 + k];
+				if (newIndex[v] < 0) {
+					newIndex[v] = mesh.addVertex((float) positions[v * 3], (float) positions[v * 3 + 1], (float) positions[v * 3 + 2]);
+				}
+				corners[k] = newIndex[v];
+			}
+			mesh.addTriangle(corners[0], corners[1], corners[2]);
+		}
+		return mesh;
+	}
+
+}
@@ -0,0 +1,33 @@
+package ezgraphics3d;
+
+/**
+ * MeshVisitor Interface.
+ * Gets the parts of a model one at a time, in file order, as MeshLoader.visitOBJFile reads them,
+ * without the model ever being put together in memory. Only a small read buffer is kept, so a
+ * visitor can decimate, bin into spatial chunks or convert models that are bigger than the heap.
+ * @author Ryan Theriot
+ */
+public interface MeshVisitor {
+
+	/**
+	 * Called for every vertex. Vertices are numbered from 0 in the order they come
+	 * @param x The X Coordinate
+	 * @param y The Y Coordinate
+	 * @param z The Z Coordinate
+	 */
+	void onVertex(float x, float y, float z);
+
+	/**
+	 * Called for every face. Negative OBJ indices are already turned into vertex numbers
+	 * @param vertices The vertex numbers of the corners, counter clockwise. Only valid during the call
+	 * @param count Number of corners, 3 or more
+	 */
+	void onFace(int[] vertices, int count);
+
+	/**
+	 * Called when a group or object starts (g and o lines). The faces after it belong to it
+	 * @param name The name of the group
+	 */
+	void onGroup(String name);
+
+}
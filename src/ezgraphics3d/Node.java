@@ -0,0 +1,477 @@
+package ezgraphics3d;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Node Class.
+ * A node in a Scene, the 3D version of an EZGroup. Every node has a Transform relative to its parent,
+ * so moving a node moves everything under it: a turret node under a ship node turns with the ship.
+ * A node can draw a Mesh or a LODChain, which can be shared with other nodes like a MeshInstance, or only group its children.
+ *
+ * The node caches its world matrix (its parent's world matrix times its own) and only rebuilds it
+ * when its own transform or an ancestor's world matrix changed. It also keeps a bounding box around
+ * everything in its subtree, so a Scene can skip a whole subtree that is outside the view.
+ *
+ * A node can also be made from a mesh that is still loading (see MeshLoader.loadAsync). It draws a
+ * box until the mesh is loaded, and Scene.update() swaps the mesh in on the first frame after that.
+ * @author Ryan Theriot
+ */
+public class Node implements Renderable {
+
+	private Node parent;
+	private ArrayList<Node> children = new ArrayList<Node>();
+	private boolean childrenChanged = false;
+
+	private Transform transform = new Transform();
+	private Mesh mesh;
+	private LODChain lodChain;
+	private int level = 0;
+	private Color color = Color.white;
+	private int[] shadeRamp;
+	private Color[] shadeColors;
+
+	/**
+	 * The world matrix and the versions it was built from. worldVersion goes up every time it is
+	 * rebuilt, which tells the children theirs is out of date
+	 */
+	private Mat4 world = new Mat4();
+	private int worldVersion = 0;
+	private int localVersion = -1;
+	private int parentVersion = -1;
+
+	private Mat4 normalMatrix = new Mat4();
+	private int normalMatrixVersion = -1;
+
+	/** Bounds of the node's mesh in the world, and of the whole subtree */
+	private BoundingBox worldBox = new BoundingBox();
+	private BoundingSphere worldSphere = new BoundingSphere();
+	private int boundsVersion = -1;
+	/** Goes up every time the bounds are updated, see getBoundsVersion() */
+	private int boundsChanges;
+	private BoundingBox subtreeBox = new BoundingBox();
+
+	/** A mesh that is still loading, and whether translate() put the pivot on the mesh's centroid */
+	private CompletableFuture<Mesh> loading;
+	private boolean pivotOnMesh = false;
+	/** The transform's matrix when translate() first put the pivot on the box drawn while loading */
+	private Mat4 boxPivotMatrix;
+
+	/**
+	 * Constructor Method
+	 * Creates a node that only groups its children
+	 */
+	public Node() {
+	}
+
+	/**
+	 * Constructor Method
+	 * Starts with the mesh's color
+	 * @param mesh The mesh the node draws
+	 */
+	public Node(Mesh mesh) {
+		this(mesh, mesh.getColor());
+	}
+
+	/**
+	 * Constructor Method
+	 * @param mesh The mesh the node draws
+	 * @param color The node's color
+	 */
+	public Node(Mesh mesh, Color color) {
+		this.mesh = mesh;
+		this.color = color;
+	}
+
+	/**
+	 * Constructor Method
+	 * Draws the levels of a LODChain. Starts with the full mesh's color
+	 * @param lodChain The shared levels of detail
+	 */
+	public Node(LODChain lodChain) {
+		this(lodChain.getLevel(0));
+		this.lodChain = lodChain;
+	}
+
+	/**
+	 * Constructor Method
+	 * Draws a 1 x 1 x 1 box around the origin until the mesh is loaded
+	 * @param mesh The mesh the node draws, once it is loaded
+	 */
+	public Node(CompletableFuture<Mesh> mesh) {
+		this(mesh, new BoundingBox().set(-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f));
+	}
+
+	/**
+	 * Constructor Method
+	 * Draws a box until the mesh is loaded
+	 * @param mesh The mesh the node draws, once it is loaded
+	 * @param placeholder The box to draw until then, in the mesh's model space
+	 */
+	public Node(CompletableFuture<Mesh> mesh, BoundingBox placeholder) {
+		this(Mesh.createBox(placeholder));
+		this.loading = mesh;
+	}
+
+	/**
+	 * Adds a child node. It is taken away from its old parent first
+	 * @param child The node to add
+	 * @return The child
+	 */
+	public Node addChild(Node child) {
+		for (Node n = this; n != null; n = n.parent) {
+			if (n == child) throw new IllegalArgumentException("A node can not be added under itself");
+		}
+		if (child.parent != null) {
+			child.parent.removeChild(child);
+		}
+		children.add(child);
+		child.parent = this;
+		child.parentVersion = -1;
+		childrenChanged = true;
+		return child;
+	}
+
+	/**
+	 * Removes a child node
+	 * @param child The node to remove
+	 * @return True if it was a child of this node
+	 */
+	public boolean removeChild(Node child) {
+		if (!children.remove(child)) return false;
+		child.parent = null;
+		child.parentVersion = -1;
+		childrenChanged = true;
+		return true;
+	}
+
+	/**
+	 * Getter for the node's children
+	 * @return The children. Use addChild and removeChild to change them
+	 */
+	public ArrayList<Node> getChildren() {
+		return children;
+	}
+
+	/**
+	 * Getter for the node's parent
+	 * @return The parent, or null for a root
+	 */
+	public Node getParent() {
+		return parent;
+	}
+
+	/**
+	 * Rotates the node relative to its parent
+	 * @param xDeg The X Degree of rotation
+	 * @param yDeg The Y Degree of rotation
+	 * @param zDeg The Z Degree of rotation
+	 */
+	public void rotate(float xDeg, float yDeg, float zDeg) {
+		transform.rotate(xDeg, yDeg, zDeg);
+	}
+
+	/**
+	 * Scales the node relative to its parent
+	 * @param x The X scaling
+	 * @param y The Y scaling
+	 * @param z The Z scaling
+	 */
+	public void scale(float x, float y, float z) {
+		transform.scale(x, y, z);
+	}
+
+	/**
+	 * Translates the node relative to its parent
+	 * Afterwards a node with a mesh rotates and scales around the mesh's centroid, like a Mesh does
+	 * @param x The X translation
+	 * @param y The Y translation
+	 * @param z The Z translation
+	 */
+	public void translate(float x, float y, float z) {
+		transform.translate(x, y, z);
+
+		if (mesh != null) {
+			if (loading != null && !pivotOnMesh) {
+				boxPivotMatrix = new Mat4().set(transform.getMatrix());
+			}
+			Vector centroid = mesh.getCentroid();
+			transform.setPivot(centroid.getX(), centroid.getY(), centroid.getZ());
+			pivotOnMesh = true;
+		}
+	}
+
+	/**
+	 * Sets the center of the node, in its parent's coordinates
+	 * This is the point that the node rotates and scales around
+	 * @param x - X coordinate
+	 * @param y - Y coordinate
+	 * @param z - Z coordinate
+	 */
+	public void setCenter(float x, float y, float z) {
+		transform.setCenter(x, y, z);
+	}
+
+	/**
+	 * Getter for the node's transform relative to its parent
+	 * @return The Transform
+	 */
+	public Transform getTransform() {
+		return transform;
+	}
+
+	/**
+	 * Getter for the mesh the node draws. With a LODChain this is the full mesh
+	 * @return The mesh, or null if the node only groups its children
+	 */
+	public Mesh getMesh() {
+		return mesh;
+	}
+
+	/**
+	 * Setter for the mesh the node draws
+	 * @param mesh The mesh, or null to only group the children
+	 */
+	public void setMesh(Mesh mesh) {
+		this.loading = null;
+		this.mesh = mesh;
+		this.lodChain = null;
+		this.level = 0;
+		boundsVersion = -1;
+		childrenChanged = true;
+	}
+
+	/**
+	 * Sets the levels of detail the node draws
+	 * @param lodChain The chain, or null to draw nothing
+	 */
+	public void setLODChain(LODChain lodChain) {
+		setMesh((lodChain != null) ? lodChain.getLevel(0) : null);
+		this.lodChain = lodChain;
+	}
+
+	/**
+	 * Getter for the node's LODChain
+	 * @return The chain, or null if the node draws one mesh
+	 */
+	public LODChain getLODChain() {
+		return lodChain;
+	}
+
+	/**
+	 * Getter for the level of detail the node drew last
+	 * @return The level, 0 is the full mesh
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Checks if the node is still drawing a box in place of a mesh that is loading
+	 * @return True until the mesh is swapped in
+	 */
+	public boolean isLoading() {
+		return loading != null;
+	}
+
+	/**
+	 * Swaps in the mesh once it is loaded. If translate() put the pivot on the box's centroid it moves to
+	 * the new mesh's, and the node ends up where it would be had the mesh been loaded before translate():
+	 * the position moves by how far apart the two centroids were when the pivot was first set, so the
+	 * rotations made since then do not matter. If loading failed the node keeps drawing the box
+	 */
+	private void finishLoading() {
+		if (loading == null || !loading.isDone()) return;
+
+		Mesh loaded;
+		try {
+			loaded = loading.join();
+		} catch (RuntimeException e) {
+			System.out.println("Exception in Node: Mesh could not be loaded. " + e);
+			loading = null;
+			return;
+		}
+		Vector boxCentroid = mesh.getCentroid();
+		setMesh(loaded);
+		if (pivotOnMesh) {
+			Vector centroid = loaded.getCentroid();
+			float[] offset = new float[3];
+			boxPivotMatrix.transformDirection(centroid.getX() - boxCentroid.getX(), centroid.getY() - boxCentroid.getY(),
+					centroid.getZ() - boxCentroid.getZ(), offset, 0);
+			float x = transform.getPositionX() + offset[0];
+			float y = transform.getPositionY() + offset[1];
+			float z = transform.getPositionZ() + offset[2];
+
+			transform.setPivot(centroid.getX(), centroid.getY(), centroid.getZ());
+			transform.translate(x - transform.getPositionX(), y - transform.getPositionY(), z - transform.getPositionZ());
+		}
+		boxPivotMatrix = null;
+	}
+
+	/**
+	 * Returns the mesh of the current level of detail
+	 * @return The geometry
+	 */
+	public Mesh getGeometry() {
+		return (lodChain != null) ? lodChain.getLevel(level) : mesh;
+	}
+
+	public void selectLevelOfDetail(float screenSize) {
+		if (lodChain != null) {
+			level = lodChain.selectLevel(screenSize, level);
+		}
+	}
+
+	/**
+	 * Returns the node's world matrix, rebuilding it and its ancestors' if any of them moved
+	 * @return The world matrix. Do not modify it
+	 */
+	public Mat4 getModelMatrix() {
+		if (parent != null) parent.getModelMatrix();
+		updateWorld();
+		return world;
+	}
+
+	/**
+	 * Rebuilds the world matrix if the node's transform or its parent's world matrix changed.
+	 * The parent's world matrix must already be up to date
+	 * @return True if the world matrix changed
+	 */
+	private boolean updateWorld() {
+		int parentWorldVersion = (parent != null) ? parent.worldVersion : 0;
+		if (localVersion == transform.getVersion() && parentVersion == parentWorldVersion) return false;
+
+		if (parent != null) {
+			parent.world.mulInto(transform.getMatrix(), world);
+		} else {
+			world.set(transform.getMatrix());
+		}
+		localVersion = transform.getVersion();
+		parentVersion = parentWorldVersion;
+		worldVersion++;
+		return true;
+	}
+
+	public Mat4 getNormalMatrix() {
+		Mat4 model = getModelMatrix();
+		if (normalMatrixVersion != worldVersion) {
+			model.normalMatrix(normalMatrix);
+			normalMatrixVersion = worldVersion;
+		}
+		return normalMatrix;
+	}
+
+	/**
+	 * Returns the bounding box of the node's mesh in the world. Empty if the node has no mesh
+	 * @return The bounding box. Do not modify it
+	 */
+	public BoundingBox getBoundingBox() {
+		getModelMatrix();
+		updateBounds();
+		return worldBox;
+	}
+
+	/**
+	 * Returns the bounding sphere of the node's mesh in the world
+	 * @return The bounding sphere. Do not modify it
+	 */
+	public BoundingSphere getBoundingSphere() {
+		getModelMatrix();
+		updateBounds();
+		return worldSphere;
+	}
+
+	/**
+	 * Moves the mesh's bounds into the world if the world matrix changed
+	 * @return True if the bounds changed
+	 */
+	private boolean updateBounds() {
+		if (boundsVersion == worldVersion) return false;
+		if (mesh != null) {
+			mesh.getLocalBoundingBox().transform(world, worldBox);
+			mesh.getLocalBoundingSphere().transform(world, worldSphere);
+		} else {
+			worldBox.setEmpty();
+			worldSphere.set(0, 0, 0, 0);
+		}
+		boundsVersion = worldVersion;
+		boundsChanges++;
+		return true;
+	}
+
+	/**
+	 * Returns a number that goes up every time the world bounds of the node's mesh change, because
+	 * the node or one of its ancestors moved or the mesh was swapped
+	 * @return The version of the world bounds
+	 */
+	public int getBoundsVersion() {
+		getModelMatrix();
+		updateBounds();
+		return boundsChanges;
+	}
+
+	/**
+	 * Returns the box around the meshes of this node and everything under it, as of the last Scene.update()
+	 * @return The bounding box. Do not modify it
+	 */
+	public BoundingBox getSubtreeBoundingBox() {
+		return subtreeBox;
+	}
+
+	/**
+	 * Brings the world matrices and bounds of the subtree up to date, from the top down.
+	 * The subtree box is only rebuilt if something under the node moved or changed.
+	 * The parent must already be up to date
+	 * @return True if the subtree box changed
+	 */
+	boolean updateSubtree() {
+		finishLoading();
+		updateWorld();
+		boolean changed = updateBounds() | childrenChanged;
+		for (int i = 0; i < children.size(); i++) {
+			changed |= children.get(i).updateSubtree();
+		}
+
+		if (changed) {
+			subtreeBox.set(worldBox);
+			for (int i = 0; i < children.size(); i++) {
+				subtreeBox.include(children.get(i).subtreeBox);
+			}
+			childrenChanged = false;
+		}
+		return changed;
+	}
+
+	public Color getColor() {
+		return color;
+	}
+
+	/**
+	 * Setter for the node's color
+	 * @param color Color to set the node to
+	 */
+	public void setColor(Color color) {
+		this.color = color;
+		this.shadeRamp = null;
+		this.shadeColors = null;
+	}
+
+	public int[] getShadeRamp() {
+		if (shadeRamp == null) {
+			shadeRamp = Mesh.buildShadeRamp(color);
+		}
+		return shadeRamp;
+	}
+
+	public Color getShadeColor(int shade) {
+		if (shadeColors == null) {
+			shadeColors = new Color[Mesh.SHADES];
+		}
+		if (shadeColors[shade] == null) {
+			shadeColors[shade] = new Color(getShadeRamp()[shade]);
+		}
+		return shadeColors[shade];
+	}
+
+}
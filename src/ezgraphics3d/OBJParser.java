@@ -0,0 +1,424 @@
+package ezgraphics3d;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * OBJParser Class.
+ * Reads the vertices and faces of an OBJ file straight from its bytes into a float[] of positions
+ * and an int[] index buffer, the same buffers a Mesh uses. Numbers are parsed in place without making
+ * Strings, so a big file costs its buffers and not a few objects per number.
+ *
+ * Tokens can be separated by any number of spaces and tabs, and lines can end in \n or \r\n.
+ * Faces with more than 3 corners are split into a fan of triangles. A face corner can be v, v/vt,
+ * v//vn or v/vt/vn, only v is used, and a negative v counts back from the last vertex read.
+ * Everything but v and f lines is skipped.
+ *
+ * MeshLoader also uses one parser per part of a file to read the parts in parallel. A part does not
+ * know how many vertices come before it, so negative indices are left relative to the part's first
+ * vertex and listed with getRelative(), for the loader to fix once it has added up the parts.
+ *
+ * With a MeshVisitor nothing is stored: every vertex, face and group is handed to the visitor as it
+ * is read, and faces are passed on whole instead of split into triangles.
+ * @author Ryan Theriot
+ */
+class OBJParser {
+
+	/** Bytes read from the stream at a time */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/** Powers of ten that are exact as floats and as doubles */
+	private static final float[] FLOAT_POW10 = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+	private static final double[] DOUBLE_POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private float[] positions;
+	private int numVertices;
+	private int[] indices;
+	private int numTriangles;
+
+	/** Corners of the face being read, and which of them were negative */
+	private int[] face = new int[8];
+	private boolean[] faceRelative = new boolean[8];
+
+	/** Leave negative indices relative to the first vertex, and where they are in the index buffer */
+	private boolean deferRelative;
+	private int[] relative = new int[16];
+	private int numRelative;
+
+	/** The biggest positive vertex index read and its line, checked once all the vertices are known */
+	private int maxIndex = -1;
+	private int maxIndexLine;
+
+	/** Gets everything that is read instead of the buffers, if set */
+	private MeshVisitor visitor;
+
+	/** Where parsing is in the buffer, and the line it is on */
+	private int pos;
+	private int line = 1;
+
+	/**
+	 * Constructor Method
+	 * @param vertexCapacity Expected number of vertices
+	 * @param triangleCapacity Expected number of triangles
+	 */
+	OBJParser(int vertexCapacity, int triangleCapacity) {
+		this(vertexCapacity, triangleCapacity, false);
+	}
+
+	/**
+	 * Constructor Method
+	 * @param vertexCapacity Expected number of vertices
+	 * @param triangleCapacity Expected number of triangles
+	 * @param deferRelative True to leave negative indices relative to the first vertex read, for parts of a file
+	 */
+	OBJParser(int vertexCapacity, int triangleCapacity, boolean deferRelative) {
+		positions = new float[Math.max(1, vertexCapacity) * 3];
+		indices = new int[Math.max(1, triangleCapacity) * 3];
+		this.deferRelative = deferRelative;
+	}
+
+	/**
+	 * Constructor Method
+	 * Hands everything that is read to a visitor instead of storing it
+	 * @param visitor The visitor
+	 */
+	OBJParser(MeshVisitor visitor) {
+		this(1, 1, false);
+		this.visitor = visitor;
+	}
+
+	/**
+	 * Reads a whole OBJ file from a stream. The stream is not closed
+	 * @param in The stream
+	 * @throws IOException If the stream can not be read
+	 * @throws NumberFormatException If a v or f line is not in the right format
+	 */
+	void parse(InputStream in) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int length = 0;
+		int read;
+		while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+			length += read;
+
+			/** Parse up to the last full line and keep the rest for the next read */
+			int end = length;
+			while (end > 0 && buffer[end - 1] != '\n') end--;
+			if (end == 0) {
+				if (length == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				continue;
+			}
+			parse(buffer, 0, end);
+			System.arraycopy(buffer, end, buffer, 0, length - end);
+			length -= end;
+		}
+		parse(buffer, 0, length);
+	}
+
+	/**
+	 * Reads a whole OBJ file, or a part of one that starts at the start of a line, a block at a time.
+	 * The reads are positional, so parsers can read different parts of the same channel at once
+	 * @param channel The file
+	 * @param start The byte the part starts at
+	 * @param size The number of bytes in the part
+	 * @throws IOException If the file can not be read
+	 * @throws NumberFormatException If a v or f line is not in the right format
+	 */
+	void parse(FileChannel channel, long start, long size) throws IOException {
+		byte[] buffer = new byte[(int)Math.min(BUFFER_SIZE, Math.max(1, size))];
+		int length = 0;
+		for (long offset = start, stop = start + size; offset < stop; ) {
+			int read = channel.read(ByteBuffer.wrap(buffer, length, (int)Math.min(buffer.length - length, stop - offset)), offset);
+			if (read < 0) throw new EOFException("File ended early at byte " + offset);
+			offset += read;
+			length += read;
+
+			int end = length;
+			while (end > 0 && buffer[end - 1] != '\n') end--;
+			if (end == 0) {
+				if (length == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				continue;
+			}
+			parse(buffer, 0, end);
+			System.arraycopy(buffer, end, buffer, 0, length - end);
+			length -= end;
+		}
+		parse(buffer, 0, length);
+	}
+
+	/**
+	 * Reads the lines in part of a buffer. The part should end at the end of a line
+	 * @param b The bytes
+	 * @param start Index of the first byte
+	 * @param end Index after the last byte
+	 * @throws NumberFormatException If a v or f line is not in the right format
+	 */
+	void parse(byte[] b, int start, int end) {
+		pos = start;
+		while (pos < end) {
+			skipBlanks(b, end);
+			if (pos + 1 < end && isBlank(b[pos + 1])) {
+				if (b[pos] == 'v') {
+					pos++;
+					readVertex(b, end);
+				} else if (b[pos] == 'f') {
+					pos++;
+					readFace(b, end);
+				} else if ((b[pos] == 'g' || b[pos] == 'o') && visitor != null) {
+					pos++;
+					readGroup(b, end);
+				}
+			}
+			skipLine(b, end);
+		}
+	}
+
+	private void readVertex(byte[] b, int end) {
+		if (visitor != null) {
+			float x = readFloat(b, end);
+			float y = readFloat(b, end);
+			float z = readFloat(b, end);
+			visitor.onVertex(x, y, z);
+			numVertices++;
+			return;
+		}
+
+		if (numVertices * 3 == positions.length) {
+			positions = Arrays.copyOf(positions, positions.length * 2);
+		}
+		int i = numVertices * 3;
+		positions[i] = readFloat(b, end);
+		positions[i + 1] = readFloat(b, end);
+		positions[i + 2] = readFloat(b, end);
+		numVertices++;
+	}
+
+	private void readFace(byte[] b, int end) {
+		int corners = 0;
+		while (true) {
+			skipBlanks(b, end);
+			if (pos == end || b[pos] == '\n' || b[pos] == '#') break;
+
+			int v = readInt(b, end);
+			boolean negative = v < 0;
+			if (v > 0) v = v - 1;
+			else if (v < 0) v = numVertices + v;
+			else throw error("Vertex index 0");
+			if (v < 0 && !deferRelative) throw error("Vertex index before the first vertex");
+			if (!negative && v > maxIndex) {
+				maxIndex = v;
+				maxIndexLine = line;
+			}
+
+			/** Skip the texture coordinate and normal indices */
+			while (pos < end && !isBlank(b[pos]) && b[pos] != '\n') pos++;
+
+			if (corners == face.length) {
+				face = Arrays.copyOf(face, face.length * 2);
+				faceRelative = Arrays.copyOf(faceRelative, face.length);
+			}
+			faceRelative[corners] = negative;
+			face[corners++] = v;
+		}
+		if (corners < 3) throw error("Face with fewer than 3 corners");
+
+		if (visitor != null) {
+			visitor.onFace(face, corners);
+			return;
+		}
+
+		for (int k = 1; k + 1 < corners; k++) {
+			if (numTriangles * 3 == indices.length) {
+				indices = Arrays.copyOf(indices, indices.length * 2);
+			}
+			int i = numTriangles * 3;
+			indices[i] = face[0];
+			indices[i + 1] = face[k];
+			indices[i + 2] = face[k + 1];
+			numTriangles++;
+
+			if (deferRelative) {
+				if (faceRelative[0]) addRelative(i);
+				if (faceRelative[k]) addRelative(i + 1);
+				if (faceRelative[k + 1]) addRelative(i + 2);
+			}
+		}
+	}
+
+	private void readGroup(byte[] b, int end) {
+		skipBlanks(b, end);
+		int start = pos;
+		while (pos < end && b[pos] != '\n' && b[pos] != '#') pos++;
+		int stop = pos;
+		while (stop > start && isBlank(b[stop - 1])) stop--;
+		visitor.onGroup(new String(b, start, stop - start, StandardCharsets.UTF_8));
+	}
+
+	private void addRelative(int index) {
+		if (numRelative == relative.length) relative = Arrays.copyOf(relative, relative.length * 2);
+		relative[numRelative++] = index;
+	}
+
+	/**
+	 * Reads a float like Float.parseFloat does. Numbers with up to 7 digits, which is most of
+	 * them, are one float division. Ones too long or too big for that fall back to Float.parseFloat
+	 */
+	private float readFloat(byte[] b, int end) {
+		skipBlanks(b, end);
+		int start = pos;
+		boolean negative = false;
+		if (pos < end && (b[pos] == '-' || b[pos] == '+')) {
+			negative = b[pos] == '-';
+			pos++;
+		}
+
+		/** Up to 18 significant digits go in the mantissa, the number is mantissa * 10^exponent */
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean any = false;
+		for (; pos < end && b[pos] >= '0' && b[pos] <= '9'; pos++) {
+			any = true;
+			if (digits < 18) {
+				mantissa = mantissa * 10 + (b[pos] - '0');
+				if (mantissa != 0) digits++;
+			} else {
+				exponent++;
+			}
+		}
+		if (pos < end && b[pos] == '.') {
+			pos++;
+			for (; pos < end && b[pos] >= '0' && b[pos] <= '9'; pos++) {
+				any = true;
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (b[pos] - '0');
+					if (mantissa != 0) digits++;
+					exponent--;
+				}
+			}
+		}
+		if (!any) throw error("Expected a number");
+		if (pos < end && (b[pos] == 'e' || b[pos] == 'E')) {
+			pos++;
+			boolean negativeExponent = false;
+			if (pos < end && (b[pos] == '-' || b[pos] == '+')) {
+				negativeExponent = b[pos] == '-';
+				pos++;
+			}
+			if (pos == end || b[pos] < '0' || b[pos] > '9') throw error("Expected an exponent");
+			int e = 0;
+			for (; pos < end && b[pos] >= '0' && b[pos] <= '9'; pos++) {
+				if (e < 10000) e = e * 10 + (b[pos] - '0');
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+		if (pos < end && !isBlank(b[pos]) && b[pos] != '\n') throw error("Expected a number");
+
+		float value;
+		if (mantissa == 0) {
+			value = 0;
+		} else if (mantissa < (1 << 24) && exponent >= -10 && exponent <= 10) {
+			/** Both are exact floats, so the one rounding is the division's */
+			value = (exponent < 0) ? mantissa / FLOAT_POW10[-exponent] : mantissa * FLOAT_POW10[exponent];
+		} else if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+			double d = (exponent < 0) ? mantissa / DOUBLE_POW10[-exponent] : mantissa * DOUBLE_POW10[exponent];
+			value = (float)d;
+		} else {
+			return Float.parseFloat(new String(b, start, pos - start, StandardCharsets.US_ASCII));
+		}
+		return negative ? -value : value;
+	}
+
+	private int readInt(byte[] b, int end) {
+		boolean negative = false;
+		if (pos < end && (b[pos] == '-' || b[pos] == '+')) {
+			negative = b[pos] == '-';
+			pos++;
+		}
+		if (pos == end || b[pos] < '0' || b[pos] > '9') throw error("Expected an index");
+		long value = 0;
+		for (; pos < end && b[pos] >= '0' && b[pos] <= '9'; pos++) {
+			value = value * 10 + (b[pos] - '0');
+			if (value > Integer.MAX_VALUE) throw error("Index too big");
+		}
+		return (int)(negative ? -value : value);
+	}
+
+	private static boolean isBlank(byte c) {
+		return c == ' ' || c == '\t' || c == '\r';
+	}
+
+	private void skipBlanks(byte[] b, int end) {
+		while (pos < end && isBlank(b[pos])) pos++;
+	}
+
+	private void skipLine(byte[] b, int end) {
+		while (pos < end && b[pos] != '\n') pos++;
+		if (pos < end) {
+			pos++;
+			line++;
+		}
+	}
+
+	private NumberFormatException error(String message) {
+		return new NumberFormatException(message + " on line " + line);
+	}
+
+	/**
+	 * Checks that no face uses a vertex after the last one. Faces can come before the vertices
+	 * they use, so this can only be done once the whole file is read
+	 * @param totalVertices The number of vertices in the whole file
+	 * @throws NumberFormatException If a face does
+	 */
+	void checkIndices(int totalVertices) {
+		if (maxIndex >= totalVertices) {
+			throw new NumberFormatException("Vertex index " + (maxIndex + 1) + " after the last vertex on line " + maxIndexLine);
+		}
+	}
+
+	/**
+	 * Puts what was read into a mesh. The mesh uses the parser's buffers
+	 * @return The mesh
+	 * @throws NumberFormatException If a face uses a vertex after the last one
+	 */
+	Mesh toMesh() {
+		checkIndices(numVertices);
+		Mesh mesh = new Mesh(1, 1);
+		mesh.setBuffers(positions, numVertices, indices, numTriangles);
+		return mesh;
+	}
+
+	float[] getPositions() {
+		return positions;
+	}
+
+	int[] getIndices() {
+		return indices;
+	}
+
+	/**
+	 * Returns where the negative indices are in the index buffer, when they are left relative
+	 * @return Indices into getIndices(), getNumRelative() of them
+	 */
+	int[] getRelative() {
+		return relative;
+	}
+
+	int getNumRelative() {
+		return numRelative;
+	}
+
+	int getNumVertices() {
+		return numVertices;
+	}
+
+	int getNumTriangles() {
+		return numTriangles;
+	}
+
+}
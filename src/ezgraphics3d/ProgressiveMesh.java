@@ -0,0 +1,460 @@
+package ezgraphics3d;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * ProgressiveMesh Class.
+ * A mesh stored as a coarse base mesh and a list of vertex splits that refine it, one vertex at a time,
+ * back into the full mesh (Hoppe's progressive meshes). It is built by collapsing edges onto one of their
+ * ends, cheapest first, and keeping the collapses. Undoing them in reverse order is refining.
+ *
+ * Vertices and triangles are stored in the order the splits bring them in, so the mesh at any level
+ * is the start of the vertex buffer and the start of the index buffer. A split only adds one vertex,
+ * one or two triangles that are already in place, and points a few corners of older triangles at the
+ * new vertex. Coarsening points them back. Neither touches the rest of the index buffer.
+ *
+ * The saved file has the mesh's color and cull mode and then the base mesh, so open() can show the base
+ * right away and readSplits() can stream in the rest while it is being drawn. update() keeps the triangle count under a budget.
+ * getMesh() is the Mesh to draw. It uses the progressive mesh's buffers and must not be added to.
+ * @author Ryan Theriot
+ */
+public class ProgressiveMesh implements Closeable {
+
+	/** "EZPM" */
+	private static final int MAGIC = 0x455A504D;
+	private static final int VERSION = 1;
+
+	/** Default number of triangles build() collapses the base mesh down to */
+	public static final int DEFAULT_BASE_TRIANGLES = 64;
+	/** Default number of splits update() applies or undoes at most in one call */
+	public static final int DEFAULT_MAX_SPLITS_PER_UPDATE = 1024;
+
+	private float[] positions;
+	private int[] indices;
+	private int baseVertices;
+	private int baseTriangles;
+
+	/** Per split: the vertex it splits off of, where its corners and triangles start, and the triangle count after it */
+	private int[] splitKept;
+	private int[] splitCornerStart;
+	private int[] splitTriangles;
+	private int[] corners;
+	private int numSplits;
+	private int totalSplits;
+
+	/** Splits applied right now */
+	private int level = 0;
+	private int maxSplitsPerUpdate = DEFAULT_MAX_SPLITS_PER_UPDATE;
+
+	private Mesh mesh = new Mesh(1, 1);
+	private DataInputStream in;
+
+	private ProgressiveMesh() {
+	}
+
+	/**
+	 * Builds a progressive mesh by collapsing the mesh down to DEFAULT_BASE_TRIANGLES triangles.
+	 * The mesh itself is not changed
+	 * @param source The full mesh
+	 * @return The progressive mesh, at its base level
+	 */
+	public static ProgressiveMesh build(Mesh source) {
+		return build(source, DEFAULT_BASE_TRIANGLES);
+	}
+
+	/**
+	 * Builds a progressive mesh by collapsing the mesh down to a number of triangles
+	 * @param source The full mesh
+	 * @param baseTriangles Triangles to stop collapsing at. There may be more if the mesh can not be collapsed that far
+	 * @return The progressive mesh, at its base level
+	 */
+	public static ProgressiveMesh build(Mesh source, int baseTriangles) {
+		final int numVertices = source.getNumVertices();
+		final int numTriangles = source.getNumTriangles();
+
+		/** The collapses in the order they happened, with the triangles they removed and the corners they moved */
+		final ArrayList<int[]> collapses = new ArrayList<int[]>();
+		final int[][] removedCorners = new int[numTriangles][];
+		final int[] removedBy = new int[numTriangles];
+		final int[] movedCorners = new int[numTriangles * 3 * 2];
+		final int[] movedCount = new int[1];
+		final int[] collapseMovedStart = new int[numVertices + 1];
+		Arrays.fill(removedBy, -1);
+
+		MeshSimplifier.Recorder recorder = new MeshSimplifier.Recorder() {
+			public void collapse(int kept, int removed) {
+				collapseMovedStart[collapses.size()] = movedCount[0];
+				collapses.add(new int[] { kept, removed });
+			}
+
+			public void removeTriangle(int triangle, int[] indices, int offset) {
+				removedCorners[triangle] = Arrays.copyOfRange(indices, offset, offset + 3);
+				removedBy[triangle] = collapses.size() - 1;
+			}
+
+			public void moveCorner(int triangle, int corner) {
+				movedCorners[movedCount[0]++] = triangle * 3 + corner;
+			}
+		};
+
+		MeshSimplifier simplifier = new MeshSimplifier(source, true, recorder);
+		simplifier.collapse(Math.max(0, baseTriangles));
+		int numCollapses = collapses.size();
+		collapseMovedStart[numCollapses] = movedCount[0];
+
+		/** New vertex order: vertices left in the base, then the removed ones, last collapse first */
+		ProgressiveMesh pm = new ProgressiveMesh();
+		int[] newVertex = new int[numVertices];
+		int next = 0;
+		for (int v = 0; v < numVertices; v++) {
+			if (!simplifier.isVertexRemoved(v)) newVertex[v] = next++;
+		}
+		pm.baseVertices = next;
+		for (int j = 0; j < numCollapses; j++) {
+			newVertex[collapses.get(numCollapses - 1 - j)[1]] = next++;
+		}
+
+		/** New triangle order: triangles left in the base, then the ones each split brings back */
+		int[] newTriangle = new int[numTriangles];
+		int[] splitOrder = new int[numTriangles];
+		int[] splitTriangleCount = new int[numCollapses];
+		next = 0;
+		for (int t = 0; t < numTriangles; t++) {
+			if (!simplifier.isTriangleRemoved(t)) newTriangle[t] = next++;
+		}
+		pm.baseTriangles = next;
+		for (int t = 0; t < numTriangles; t++) {
+			if (removedBy[t] >= 0) splitTriangleCount[numCollapses - 1 - removedBy[t]]++;
+		}
+		int[] splitStart = new int[numCollapses + 1];
+		splitStart[0] = pm.baseTriangles;
+		for (int j = 0; j < numCollapses; j++) {
+			splitStart[j + 1] = splitStart[j] + splitTriangleCount[j];
+		}
+		int[] fill = Arrays.copyOf(splitStart, numCollapses);
+		for (int t = 0; t < numTriangles; t++) {
+			if (removedBy[t] >= 0) newTriangle[t] = fill[numCollapses - 1 - removedBy[t]]++;
+		}
+
+		/** Each triangle starts out with the corners it had when it was last in the mesh */
+		float[] p = source.getPositions();
+		pm.positions = new float[numVertices * 3];
+		for (int v = 0; v < numVertices; v++) {
+			System.arraycopy(p, v * 3, pm.positions, newVertex[v] * 3, 3);
+		}
+		pm.indices = new int[numTriangles * 3];
+		int[] last = simplifier.getIndices();
+		for (int t = 0; t < numTriangles; t++) {
+			int[] c = (removedBy[t] >= 0) ? removedCorners[t] : Arrays.copyOfRange(last, t * 3, t * 3 + 3);
+			for (int k = 0; k < 3; k++) {
+				pm.indices[newTriangle[t] * 3 + k] = newVertex[c[k]];
+			}
+		}
+
+		pm.allocateSplits(numCollapses, movedCount[0]);
+		int cornerCount = 0;
+		for (int j = 0; j < numCollapses; j++) {
+			int collapse = numCollapses - 1 - j;
+			pm.splitKept[j] = newVertex[collapses.get(collapse)[0]];
+			pm.splitCornerStart[j] = cornerCount;
+			for (int i = collapseMovedStart[collapse]; i < collapseMovedStart[collapse + 1]; i++) {
+				int corner = movedCorners[i];
+				pm.corners[cornerCount++] = newTriangle[corner / 3] * 3 + corner % 3;
+			}
+			pm.splitTriangles[j] = splitStart[j + 1];
+		}
+		pm.splitCornerStart[numCollapses] = cornerCount;
+		pm.numSplits = numCollapses;
+		pm.totalSplits = numCollapses;
+
+		pm.mesh.setColor(source.getColor());
+		pm.mesh.setCullMode(source.getCullMode());
+		pm.updateMesh();
+		return pm;
+	}
+
+	private void allocateSplits(int splits, int cornerCount) {
+		splitKept = new int[splits];
+		splitCornerStart = new int[splits + 1];
+		splitTriangles = new int[splits];
+		corners = new int[cornerCount];
+	}
+
+	/**
+	 * Refines or coarsens to a number of splits
+	 * @param level Splits to apply, 0 is the base mesh. Limited to the splits loaded so far
+	 */
+	public void setLevel(int level) {
+		level = Math.max(0, Math.min(level, numSplits));
+		if (level == this.level) return;
+
+		while (this.level < level) {
+			int j = this.level++;
+			int vertex = baseVertices + j;
+			for (int i = splitCornerStart[j]; i < splitCornerStart[j + 1]; i++) {
+				indices[corners[i]] = vertex;
+			}
+		}
+		while (this.level > level) {
+			int j = --this.level;
+			for (int i = splitCornerStart[j]; i < splitCornerStart[j + 1]; i++) {
+				indices[corners[i]] = splitKept[j];
+			}
+		}
+		updateMesh();
+	}
+
+	/**
+	 * Moves toward the finest level that fits in a triangle budget, applying or undoing at most
+	 * getMaxSplitsPerUpdate() splits, so one call never takes long. Call it once per frame
+	 * @param triangleBudget The most triangles the mesh should have
+	 * @return The level after the update
+	 */
+	public int update(int triangleBudget) {
+		int target = getLevelForBudget(triangleBudget);
+		if (target > level) setLevel(Math.min(target, level + maxSplitsPerUpdate));
+		else if (target < level) setLevel(Math.max(target, level - maxSplitsPerUpdate));
+		return level;
+	}
+
+	/**
+	 * Finds the finest loaded level with no more than a number of triangles
+	 * @param triangleBudget The most triangles
+	 * @return The level. 0 if even the base mesh is over the budget
+	 */
+	public int getLevelForBudget(int triangleBudget) {
+		int lo = 0, hi = numSplits;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (splitTriangles[mid - 1] <= triangleBudget) lo = mid;
+			else hi = mid - 1;
+		}
+		return lo;
+	}
+
+	private void updateMesh() {
+		int numTriangles = (level == 0) ? baseTriangles : splitTriangles[level - 1];
+		mesh.setBuffers(positions, baseVertices + level, indices, numTriangles);
+	}
+
+	/**
+	 * Returns the mesh to draw. It changes in place as the level changes
+	 * @return The mesh
+	 */
+	public Mesh getMesh() {
+		return mesh;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Getter for the number of splits that can be applied, which grows as readSplits() streams them in
+	 * @return The number of loaded splits
+	 */
+	public int getNumSplits() {
+		return numSplits;
+	}
+
+	/**
+	 * Getter for the number of splits in the whole progressive mesh
+	 * @return The number of splits, including ones not loaded yet
+	 */
+	public int getTotalSplits() {
+		return totalSplits;
+	}
+
+	public int getNumTriangles() {
+		return mesh.getNumTriangles();
+	}
+
+	public void setMaxSplitsPerUpdate(int maxSplitsPerUpdate) {
+		this.maxSplitsPerUpdate = Math.max(1, maxSplitsPerUpdate);
+	}
+
+	public int getMaxSplitsPerUpdate() {
+		return maxSplitsPerUpdate;
+	}
+
+	/**
+	 * Saves the progressive mesh's color and cull mode, then the base mesh and the splits in the order they are applied
+	 * @param file The file to write
+	 * @throws IOException If the file can not be written
+	 */
+	public void save(File file) throws IOException {
+		int savedLevel = level;
+		setLevel(0);
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(positions.length / 3);
+			out.writeInt(indices.length / 3);
+			out.writeInt(baseVertices);
+			out.writeInt(baseTriangles);
+			out.writeInt(numSplits);
+			out.writeInt(mesh.getColor().getRGB());
+			out.writeInt(mesh.getCullMode().ordinal());
+			for (int i = 0; i < baseVertices * 3; i++) out.writeFloat(positions[i]);
+			for (int i = 0; i < baseTriangles * 3; i++) out.writeInt(indices[i]);
+
+			int triangle = baseTriangles;
+			for (int j = 0; j < numSplits; j++) {
+				int vertex = baseVertices + j;
+				out.writeInt(splitKept[j]);
+				out.writeFloat(positions[vertex * 3]);
+				out.writeFloat(positions[vertex * 3 + 1]);
+				out.writeFloat(positions[vertex * 3 + 2]);
+				out.writeInt(splitTriangles[j] - triangle);
+				for (; triangle < splitTriangles[j]; triangle++) {
+					out.writeInt(indices[triangle * 3]);
+					out.writeInt(indices[triangle * 3 + 1]);
+					out.writeInt(indices[triangle * 3 + 2]);
+				}
+				out.writeInt(splitCornerStart[j + 1] - splitCornerStart[j]);
+				for (int i = splitCornerStart[j]; i < splitCornerStart[j + 1]; i++) out.writeInt(corners[i]);
+			}
+		} finally {
+			out.close();
+			setLevel(savedLevel);
+		}
+	}
+
+	/**
+	 * Loads a whole progressive mesh saved with save()
+	 * @param file The file to read
+	 * @return The progressive mesh, at its base level
+	 * @throws IOException If the file can not be read or is not a progressive mesh
+	 */
+	public static ProgressiveMesh load(File file) throws IOException {
+		ProgressiveMesh pm = open(new FileInputStream(file));
+		try {
+			pm.readSplits(Integer.MAX_VALUE);
+		} finally {
+			pm.close();
+		}
+		return pm;
+	}
+
+	/**
+	 * Reads the header and the base mesh from a stream saved with save(). The base can be drawn
+	 * right away, and readSplits() reads more of the stream when the caller has time for it
+	 * @param stream The stream. It is closed by close(), or once every split is read
+	 * @return The progressive mesh, at its base level with no splits loaded
+	 * @throws IOException If the stream can not be read or is not a progressive mesh
+	 */
+	public static ProgressiveMesh open(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		try {
+			if (in.readInt() != MAGIC) throw new IOException("Not a progressive mesh");
+			int version = in.readInt();
+			if (version != VERSION) throw new IOException("Unsupported progressive mesh version " + version);
+
+			ProgressiveMesh pm = new ProgressiveMesh();
+			int numVertices = in.readInt();
+			int numTriangles = in.readInt();
+			pm.baseVertices = in.readInt();
+			pm.baseTriangles = in.readInt();
+			pm.totalSplits = in.readInt();
+			if (numVertices < 0 || numTriangles < 0 || pm.baseVertices + pm.totalSplits != numVertices || pm.baseTriangles > numTriangles) {
+				throw new IOException("Corrupt progressive mesh header");
+			}
+			Color color = new Color(in.readInt(), true);
+			int cullMode = in.readInt();
+			if (cullMode < 0 || cullMode >= Mesh.CullMode.values().length) throw new IOException("Corrupt progressive mesh header");
+			pm.mesh.setColor(color);
+			pm.mesh.setCullMode(Mesh.CullMode.values()[cullMode]);
+
+			pm.positions = new float[numVertices * 3];
+			pm.indices = new int[numTriangles * 3];
+			pm.splitKept = new int[pm.totalSplits];
+			pm.splitCornerStart = new int[pm.totalSplits + 1];
+			pm.splitTriangles = new int[pm.totalSplits];
+			pm.corners = new int[Math.max(16, pm.totalSplits * 4)];
+
+			for (int i = 0; i < pm.baseVertices * 3; i++) pm.positions[i] = in.readFloat();
+			for (int i = 0; i < pm.baseTriangles * 3; i++) pm.indices[i] = in.readInt();
+
+			pm.in = in;
+			pm.updateMesh();
+			return pm;
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads more splits from the stream given to open(). They can be applied as soon as this returns
+	 * @param maxSplits The most splits to read
+	 * @return The number of splits read. 0 once every split is loaded
+	 * @throws IOException If the stream can not be read or ends too early
+	 */
+	public int readSplits(int maxSplits) throws IOException {
+		if (in == null) return 0;
+		int read = 0;
+		try {
+			while (read < maxSplits && numSplits < totalSplits) {
+				int j = numSplits;
+				int vertex = baseVertices + j;
+				int triangle = (j == 0) ? baseTriangles : splitTriangles[j - 1];
+
+				splitKept[j] = in.readInt();
+				positions[vertex * 3] = in.readFloat();
+				positions[vertex * 3 + 1] = in.readFloat();
+				positions[vertex * 3 + 2] = in.readFloat();
+
+				int newTriangles = in.readInt();
+				if (newTriangles < 0 || (triangle + newTriangles) * 3 > indices.length) throw new IOException("Corrupt vertex split " + j);
+				for (int i = triangle * 3, end = (triangle + newTriangles) * 3; i < end; i++) {
+					indices[i] = in.readInt();
+				}
+				splitTriangles[j] = triangle + newTriangles;
+
+				int cornerCount = in.readInt();
+				if (cornerCount < 0) throw new IOException("Corrupt vertex split " + j);
+				int start = splitCornerStart[j];
+				if (start + cornerCount > corners.length) {
+					corners = Arrays.copyOf(corners, Math.max(start + cornerCount, corners.length * 2));
+				}
+				for (int i = 0; i < cornerCount; i++) corners[start + i] = in.readInt();
+				splitCornerStart[j + 1] = start + cornerCount;
+
+				numSplits++;
+				read++;
+			}
+		} catch (EOFException e) {
+			close();
+			throw new IOException("Progressive mesh ended after " + numSplits + " of " + totalSplits + " splits", e);
+		}
+		if (numSplits == totalSplits) close();
+		return read;
+	}
+
+	/**
+	 * Stops reading splits and closes the stream given to open()
+	 * @throws IOException If the stream can not be closed
+	 */
+	public void close() throws IOException {
+		if (in != null) {
+			in.close();
+			in = null;
+		}
+	}
+
+}
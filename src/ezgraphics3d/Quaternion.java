@@ -0,0 +1,147 @@
+package ezgraphics3d;
+
+/**
+ * Quaternion Class.
+ * A unit quaternion used to store rotations without the drift and gimbal problems of
+ * repeatedly multiplying rotation matrices together.
+ * @author Ryan Theriot
+ */
+public class Quaternion {
+
+	private float x, y, z, w;
+
+	/**
+	 * Constructor Method
+	 * Creates the identity rotation
+	 */
+	public Quaternion() {
+		setIdentity();
+	}
+
+	/**
+	 * Sets this quaternion to the identity rotation
+	 * @return This quaternion
+	 */
+	public Quaternion setIdentity() {
+		return set(0, 0, 0, 1);
+	}
+
+	/**
+	 * Sets every component of this quaternion
+	 * @return This quaternion
+	 */
+	public Quaternion set(float x, float y, float z, float w) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.w = w;
+		return this;
+	}
+
+	/**
+	 * Copies another quaternion into this one
+	 * @param other The quaternion to copy
+	 * @return This quaternion
+	 */
+	public Quaternion set(Quaternion other) {
+		return set(other.x, other.y, other.z, other.w);
+	}
+
+	/**
+	 * Sets this quaternion to a rotation about an axis
+	 * @param axisX The X component of the axis
+	 * @param axisY The Y component of the axis
+	 * @param axisZ The Z component of the axis
+	 * @param degree The amount to rotate in degrees
+	 * @return This quaternion
+	 */
+	public Quaternion setAxisAngle(float axisX, float axisY, float axisZ, float degree) {
+		float length = (float) Math.sqrt(axisX * axisX + axisY * axisY + axisZ * axisZ);
+		if (length == 0) return setIdentity();
+
+		double half = Math.toRadians(degree) / 2;
+		float s = (float) Math.sin(half) / length;
+		return set(axisX * s, axisY * s, axisZ * s, (float) Math.cos(half));
+	}
+
+	/**
+	 * Sets this quaternion to a rotation about the X axis, then the Y axis, then the Z axis
+	 * @param xDeg The X Degree of rotation
+	 * @param yDeg The Y Degree of rotation
+	 * @param zDeg The Z Degree of rotation
+	 * @return This quaternion
+	 */
+	public Quaternion setEuler(float xDeg, float yDeg, float zDeg) {
+		double hx = Math.toRadians(xDeg) / 2;
+		double hy = Math.toRadians(yDeg) / 2;
+		double hz = Math.toRadians(zDeg) / 2;
+		float cx = (float) Math.cos(hx), sx = (float) Math.sin(hx);
+		float cy = (float) Math.cos(hy), sy = (float) Math.sin(hy);
+		float cz = (float) Math.cos(hz), sz = (float) Math.sin(hz);
+
+		/** qz * qy * qx */
+		return set(sx * cy * cz - cx * sy * sz,
+		           cx * sy * cz + sx * cy * sz,
+		           cx * cy * sz - sx * sy * cz,
+		           cx * cy * cz + sx * sy * sz);
+	}
+
+	/**
+	 * Multiplies this quaternion by another and stores the result in dst ( dst = this * other ).
+	 * The result rotates by other first and then by this. dst may be this quaternion or other.
+	 * @param other The quaternion on the right side
+	 * @param dst The quaternion the result is written to
+	 * @return dst
+	 */
+	public Quaternion mulInto(Quaternion other, Quaternion dst) {
+		float ax = x, ay = y, az = z, aw = w;
+		float bx = other.x, by = other.y, bz = other.z, bw = other.w;
+		return dst.set(aw * bx + ax * bw + ay * bz - az * by,
+		               aw * by - ax * bz + ay * bw + az * bx,
+		               aw * bz + ax * by - ay * bx + az * bw,
+		               aw * bw - ax * bx - ay * by - az * bz);
+	}
+
+	/**
+	 * Rescales this quaternion to unit length
+	 * @return This quaternion
+	 */
+	public Quaternion normalize() {
+		float length = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+		if (length == 0) return setIdentity();
+		return set(x / length, y / length, z / length, w / length);
+	}
+
+	/**
+	 * Writes this rotation into the upper 3x3 of a matrix. The rest of the matrix is set to the identity.
+	 * @param dst The matrix the result is written to
+	 * @return dst
+	 */
+	public Mat4 toMatrix(Mat4 dst) {
+		float xx = x * x, yy = y * y, zz = z * z;
+		float xy = x * y, xz = x * z, yz = y * z;
+		float wx = w * x, wy = w * y, wz = w * z;
+
+		return dst.set(1 - 2 * (yy + zz), 2 * (xy - wz), 2 * (xz + wy), 0,
+		               2 * (xy + wz), 1 - 2 * (xx + zz), 2 * (yz - wx), 0,
+		               2 * (xz - wy), 2 * (yz + wx), 1 - 2 * (xx + yy), 0,
+		               0, 0, 0, 1);
+	}
+
+	public float getX() {
+		return x;
+	}
+
+	public float getY() {
+		return y;
+	}
+
+	public float getZ() {
+		return z;
+	}
+
+	public float getW() {
+		return w;
+	}
+
+}
@@ -0,0 +1,376 @@
+package ezgraphics3d;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Rasterizer Class.
+ * Software rasterizer that scan converts screen space triangles straight into a packed ARGB
+ * color buffer with a z-buffer, instead of creating an EZPolygon for every triangle.
+ * The finished frame is shown on the EZ window as a single image.
+ * 
+ * Triangles are queued, binned into fixed size screen tiles and the tiles are filled in parallel
+ * on a ForkJoinPool. Every tile only writes the pixels inside of it, so no locking is needed and
+ * triangles inside a tile are still drawn in the order they were queued.
+ * @author Ryan Theriot
+ */
+public class Rasterizer {
+
+	private int width;
+	private int height;
+
+	/** Two images are used so EZ can paint one while the next frame is drawn into the other */
+	private BufferedImage[] images = new BufferedImage[2];
+	private int[][] colorBuffers = new int[2][];
+	private int current = 0;
+
+	private int[] colorBuffer;
+	private float[] depthBuffer;
+
+	/** Width and height of a screen tile in pixels */
+	public static final int TILE_SIZE = 64;
+	/** Tiles filled by one task before the work is split no further */
+	private static final int TILES_PER_TASK = 2;
+
+	private int tilesX;
+	private int tilesY;
+	private int[][] tileBins;
+	private int[] tileBinSizes;
+
+	/** Queued triangles. 9 floats (x, y, z for each vertex) and a color per triangle */
+	private float[] triangleVertices = new float[9 * 1024];
+	private int[] triangleColors = new int[1024];
+	private int triangleCount = 0;
+
+	private boolean clearPending = false;
+	private int clearColor;
+
+	private ForkJoinPool pool;
+	private int threads;
+
+	/**
+	 * Constructor Method
+	 * Uses one thread for every available processor
+	 * @param width Width of the frame buffer in pixels
+	 * @param height Height of the frame buffer in pixels
+	 */
+	public Rasterizer(int width, int height) {
+		this(width, height, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor Method
+	 * @param width Width of the frame buffer in pixels
+	 * @param height Height of the frame buffer in pixels
+	 * @param threads Number of threads used to fill tiles
+	 */
+	public Rasterizer(int width, int height, int threads) {
+		this.width = width;
+		this.height = height;
+		setThreads(threads);
+
+		tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		tileBins = new int[tilesX * tilesY][64];
+		tileBinSizes = new int[tilesX * tilesY];
+
+		for (int i = 0; i < images.length; i++) {
+			images[i] = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			colorBuffers[i] = ((DataBufferInt) images[i].getRaster().getDataBuffer()).getData();
+		}
+
+		colorBuffer = colorBuffers[current];
+		depthBuffer = new float[width * height];
+	}
+
+	/**
+	 * Sets the number of threads used to fill tiles
+	 * @param threads Number of threads. 1 fills every tile on the calling thread
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) threads = 1;
+		if (pool != null && threads == this.threads) return;
+
+		if (pool != null) pool.shutdown();
+		this.threads = threads;
+		pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+	}
+
+	/**
+	 * Getter for the number of threads used to fill tiles
+	 * @return The number of threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Clears the color buffer to the specified color and resets the depth buffer.
+	 * Any queued triangles are dropped. The clear itself is done tile by tile when the frame is flushed.
+	 * @param rgb The packed RGB clear color
+	 */
+	public void clear(int rgb) {
+		triangleCount = 0;
+		clearPending = true;
+		clearColor = rgb;
+	}
+
+	/**
+	 * Queues a screen space triangle to be filled.
+	 * Pixels are only written if they are closer than what is already in the depth buffer.
+	 * @param x1 Screen X of vertex 1
+	 * @param y1 Screen Y of vertex 1
+	 * @param z1 Depth of vertex 1
+	 * @param x2 Screen X of vertex 2
+	 * @param y2 Screen Y of vertex 2
+	 * @param z2 Depth of vertex 2
+	 * @param x3 Screen X of vertex 3
+	 * @param y3 Screen Y of vertex 3
+	 * @param z3 Depth of vertex 3
+	 * @param rgb The packed RGB color of the triangle
+	 */
+	public void fillTriangle(float x1, float y1, float z1, float x2, float y2, float z2,
+			float x3, float y3, float z3, int rgb) {
+
+		if (triangleCount == triangleColors.length) {
+			triangleColors = Arrays.copyOf(triangleColors, triangleCount * 2);
+			triangleVertices = Arrays.copyOf(triangleVertices, triangleCount * 2 * 9);
+		}
+
+		float[] v = triangleVertices;
+		int i = triangleCount * 9;
+		v[i] = x1; v[i + 1] = y1; v[i + 2] = z1;
+		v[i + 3] = x2; v[i + 4] = y2; v[i + 5] = z2;
+		v[i + 6] = x3; v[i + 7] = y3; v[i + 8] = z3;
+		triangleColors[triangleCount] = rgb;
+		triangleCount++;
+	}
+
+	/**
+	 * Fills every queued triangle into the frame buffer.
+	 * The triangles are binned into the tiles they overlap and the tiles are then filled in parallel.
+	 */
+	public void flush() {
+		binTriangles();
+
+		int numTiles = tilesX * tilesY;
+		if (pool == null) {
+			fillTiles(0, numTiles);
+		} else {
+			pool.invoke(new TileTask(0, numTiles));
+		}
+
+		triangleCount = 0;
+		clearPending = false;
+	}
+
+	/**
+	 * Adds every queued triangle to the bin of each tile its bounding box overlaps
+	 */
+	private void binTriangles() {
+		Arrays.fill(tileBinSizes, 0);
+		float[] v = triangleVertices;
+
+		for (int t = 0; t < triangleCount; t++) {
+			int i = t * 9;
+			float minX = Math.min(v[i], Math.min(v[i + 3], v[i + 6]));
+			float maxX = Math.max(v[i], Math.max(v[i + 3], v[i + 6]));
+			float minY = Math.min(v[i + 1], Math.min(v[i + 4], v[i + 7]));
+			float maxY = Math.max(v[i + 1], Math.max(v[i + 4], v[i + 7]));
+
+			/** Skips triangles that are off screen. The negated test also throws out NaN */
+			if (!(maxX >= 0 && maxY >= 0 && minX < width && minY < height)) continue;
+
+			int tx0 = Math.max(0, (int) minX / TILE_SIZE);
+			int tx1 = Math.min(tilesX - 1, (int) maxX / TILE_SIZE);
+			int ty0 = Math.max(0, (int) minY / TILE_SIZE);
+			int ty1 = Math.min(tilesY - 1, (int) maxY / TILE_SIZE);
+
+			for (int ty = ty0; ty <= ty1; ty++) {
+				for (int tx = tx0; tx <= tx1; tx++) {
+					int tile = ty * tilesX + tx;
+					int size = tileBinSizes[tile];
+					if (size == tileBins[tile].length) {
+						tileBins[tile] = Arrays.copyOf(tileBins[tile], size * 2);
+					}
+					tileBins[tile][size] = t;
+					tileBinSizes[tile] = size + 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Clears (if needed) and fills a range of tiles
+	 * @param first The first tile
+	 * @param last One past the last tile
+	 */
+	private void fillTiles(int first, int last) {
+		float[] v = triangleVertices;
+
+		for (int tile = first; tile < last; tile++) {
+			int minX = (tile % tilesX) * TILE_SIZE;
+			int minY = (tile / tilesX) * TILE_SIZE;
+			int maxX = Math.min(minX + TILE_SIZE, width);
+			int maxY = Math.min(minY + TILE_SIZE, height);
+
+			if (clearPending) {
+				for (int y = minY; y < maxY; y++) {
+					Arrays.fill(colorBuffer, y * width + minX, y * width + maxX, clearColor);
+					Arrays.fill(depthBuffer, y * width + minX, y * width + maxX, Float.POSITIVE_INFINITY);
+				}
+			}
+
+			int[] bin = tileBins[tile];
+			for (int j = 0; j < tileBinSizes[tile]; j++) {
+				int t = bin[j];
+				int i = t * 9;
+				fillTriangle(v[i], v[i + 1], v[i + 2], v[i + 3], v[i + 4], v[i + 5],
+						v[i + 6], v[i + 7], v[i + 8], triangleColors[t], minX, minY, maxX, maxY);
+			}
+		}
+	}
+
+	/**
+	 * Fork/Join task that splits a range of tiles in half until it is small enough to fill directly
+	 */
+	private class TileTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private int first, last;
+
+		TileTask(int first, int last) {
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if (last - first <= TILES_PER_TASK) {
+				fillTiles(first, last);
+			} else {
+				int middle = (first + last) >>> 1;
+				invokeAll(new TileTask(first, middle), new TileTask(middle, last));
+			}
+		}
+	}
+
+	/**
+	 * Fills a screen space triangle, only touching pixels inside the given rectangle.
+	 * Uses edge functions sampled at pixel centers with a top-left fill rule so triangles
+	 * that share an edge never draw the same pixel twice.
+	 * @param minX Left edge of the rectangle (inclusive)
+	 * @param minY Top edge of the rectangle (inclusive)
+	 * @param maxX Right edge of the rectangle (exclusive)
+	 * @param maxY Bottom edge of the rectangle (exclusive)
+	 */
+	private void fillTriangle(float x1, float y1, float z1, float x2, float y2, float z2,
+			float x3, float y3, float z3, int rgb, int minX, int minY, int maxX, int maxY) {
+
+		float area = (x2 - x1) * (y3 - y1) - (y2 - y1) * (x3 - x1);
+		if (area == 0 || area != area) return;
+
+		/** Make the winding consistent so the inside of every edge is positive */
+		if (area < 0) {
+			float t;
+			t = x2; x2 = x3; x3 = t;
+			t = y2; y2 = y3; y3 = t;
+			t = z2; z2 = z3; z3 = t;
+			area = -area;
+		}
+
+		/** Bounding box of the triangle, clamped to the rectangle */
+		int startX = Math.max(minX, (int) Math.floor(Math.min(x1, Math.min(x2, x3))));
+		int endX = Math.min(maxX - 1, (int) Math.ceil(Math.max(x1, Math.max(x2, x3))));
+		int startY = Math.max(minY, (int) Math.floor(Math.min(y1, Math.min(y2, y3))));
+		int endY = Math.min(maxY - 1, (int) Math.ceil(Math.max(y1, Math.max(y2, y3))));
+		if (startX > endX || startY > endY) return;
+
+		/** Edge function steps. Edge 1 is opposite vertex 1, and so on */
+		float a1 = y2 - y3, b1 = x3 - x2;
+		float a2 = y3 - y1, b2 = x1 - x3;
+		float a3 = y1 - y2, b3 = x2 - x1;
+
+		/** Top-left fill rule: pixels exactly on a right or bottom edge belong to the neighbor */
+		float bias1 = isTopLeft(a1, b1) ? 0 : -1e-6f;
+		float bias2 = isTopLeft(a2, b2) ? 0 : -1e-6f;
+		float bias3 = isTopLeft(a3, b3) ? 0 : -1e-6f;
+
+		float px = startX + 0.5f;
+		float py = startY + 0.5f;
+		float w1Row = a1 * (px - x2) + b1 * (py - y2) + bias1;
+		float w2Row = a2 * (px - x3) + b2 * (py - y3) + bias2;
+		float w3Row = a3 * (px - x1) + b3 * (py - y1) + bias3;
+
+		/** Depth is affine in screen space, so it can be stepped the same way */
+		float invArea = 1 / area;
+		float dzdx = (z1 * a1 + z2 * a2 + z3 * a3) * invArea;
+		float dzdy = (z1 * b1 + z2 * b2 + z3 * b3) * invArea;
+		float zRow = (z1 * (w1Row - bias1) + z2 * (w2Row - bias2) + z3 * (w3Row - bias3)) * invArea;
+
+		int[] colors = colorBuffer;
+		float[] depths = depthBuffer;
+
+		for (int y = startY; y <= endY; y++) {
+			float w1 = w1Row, w2 = w2Row, w3 = w3Row;
+			float z = zRow;
+			int index = y * width + startX;
+
+			for (int x = startX; x <= endX; x++, index++) {
+				if (w1 >= 0 && w2 >= 0 && w3 >= 0 && z < depths[index]) {
+					depths[index] = z;
+					colors[index] = rgb;
+				}
+				w1 += a1;
+				w2 += a2;
+				w3 += a3;
+				z += dzdx;
+			}
+
+			w1Row += b1;
+			w2Row += b2;
+			w3Row += b3;
+			zRow += dzdy;
+		}
+	}
+
+	/**
+	 * Checks if an edge is a top or left edge once the winding has been made positive
+	 */
+	private static boolean isTopLeft(float a, float b) {
+		return (a > 0) || (a == 0 && b > 0);
+	}
+
+	/**
+	 * Flushes any queued triangles, shows the finished frame on the EZ window
+	 * and switches to the other buffer for the next frame.
+	 * The image is added underneath every other element so lines drawn with EZ stay on top.
+	 */
+	public void present() {
+		flush();
+		EZ.addFrameImage(images[current], width / 2, height / 2);
+
+		current = (current + 1) % images.length;
+		colorBuffer = colorBuffers[current];
+	}
+
+	/**
+	 * Getter for the width of the frame buffer
+	 * @return The width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Getter for the height of the frame buffer
+	 * @return The height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+}
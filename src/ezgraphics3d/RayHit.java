@@ -0,0 +1,80 @@
+package ezgraphics3d;
+
+/**
+ * RayHit Class.
+ * Where a ray cast with SceneBVH.raycast() hit.
+ * @author Ryan Theriot
+ */
+public class RayHit {
+
+	private Renderable renderable;
+	private Mesh mesh;
+	private int triangle = -1;
+	private float distance = Float.POSITIVE_INFINITY;
+	private float x, y, z;
+
+	/**
+	 * Sets the hit
+	 * @param renderable The mesh, instance or node that was hit, null for a miss
+	 * @param mesh The mesh it draws, whose triangle was hit
+	 * @param triangle The triangle in the mesh
+	 * @param distance Distance along the ray in multiples of its direction
+	 * @param x World X of the hit
+	 * @param y World Y of the hit
+	 * @param z World Z of the hit
+	 */
+	public void set(Renderable renderable, Mesh mesh, int triangle, float distance, float x, float y, float z) {
+		this.renderable = renderable;
+		this.mesh = mesh;
+		this.triangle = triangle;
+		this.distance = distance;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	/**
+	 * Checks if the ray hit anything
+	 * @return True if something was hit
+	 */
+	public boolean isHit() {
+		return renderable != null;
+	}
+
+	/**
+	 * Getter for what was hit
+	 * @return The mesh, MeshInstance or Node, or null for a miss
+	 */
+	public Renderable getRenderable() {
+		return renderable;
+	}
+
+	/**
+	 * Getter for the mesh whose triangle was hit. For an instance or a node this is the shared mesh it draws
+	 * @return The mesh, or null for a miss
+	 */
+	public Mesh getMesh() {
+		return mesh;
+	}
+
+	public int getTriangle() {
+		return triangle;
+	}
+
+	public float getDistance() {
+		return distance;
+	}
+
+	public float getX() {
+		return x;
+	}
+
+	public float getY() {
+		return y;
+	}
+
+	public float getZ() {
+		return z;
+	}
+
+}
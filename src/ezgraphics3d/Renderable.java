@@ -0,0 +1,76 @@
+package ezgraphics3d;
+
+import java.awt.Color;
+
+/**
+ * Renderable Interface.
+ * Something the Renderer can draw: the geometry of a Mesh placed in the world by a model matrix, with a color.
+ * A Mesh is its own geometry. A MeshInstance or a Node draws a shared Mesh with its own transform and color.
+ * @author Ryan Theriot
+ */
+public interface Renderable {
+
+	/**
+	 * Returns the mesh whose vertices, triangles and surface normals are drawn
+	 * @return The geometry
+	 */
+	Mesh getGeometry();
+
+	/**
+	 * Returns the model matrix that takes the geometry's vertices to world space
+	 * @return The model matrix. Do not modify it
+	 */
+	Mat4 getModelMatrix();
+
+	/**
+	 * Returns the matrix that takes the geometry's surface normals to world space
+	 * @return The normal matrix. Do not modify it
+	 */
+	Mat4 getNormalMatrix();
+
+	/**
+	 * Returns the axis aligned bounding box in the world
+	 * @return The bounding box. Do not modify it
+	 */
+	BoundingBox getBoundingBox();
+
+	/**
+	 * Returns the bounding sphere in the world
+	 * @return The bounding sphere. Do not modify it
+	 */
+	BoundingSphere getBoundingSphere();
+
+	/**
+	 * Returns a number that changes every time the world bounds change, because the model matrix or
+	 * the geometry changed, so a SceneBVH only has to refit what moved
+	 * @return The version of the world bounds
+	 */
+	int getBoundsVersion();
+
+	/**
+	 * Getter for the color
+	 * @return The color
+	 */
+	Color getColor();
+
+	/**
+	 * Returns the shades of the color from black to full brightness as packed RGB ints
+	 * @return Mesh.SHADES shades. Do not modify them
+	 */
+	int[] getShadeRamp();
+
+	/**
+	 * Returns one shade of the color as a Color
+	 * @param shade The shade, 0 to Mesh.SHADES - 1
+	 * @return The Color of the shade
+	 */
+	Color getShadeColor(int shade);
+
+	/**
+	 * Called by the Renderer every frame the bounding sphere is in view, so things with a LODChain can
+	 * pick the level getGeometry() returns
+	 * @param screenSize How many pixels across the bounding sphere is on the screen
+	 */
+	void selectLevelOfDetail(float screenSize);
+
+}
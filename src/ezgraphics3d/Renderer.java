@@ -2,7 +2,7 @@ package ezgraphics3d;
 
 import java.awt.Color;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.List;
 
 /**
  * Renderer Class.
@@ -15,295 +15,758 @@ public class Renderer {
 	/** Boolean for changing rendering to wire frame mode */
 	private static boolean wireFrame = false;
 
+	/**
+	 * The ways the Renderer orders triangles
+	 * GLOBAL: Every triangle of every mesh goes into one depth sort
+	 * HIERARCHICAL: Meshes are ordered by the depth of their bounding spheres first. Only meshes whose
+	 *               depth ranges overlap have their triangles sorted together, every other mesh is sorted
+	 *               on its own and drawn as a block. Many small props become many tiny sorts
+	 */
+	public enum SortMode { GLOBAL, HIERARCHICAL }
+
+	/**
+	 * The ways the Renderer can fill triangles
+	 * EZ_POLYGON: Every triangle is added to EZ as an EZPolygon and filled by Java2D
+	 * SOFTWARE: Triangles are filled into a z-buffered frame buffer that is shown as one image
+	 */
+	public enum Backend { EZ_POLYGON, SOFTWARE }
+
+	private Backend backend;
+	private Rasterizer rasterizer;
+	private int rasterizerThreads = Runtime.getRuntime().availableProcessors();
+
+	/** Ends of the X, Y and Z axis lines */
+	private static final float[] AXIS_POSITIONS = { -1, 0, 0,   1, 0, 0,
+	                                                0, -1, 0,   0, 1, 0,
+	                                                0, 0, -1,   0, 0, 1 };
+
+	/** Buffers reused every frame so the transform stage does not allocate */
+	private VertexTransformer transformer = new VertexTransformer();
+	private Mat4 view = new Mat4();
+	private Mat4 perspective = new Mat4();
+	private Mat4 viewport = new Mat4();
+	private DepthSorter sorter = new DepthSorter();
+	private SortMode sortMode = SortMode.GLOBAL;
+	/** HIERARCHICAL sorters, one per mesh slot. A group of overlapping meshes uses the sorter of its farthest mesh */
+	private ArrayList<DepthSorter> meshSorters = new ArrayList<DepthSorter>();
+	private int parallelSortThreshold = DepthSorter.DEFAULT_PARALLEL_THRESHOLD;
+	private int sortSwaps = 0;
+	private boolean fullSort = false;
+	/** Camera movements bigger than these between frames make the depth sort start over */
+	private static final float TELEPORT_DISTANCE = 2f;
+	private static final float TELEPORT_ANGLE = 15f;
+	private float lastCameraX, lastCameraY, lastCameraZ, lastPitch, lastYaw;
+	private int[] meshVertexStart = new int[0];
+	private int[] meshTriangleStart = new int[0];
+	private int[] triangleMesh = new int[0];
+	private float[] triangleDepth = new float[0];
+	/**
+	 * Meshes with a BSP tree are not sorted. Their triangles come out of the tree already in order
+	 * and are kept together as a block, placed among the sorted triangles by the depth of the mesh's center
+	 */
+	private int[] blockTriangles = new int[0];
+	private int[] blockStart = new int[0];
+	private int[] blockEnd = new int[0];
+	private float[] blockDepth = new float[0];
+	private int numBlocks = 0;
+	private int[] blockOrder = new int[0];
+	/** Triangles that passed culling and need sorting, listed mesh by mesh */
+	private int[] candidates = new int[0];
+	private int[] meshCandidateStart = new int[0];
+	private int[] meshCandidateEnd = new int[0];
+	/** The block of each mesh with a BSP tree, or -1 */
+	private int[] meshBlock = new int[0];
+	/** HIERARCHICAL: the meshes ordered by their far depth, their depth ranges, and the triangles of the group being sorted */
+	private int[] meshOrder = new int[0];
+	private float[] meshNear = new float[0];
+	private float[] meshFar = new float[0];
+	private int[] groupTriangles = new int[0];
+	/** Every triangle to draw this frame, farthest first */
+	private int[] drawOrder = new int[0];
+	private int drawCount = 0;
+	private float[] clip = new float[0];
+	private float[] screen = new float[0];
+	private int[] outcodes = new int[0];
+	private Clipper clipper = new Clipper();
+	private float[] trianglePolygon = new float[9];
+	private Mat4 modelView = new Mat4();
+	private float[] eye = new float[4];
+	private int culledTriangles = 0;
+	/** Meshes that passed the frustum test this frame */
+	private boolean[] meshVisible = new boolean[0];
+	private int visibleMeshes = 0;
+	private int culledMeshes = 0;
+	/** Meshes, instances or nodes a SceneBVH found in the view frustum */
+	private ArrayList<Renderable> frustumMeshes = new ArrayList<Renderable>();
+	/** Nodes of a Scene found in the view frustum */
+	private ArrayList<Renderable> sceneNodes = new ArrayList<Renderable>();
+
+	/** Direction the light comes from, and the same direction normalized once per frame */
+	private float lightX = 1, lightY = 1, lightZ = 0;
+	private float lightDirX, lightDirY, lightDirZ;
+	/** Brightness of triangles facing away from the light */
+	private static final float MIN_LIGHT = 0.01f;
+	private float[] axisClip = new float[AXIS_POSITIONS.length / 3 * 4];
+	private float[] axisScreen = new float[AXIS_POSITIONS.length / 3 * 4];
+	private int[] axisOutcodes = new int[AXIS_POSITIONS.length / 3];
+
+	/**
+	 * Constructor Method
+	 * Uses the EZ_POLYGON backend
+	 */
+	public Renderer() {
+		this(Backend.EZ_POLYGON);
+	}
+
+	/**
+	 * Constructor Method
+	 * @param backend The backend used to fill triangles
+	 */
+	public Renderer(Backend backend) {
+		setBackend(backend);
+	}
+
+	/**
+	 * The Render Method for a scene kept in a SceneBVH
+	 * The tree is refit around whatever moved, and only what it finds in the view frustum is rendered
+	 * @param scene The tree over the meshes, instances or nodes to be rendered
+	 * @param camera The camera of the scene
+	 */
+	public void render(SceneBVH scene, Camera camera) {
+		scene.refit();
+		render(scene.queryFrustum(camera, frustumMeshes), camera);
+	}
+
+	/**
+	 * The Render Method for a Scene
+	 * World matrices are only rebuilt for nodes that moved, and whole subtrees outside the view frustum are skipped
+	 * @param scene The scene to be rendered
+	 * @param camera The camera of the scene
+	 */
+	public void render(Scene scene, Camera camera) {
+		scene.update();
+		render(scene.collect(camera, sceneNodes), camera);
+	}
+
 	/**
 	 * The Render Method
-	 * @param meshList The list of meshes to be rendered
+	 * @param meshList The list of meshes, or instances of shared meshes, to be rendered
 	 * @param camera The camera of the scene
 	 */
-	public void render(ArrayList<Mesh> meshList, Camera camera) {
+	public void render(List<? extends Renderable> meshList, Camera camera) {
+
+		boolean software = (backend == Backend.SOFTWARE);
+		if (software) {
+			rasterizer.clear(Main.backGroundColor.getRGB());
+		}
+
+		/** The view, perspective and viewport matrices, combined once for the whole frame */
+		transformer.setMatrices(camera.getViewMatrix(view), camera.getPerspectiveMatrix(perspective), viewportMatrix(camera, viewport));
+		clipper.setViewport(Main.width, Main.height, camera.getZNear(), camera.getZFar());
+
+		/** The light direction only has to be normalized once per frame */
+		float lightLength = (float) Math.sqrt(lightX * lightX + lightY * lightY + lightZ * lightZ);
+		lightDirX = lightX / lightLength;
+		lightDirY = lightY / lightLength;
+		lightDirZ = lightZ / lightLength;
 
 		/** Draw Axis Lines */
 		if (drawAxis) {
+			transformer.transformHomogeneous(AXIS_POSITIONS, AXIS_POSITIONS.length / 3, axisClip, 0);
+			clipper.project(axisClip, axisScreen, axisOutcodes, 0, AXIS_POSITIONS.length / 3);
+
+			addAxis(0, 4, Color.red);
+			addAxis(8, 12, Color.green);
+			addAxis(16, 20, Color.blue);
+		}
+
+		/**
+		 * 0. FRUSTUM CULLING: Meshes whose bounding sphere or box is completely outside the view
+		 *    are thrown out before any of their vertices or triangles are looked at.
+		 *    Meshes that are in view pick their level of detail from the size of their bounding sphere on the screen.
+		 *    Find where each mesh's vertices and triangles start in the frame's buffers
+		 */
+		float[] frustumPlanes = camera.getFrustumPlanes();
+		float[] v = view.m;
+		float pixelsPerUnit = Math.abs(perspective.m[5]) * Main.height;
+		visibleMeshes = 0;
+		culledMeshes = 0;
+		int numMeshes = meshList.size();
+		if (meshVertexStart.length < numMeshes + 1) {
+			meshVertexStart = new int[numMeshes + 1];
+			meshTriangleStart = new int[numMeshes + 1];
+			meshVisible = new boolean[numMeshes + 1];
+		}
 
-			Vector negXAxis = new Vector(-1, 0, 0);
-			Vector posXAxis = new Vector(1, 0, 0);
-			Vector negYAxis = new Vector(0, -1, 0);
-			Vector posYAxis = new Vector(0, 1, 0);
-			Vector negZAxis = new Vector(0, 0, -1);
-			Vector posZAxis = new Vector(0, 0, 1);
+		int numVertices = 0;
+		int numTriangles = 0;
+		for (int i = 0; i < numMeshes; i++) {
+			Renderable current = meshList.get(i);
+			meshVisible[i] = current.getBoundingSphere().intersectsPlanes(frustumPlanes, 6) &&
+			                 current.getBoundingBox().intersectsPlanes(frustumPlanes, 6);
+			if (meshVisible[i]) {
+				visibleMeshes++;
+
+				/** The sphere's diameter in pixels at the depth of its center. A camera inside the sphere sees it as huge */
+				BoundingSphere sphere = current.getBoundingSphere();
+				float centerW = -(v[8] * sphere.getX() + v[9] * sphere.getY() + v[10] * sphere.getZ() + v[11]);
+				float screenSize = (centerW > sphere.getRadius()) ? sphere.getRadius() * pixelsPerUnit / centerW : Float.POSITIVE_INFINITY;
+				current.selectLevelOfDetail(screenSize);
+			} else {
+				culledMeshes++;
+			}
 
-			addAxis(negXAxis, posXAxis, camera, Color.red);
-			addAxis(negYAxis, posYAxis, camera, Color.green);
-			addAxis(negZAxis, posZAxis, camera, Color.blue);
+			meshVertexStart[i] = numVertices;
+			meshTriangleStart[i] = numTriangles;
+			numVertices += current.getGeometry().getNumVertices();
+			numTriangles += current.getGeometry().getNumTriangles();
 		}
+		meshVertexStart[numMeshes] = numVertices;
+		meshTriangleStart[numMeshes] = numTriangles;
 
-		/** Adding all the triangles in every mesh to an ArrayList */
-		ArrayList<Triangle> triangles = new ArrayList<Triangle>();
+		/**
+		 * 1. TRANSFORM: Model, view, perspective, normalize and viewport in one pass over each mesh's vertex buffer.
+		 *    Shared vertices are only transformed once, and moving a mesh only changes its model matrix.
+		 *    The camera does not move, the world moves around the camera.
+		 *    Things near the camera appear larger, and the result is a location ON THE SCREEN.
+		 *    Each vertex also gets an outcode saying which planes of the view it is outside of
+		 */
+		if (screen.length < numVertices * 4) {
+			screen = new float[numVertices * 4];
+			clip = new float[numVertices * 4];
+			outcodes = new int[numVertices];
+		}
+		if (triangleMesh.length < numTriangles) {
+			triangleMesh = new int[numTriangles];
+			triangleDepth = new float[numTriangles];
+			blockTriangles = new int[numTriangles];
+			drawOrder = new int[numTriangles];
+			candidates = new int[numTriangles];
+			groupTriangles = new int[numTriangles];
+		}
+		if (blockStart.length < numMeshes) {
+			blockStart = new int[numMeshes];
+			blockEnd = new int[numMeshes];
+			blockDepth = new float[numMeshes];
+			blockOrder = new int[numMeshes];
+			meshCandidateStart = new int[numMeshes];
+			meshCandidateEnd = new int[numMeshes];
+			meshBlock = new int[numMeshes];
+			meshOrder = new int[numMeshes];
+			meshNear = new float[numMeshes];
+			meshFar = new float[numMeshes];
+		}
 
-		for (int i = 0; i < meshList.size(); i++) {
-			Mesh currentMesh = meshList.get(i);
-			Color meshColor = currentMesh.getColor();
+		for (int i = 0; i < numMeshes; i++) {
+			if (!meshVisible[i]) continue;
+			Mesh currentMesh = meshList.get(i).getGeometry();
+			transformer.setModelMatrix(meshList.get(i).getModelMatrix());
+			transformer.transformHomogeneous(currentMesh.getPositions(), currentMesh.getNumVertices(), clip, meshVertexStart[i] * 4);
+			clipper.project(clip, screen, outcodes, meshVertexStart[i], currentMesh.getNumVertices());
+		}
 
-			for (int j = 0; j < currentMesh.getNumTriangles(); j++) {
-				currentMesh.getTriangle(j).setDistanceToCamera(camera);
-				currentMesh.getTriangle(j).setColor(meshColor);
-				triangles.add(currentMesh.getTriangle(j));
+		/**
+		 * 2. CULL AND DEPTH SORT: Triangles facing the wrong way for their mesh's cull mode are skipped.
+		 *    Every other triangle gets a key made from its depth, the sum of its vertices' w
+		 *    (same order as their average without the divide), and the keys are sorted so farther triangles are drawn first and closer triangles last.
+		 *    The sort starts from last frame's order unless the camera jumped.
+		 *    Meshes with a BSP tree skip the sort and walk their tree from back to front instead
+		 */
+		Vector cLoc = camera.getCameraLocation();
+		float dX = cLoc.getX() - lastCameraX, dY = cLoc.getY() - lastCameraY, dZ = cLoc.getZ() - lastCameraZ;
+		if (dX * dX + dY * dY + dZ * dZ > TELEPORT_DISTANCE * TELEPORT_DISTANCE ||
+		    Math.abs(camera.getPitch() - lastPitch) > TELEPORT_ANGLE || Math.abs(camera.getYaw() - lastYaw) > TELEPORT_ANGLE) {
+			sorter.invalidate();
+			for (int i = 0; i < meshSorters.size(); i++) {
+				meshSorters.get(i).invalidate();
 			}
 		}
+		lastCameraX = cLoc.getX();
+		lastCameraY = cLoc.getY();
+		lastCameraZ = cLoc.getZ();
+		lastPitch = camera.getPitch();
+		lastYaw = camera.getYaw();
+
+		sorter.clear();
+		culledTriangles = 0;
+		numBlocks = 0;
+		int numBlockTriangles = 0;
+		int numCandidates = 0;
+		boolean global = (sortMode == SortMode.GLOBAL);
+		for (int i = 0; i < numMeshes; i++) {
+			meshCandidateStart[i] = meshCandidateEnd[i] = numCandidates;
+			meshBlock[i] = -1;
+			if (!meshVisible[i]) continue;
+			Renderable current = meshList.get(i);
+			Mesh currentMesh = current.getGeometry();
+			float[] positions = currentMesh.getPositions();
+			float[] normals = currentMesh.getNormals();
+			int[] indices = currentMesh.getIndices();
+			int base = meshVertexStart[i];
+			int first = meshTriangleStart[i];
+			int last = meshTriangleStart[i + 1];
+
+			/**
+			 * BACKFACE CULLING: The camera is moved into the mesh's model space once, so each triangle
+			 * only needs the dot product of its surface normal with the vector from the camera to it
+			 */
+			Mesh.CullMode cullMode = currentMesh.getCullMode();
+			BSPTree tree = currentMesh.getBSPTree();
+			float eyeX = 0, eyeY = 0, eyeZ = 0;
+			if (cullMode != Mesh.CullMode.NONE || tree != null) {
+				if (view.mulInto(current.getModelMatrix(), modelView).inverse(modelView)) {
+					modelView.transformPoint(0, 0, 0, eye, 0);
+					eyeX = eye[0];
+					eyeY = eye[1];
+					eyeZ = eye[2];
+				} else {
+					cullMode = Mesh.CullMode.NONE;
+					tree = null;
+				}
+			}
+
+			int[] treeOrder = null;
+			if (tree != null) {
+				tree.traverse(eyeX, eyeY, eyeZ);
+				treeOrder = tree.getOrder();
+
+				BoundingSphere sphere = current.getBoundingSphere();
+				float centerW = -(v[8] * sphere.getX() + v[9] * sphere.getY() + v[10] * sphere.getZ() + v[11]);
+				blockStart[numBlocks] = numBlockTriangles;
+				blockDepth[numBlocks] = centerW * 3;
+				meshBlock[i] = numBlocks;
+			}
+
+			for (int k = first; k < last; k++) {
+				int t = (treeOrder != null) ? first + treeOrder[k - first] : k;
+				int corner = (t - first) * 3;
+				int a = indices[corner];
+				int b = indices[corner + 1];
+				int c = indices[corner + 2];
+
+				if (cullMode != Mesh.CullMode.NONE) {
+					float facing = normals[corner] * (eyeX - positions[a * 3]) +
+					               normals[corner + 1] * (eyeY - positions[a * 3 + 1]) +
+					               normals[corner + 2] * (eyeZ - positions[a * 3 + 2]);
+					if ((cullMode == Mesh.CullMode.BACK) ? facing <= 0 : facing > 0) {
+						culledTriangles++;
+						continue;
+					}
+				}
 
-		/** Sorts triangles by distance from camera so closer triangles are drawn last */
-		Comparator<Triangle> comp = new Triangle.TriangleDistanceToCameraComparator();
-		triangles.sort(comp);
+				triangleMesh[t] = i;
+				if (treeOrder != null) {
+					blockTriangles[numBlockTriangles++] = t;
+				} else {
+					float depth = screen[(base + a) * 4 + 3] + screen[(base + b) * 4 + 3] + screen[(base + c) * 4 + 3];
+					triangleDepth[t] = depth;
+					candidates[numCandidates++] = t;
+					if (global) sorter.add(t, depth);
+				}
+			}
+			meshCandidateEnd[i] = numCandidates;
+			if (treeOrder != null) {
+				blockEnd[numBlocks++] = numBlockTriangles;
+			}
+		}
 
-		/** The Matrices that will be used */
-		float[][] viewMatrix = viewMatrix(camera);
-		float[][] perspectiveMatrix = perspectiveMatrix(camera);
-		float[][] viewport = viewportMatrix(camera);
+		drawCount = 0;
+		if (global) {
+			sorter.sort();
+			sortSwaps = sorter.getSwaps();
+			fullSort = sorter.wasFullSort();
+			for (int b = 0; b < numBlocks; b++) {
+				blockOrder[b] = b;
+			}
+			mergeBlocks(sorter, null, 0, numBlocks);
+		} else {
+			sortHierarchical(meshList, v);
+		}
 		
 		/**
 		 * MAIN RENDERING LOOP
-		 * Loops through every triangle in the triangle list
+		 * Loops through every triangle that was not culled, in the sorted order
 		 */
-		for (int i = 0; i < triangles.size(); i++) {
+		for (int i = 0; i < drawCount; i++) {
 
-			/** 1. VECTORS: Grab each vector from the triangle */
-			float[][] v1 = triangles.get(i).getV1().getVectorMatrix();
-			float[][] v2 = triangles.get(i).getV2().getVectorMatrix();
-			float[][] v3 = triangles.get(i).getV3().getVectorMatrix();
+			/** 3. VECTORS: Look up where each of the triangle's vertices was transformed to */
+			int id = drawOrder[i];
+			int slot = triangleMesh[id];
+			Renderable drawable = meshList.get(slot);
+			Mesh mesh = drawable.getGeometry();
+			int[] indices = mesh.getIndices();
+			int base = meshVertexStart[slot];
+			int corner = (id - meshTriangleStart[slot]) * 3;
 
-			/**
-			 * 2. VIEW MATRIX: Move the vector in relation to the camera position 
-			 *    The camera does not move, the world moves around the camera
-			 */
-			v1 = Matrix.matrixMultiply(viewMatrix, v1);
-			v2 = Matrix.matrixMultiply(viewMatrix, v2);
-			v3 = Matrix.matrixMultiply(viewMatrix, v3);
+			int a = base + indices[corner];
+			int b = base + indices[corner + 1];
+			int c = base + indices[corner + 2];
 
 			/**
-			 * 3. PERSPECTIVE MATRIX: Applies a perspective view to the vector. 
-			 *    Things near the camera appear larger. Also sets up the clipping area
+			 *  4. CLIPPING: Triangles with every vertex outside the same frustum plane are thrown out.
+			 *    Triangles crossing the near plane, or going past the guard band, are clipped into a polygon.
+			 *    Everything else is drawn as it is.
 			 */
-			v1 = Matrix.matrixMultiply(perspectiveMatrix, v1);
-			v2 = Matrix.matrixMultiply(perspectiveMatrix, v2);
-			v3 = Matrix.matrixMultiply(perspectiveMatrix, v3);
+			int codeA = outcodes[a], codeB = outcodes[b], codeC = outcodes[c];
+			if ((codeA & codeB & codeC & Clipper.OUT_FRUSTUM) != 0) continue;
+
+			float[] polygon;
+			int polygonSize;
+			int codes = codeA | codeB | codeC;
+			if ((codes & Clipper.OUT_CLIP) != 0) {
+				polygonSize = clipper.clipTriangle(clip, a * 4, b * 4, c * 4, codes);
+				if (polygonSize < 3) continue;
+				polygon = clipper.getVertices();
+			} else {
+				polygon = trianglePolygon;
+				polygonSize = 3;
+				System.arraycopy(screen, a * 4, polygon, 0, 3);
+				System.arraycopy(screen, b * 4, polygon, 3, 3);
+				System.arraycopy(screen, c * 4, polygon, 6, 3);
+			}
 
-			/** 4. NORMALIZE: The vector is normalized so we can decide if to clip it or not */
-			v1 = normalize(v1);
-			v2 = normalize(v2);
-			v3 = normalize(v3);
+			/**Color of Triangle**/
+			Color color = drawable.getColor();
 
 			/**
-			 *  5. CLIPPING: Check to see if the triangle should be clipped(not rendered). 
-			 *    All the vertices need to be out of view for this to fail.
+			 * 5. SCREEN LOCATION : The X,Y of every vertex of the polygon. 
+			 *    These correspond to a pixel location on the screen 
+			 *  6. Drawing Time
 			 */
-			
-			//Vector cameraLook =  new Vector (viewMatrix[2][0], viewMatrix[2][1], viewMatrix[2][2]);
-			//float cullValue = backfaceCull(triangles.get(i).getSurfaceNormal(), cameraLook);
-			
-			if ( 1 >= 0) {
+			if (wireFrame) {
+				for (int p = 0, q = polygonSize - 1; p < polygonSize; q = p++) {
+					EZ.addLine((int) polygon[q * 3], (int) polygon[q * 3 + 1], (int) polygon[p * 3], (int) polygon[p * 3 + 1], color, 1);
+				}
+
+			} else {
 				
-				if (!clip(v1) || !clip(v2) || !clip(v3)  ) {
-
-				/** 6. VIEWPORT MATRIX: Calculates the location ON THE SCREEN that the triangles are located */
-				v1 = Matrix.matrixMultiply(viewport, v1);
-				v2 = Matrix.matrixMultiply(viewport, v2);
-				v3 = Matrix.matrixMultiply(viewport, v3);
-
-				/**
-				 * 7. SCREEN LOCATION : Grab the X,Y from the final calculated matrix. 
-				 *    These correspond to a pixel location on the screen 
-				 */
-				int v1X = (int) v1[0][0];
-				int v1Y = (int) v1[1][0];
-				int v2X = (int) v2[0][0];
-				int v2Y = (int) v2[1][0];
-				int v3X = (int) v3[0][0];
-				int v3Y = (int) v3[1][0];
-
-			    
-				/**Color of Triangle**/
-				Color color = triangles.get(i).getColor();
-
-				/** 8. Drawing Time */
-				if (wireFrame) {
-					EZ.addLine(v1X, v1Y, v2X, v2Y, color, 1);
-					EZ.addLine(v2X, v2Y, v3X, v3Y, color, 1);
-					EZ.addLine(v3X, v3Y, v1X, v1Y, color, 1);
+				/** SHADING: How much the triangle faces the light picks a shade from the mesh's shade ramp */
+				float lightValue;
+				if (drawable == mesh) {
+					float[] worldNormals = mesh.getWorldNormals();
+					lightValue = worldNormals[corner] * lightDirX + worldNormals[corner + 1] * lightDirY + worldNormals[corner + 2] * lightDirZ;
+				} else {
+					/** Instances share their mesh's model normals, so each one is moved into the world as it is drawn */
+					float[] n = mesh.getNormals();
+					float[] m = drawable.getNormalMatrix().m;
+					float x = m[0] * n[corner] + m[1] * n[corner + 1] + m[2] * n[corner + 2];
+					float y = m[4] * n[corner] + m[5] * n[corner + 1] + m[6] * n[corner + 2];
+					float z = m[8] * n[corner] + m[9] * n[corner + 1] + m[10] * n[corner + 2];
+					lightValue = (x * lightDirX + y * lightDirY + z * lightDirZ) / (float) Math.sqrt(x * x + y * y + z * z);
+				}
 
+				if (!(lightValue >= 0)) lightValue = MIN_LIGHT;
+				int shade = Math.min(Mesh.SHADES - 1, (int) (lightValue * (Mesh.SHADES - 1) + 0.5f));
+				
+				if (software) {
+					/** Clipped polygons are convex, so they are filled as a fan of triangles */
+					for (int p = 2; p < polygonSize; p++) {
+						rasterizer.fillTriangle(polygon[0], polygon[1], polygon[2],
+								                polygon[(p - 1) * 3], polygon[(p - 1) * 3 + 1], polygon[(p - 1) * 3 + 2],
+								                polygon[p * 3], polygon[p * 3 + 1], polygon[p * 3 + 2], drawable.getShadeRamp()[shade]);
+					}
 				} else {
-					
-					//LightValue
-					Vector light = new Vector(1, 1, 0);
-					float lightValue = backfaceCull(triangles.get(i).getSurfaceNormal().getNormal(), light.getNormal());
-					
-					//Color Values
-					float[] hsbvals = new float[3];
-					Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), hsbvals);
-					
-					if (lightValue >= 0)
-						color = Color.getHSBColor(hsbvals[0], hsbvals[1], lightValue); 
-					else 
-						color = Color.getHSBColor(hsbvals[0], hsbvals[1], 0.01f);
-					
 					//Add Polyon
-					int[] xp = { v1X, v2X, v3X };
-					int[] yp = { v1Y, v2Y, v3Y };
-					EZ.addPolygon(xp, yp, color, true);
-
+					int[] xp = new int[polygonSize];
+					int[] yp = new int[polygonSize];
+					for (int p = 0; p < polygonSize; p++) {
+						xp[p] = (int) polygon[p * 3];
+						yp[p] = (int) polygon[p * 3 + 1];
+					}
+					EZ.addPolygon(xp, yp, drawable.getShadeColor(shade), true);
 				}
+
 			}
 		}
+
+		/** 7. Show the frame buffer when using the software backend */
+		if (software) {
+			rasterizer.present();
 		}
 	}
 
 	/**
-	 * Normalize the x, y ,z coordinates with w
-	 * @param vector The Vector to be normalized
-	 * @return The normalized vectors in an array[][]
+	 * HIERARCHICAL: Orders the meshes by the far end of their depth range, then walks them in groups.
+	 * A group grows while the next mesh starts before the closest point of the group so far,
+	 * so meshes that can not cover each other end up in different groups and are never sorted together
+	 * @param meshList The meshes being rendered
+	 * @param v The view matrix
 	 */
-	private float[][] normalize(float[][] vector) {
-		
-		float xp = vector[0][0];
-		float yp = vector[1][0];
-		float zp = vector[2][0];
-		float wp = vector[3][0];
+	private void sortHierarchical(List<? extends Renderable> meshList, float[] v) {
+		int numMeshes = meshList.size();
+		while (meshSorters.size() < numMeshes) {
+			DepthSorter meshSorter = new DepthSorter();
+			meshSorter.setParallelThreshold(parallelSortThreshold);
+			meshSorters.add(meshSorter);
+		}
+		sortSwaps = 0;
+		fullSort = false;
+
+		/** Depth ranges in the same units as the triangle depths, the sum of three w's */
+		int count = 0;
+		for (int i = 0; i < numMeshes; i++) {
+			if (meshCandidateEnd[i] == meshCandidateStart[i] && (meshBlock[i] < 0 || blockEnd[meshBlock[i]] == blockStart[meshBlock[i]])) continue;
+
+			BoundingSphere sphere = meshList.get(i).getBoundingSphere();
+			float centerW = -(v[8] * sphere.getX() + v[9] * sphere.getY() + v[10] * sphere.getZ() + v[11]);
+			meshNear[i] = (centerW - sphere.getRadius()) * 3;
+			meshFar[i] = (centerW + sphere.getRadius()) * 3;
+
+			/** The order barely changes between frames, so an insertion sort is close to linear */
+			int j = count - 1;
+			for (; j >= 0 && meshFar[meshOrder[j]] < meshFar[i]; j--) {
+				meshOrder[j + 1] = meshOrder[j];
+			}
+			meshOrder[j + 1] = i;
+			count++;
+		}
+
+		for (int first = 0; first < count; ) {
+			int last = first + 1;
+			float groupNear = meshNear[meshOrder[first]];
+			while (last < count && meshFar[meshOrder[last]] > groupNear) {
+				groupNear = Math.min(groupNear, meshNear[meshOrder[last]]);
+				last++;
+			}
 
-		float[][] normalizedMatrix = { { xp / wp }, 
-				                       { yp / wp }, 
-				                       { zp / wp }, 
-				                       { wp / wp } };
+			/**
+			 * Each triangle is added by its position in the group, counting every triangle of the meshes
+			 * before it, so it keeps the same index from frame to frame while the group stays the same
+			 */
+			DepthSorter groupSorter = meshSorters.get(meshOrder[first]);
+			groupSorter.clear();
+			int numGroupBlocks = 0;
+			int offset = 0;
+			for (int k = first; k < last; k++) {
+				int slot = meshOrder[k];
+				if (meshBlock[slot] >= 0) {
+					int block = meshBlock[slot];
+					int j = numGroupBlocks - 1;
+					for (; j >= 0 && blockDepth[blockOrder[j]] < blockDepth[block]; j--) {
+						blockOrder[j + 1] = blockOrder[j];
+					}
+					blockOrder[j + 1] = block;
+					numGroupBlocks++;
+					continue;
+				}
 
-		return normalizedMatrix;
+				int meshStart = meshTriangleStart[slot];
+				for (int c = meshCandidateStart[slot]; c < meshCandidateEnd[slot]; c++) {
+					int t = candidates[c];
+					int index = offset + t - meshStart;
+					groupTriangles[index] = t;
+					groupSorter.add(index, triangleDepth[t]);
+				}
+				offset += meshList.get(slot).getGeometry().getNumTriangles();
+			}
+			groupSorter.sort();
+			sortSwaps += groupSorter.getSwaps();
+			fullSort |= groupSorter.wasFullSort();
+
+			mergeBlocks(groupSorter, groupTriangles, 0, numGroupBlocks);
+			first = last;
+		}
 	}
-	
+
+	/**
+	 * Adds sorted triangles and BSP blocks to the draw order, farthest first.
+	 * Each block goes in front of the first sorted triangle that is farther away than its center
+	 * @param sorted The sorted triangles
+	 * @param triangles What the sorter's indices stand for, or null if they are the triangles themselves
+	 * @param first The first block in blockOrder
+	 * @param last The end of the blocks in blockOrder
+	 */
+	private void mergeBlocks(DepthSorter sorted, int[] triangles, int first, int last) {
+		/** Sort the blocks by depth, farthest first. There are only a few, so insertion sort is enough */
+		for (int i = first + 1; i < last; i++) {
+			int block = blockOrder[i];
+			int j = i - 1;
+			for (; j >= first && blockDepth[blockOrder[j]] < blockDepth[block]; j--) {
+				blockOrder[j + 1] = blockOrder[j];
+			}
+			blockOrder[j + 1] = block;
+		}
+
+		int next = first;
+		for (int i = 0; i < sorted.size(); i++) {
+			int id = sorted.getIndex(i);
+			if (triangles != null) id = triangles[id];
+			while (next < last && blockDepth[blockOrder[next]] >= triangleDepth[id]) {
+				addBlock(blockOrder[next++]);
+			}
+			drawOrder[drawCount++] = id;
+		}
+		while (next < last) {
+			addBlock(blockOrder[next++]);
+		}
+	}
+
+	private void addBlock(int block) {
+		int count = blockEnd[block] - blockStart[block];
+		System.arraycopy(blockTriangles, blockStart[block], drawOrder, drawCount, count);
+		drawCount += count;
+	}
+
 	/**
-	 * Perspective Matrix
-	 * @param camera Camera to obtain the FOV, zNear, and zFar
-	 * @return Calculated Perspective Matrix
+	 * Viewport Matrix
+	 * @param camera Camera to obtain zNear and zFar
+	 * @param matrix The matrix to write to
+	 * @return The Calculated Viewport Matrix (matrix)
 	 */
-	private float[][] perspectiveMatrix (Camera camera) {
+	private Mat4 viewportMatrix (Camera camera, Mat4 matrix) {
 		
-		int FOV = camera.getFOV();
 		float zNear = camera.getZNear();
 		float zFar = camera.getZFar();
 		
-		float tanHalfFOV = (float) Math.tan(Math.toRadians(FOV / 2));
+		return matrix.set(Main.width / 2, 0, 0, Main.width / 2, 
+				          0, -Main.height / 2, 0, Main.height / 2,
+				          0, 0, zFar - zNear, zNear, 
+				          0, 0, 0, 1);
+	}
+	
+	/**
+	 * Just a Temporary Method to draw the axis lines
+	 * @param v1 Offset of the first end of the axis in the transformed axis buffers
+	 * @param v2 Offset of the second end of the axis in the transformed axis buffers
+	 * @param color Color of the axis
+	 */
+	private void addAxis(int v1, int v2, Color color) {
+
+		if ((axisOutcodes[v1 / 4] & axisOutcodes[v2 / 4] & Clipper.OUT_FRUSTUM) == 0 && clipper.clipLine(axisClip, v1, v2)) {
+			
+			float[] line = clipper.getVertices();
+			int v1X = (int) line[0];
+			int v1Y = (int) line[1];
 
-		float[][] matrix = { { 1 / tanHalfFOV, 0, 0, 0 }, 
-				             { 0, 1 / tanHalfFOV, 0, 0 },
-				             { 0, 0, -((zFar) / (zFar - zNear)), -( zFar * zNear) / (zFar - zNear) }, 
-				             { 0, 0, -1.0f, 0 } };
+			int v2X = (int) line[3];
+			int v2Y = (int) line[4];
 
-		return matrix;
+			EZ.addLine(v1X, v1Y, v1X, v1Y, color, 1);
+			EZ.addLine(v2X, v2Y, v1X, v1Y, color, 1);
+			
+		}
 	}
 	
 	/**
-	 * The View Matrix
-	 * @return The View Matrix
+	 * Sets the direction the light comes from. It does not need to be normalized
+	 * @param x The X component of the direction
+	 * @param y The Y component of the direction
+	 * @param z The Z component of the direction
 	 */
-	private float[][] viewMatrix(Camera camera)
-	{
-		Vector cLOC = camera.getCameraLocation();
-		float pitch = camera.getPitch();
-		float yaw = camera.getYaw();
-		
-		float cosPitch = (float) Math.cos(Math.toRadians(pitch));
-	    float sinPitch = (float) Math.sin(Math.toRadians(pitch));
-	    float cosYaw = (float) Math.cos(Math.toRadians(yaw));
-	    float sinYaw = (float) Math.sin(Math.toRadians(yaw));
-	 
-	    float[] xaxis = {            cosYaw,         0,           -sinYaw };
-	    float[] yaxis = { sinYaw * sinPitch,  cosPitch, cosYaw * sinPitch };
-	    float[] zaxis = { sinYaw * cosPitch, -sinPitch, cosPitch * cosYaw };
-	    
-	    float dotX = (xaxis[0] * -cLOC.getX()) + (xaxis[1] * -cLOC.getY()) + (xaxis[2] * -cLOC.getZ()) ;
-	    float dotY = (yaxis[0] * -cLOC.getX()) + (yaxis[1] * -cLOC.getY()) + (yaxis[2] * -cLOC.getZ()) ;
-	    float dotZ = (zaxis[0] * -cLOC.getX()) + (zaxis[1] * -cLOC.getY()) + (zaxis[2] * -cLOC.getZ()) ;
-	 
-	    float [][] viewMatrix = new float[][] {{xaxis[0], xaxis[1], xaxis[2], -dotX},
-                                               {yaxis[0], yaxis[1], yaxis[2], -dotY},
-                                               {zaxis[0], zaxis[1], zaxis[2], -dotZ},
-                                               {       0,        0,        0,      1}};
-                                               
-	    return viewMatrix;
-	    
+	public void setLightDirection(float x, float y, float z) {
+		this.lightX = x;
+		this.lightY = y;
+		this.lightZ = z;
 	}
-	
-	
+
 	/**
-	 * Viewport Matrix
-	 * @param camera Camera to obtain zNear and zFar
-	 * @return Calculated Viewport Matrix
+	 * Sets the backend used to fill triangles
+	 * The software frame buffer is created the first time it is needed
+	 * @param backend The backend to use
 	 */
-	private float[][] viewportMatrix (Camera camera) {
-		
-		float zNear = camera.getZNear();
-		float zFar = camera.getZFar();
-		
-		float[][] matrix = { { Main.width / 2, 0, 0, Main.width / 2 }, 
-				             { 0, -Main.height / 2, 0, Main.height / 2 },
-				             { 0, 0, zFar - zNear, zNear }, 
-				             { 0, 0, 0, 1 } };
+	public void setBackend(Backend backend) {
+		this.backend = backend;
+		if (backend == Backend.SOFTWARE && rasterizer == null) {
+			rasterizer = new Rasterizer(Main.width, Main.height, rasterizerThreads);
+		}
+	}
+
+	/**
+	 * Sets the number of threads the software backend uses to fill screen tiles
+	 * @param threads Number of threads. 1 fills every tile on the rendering thread
+	 */
+	public void setRasterizerThreads(int threads) {
+		this.rasterizerThreads = Math.max(1, threads);
+		if (rasterizer != null) {
+			rasterizer.setThreads(rasterizerThreads);
+		}
+	}
 
-		return matrix;
+	/**
+	 * Getter for the number of threads the software backend uses to fill screen tiles
+	 * @return The number of threads
+	 */
+	public int getRasterizerThreads() {
+		return rasterizerThreads;
 	}
-	
-	private float backfaceCull(Vector sN, Vector cN) {
-		
-	    float dot = ((sN.getX() * cN.getX()) + (sN.getY() * cN.getY()) + (sN.getZ() * cN.getZ()));
-	    
-		return dot;
+
+	/**
+	 * Sets how many triangles there need to be before the depth sort uses Arrays.parallelSort
+	 * instead of its single threaded radix sort
+	 * @param threshold Number of triangles. Integer.MAX_VALUE always uses the radix sort
+	 */
+	public void setParallelSortThreshold(int threshold) {
+		parallelSortThreshold = threshold;
+		sorter.setParallelThreshold(threshold);
+		for (int i = 0; i < meshSorters.size(); i++) {
+			meshSorters.get(i).setParallelThreshold(threshold);
+		}
 	}
-	
+
 	/**
-	 * Clipping method to see if the normalized vector is within the perspective frustum
-	 * @param vertex The vertex to check
-	 * @return True if outside frustum. False if inside frustum
+	 * Sets how the Renderer orders triangles
+	 * @param sortMode GLOBAL for one sort over every triangle, HIERARCHICAL to order meshes first
 	 */
-	private boolean clip(float[][] normalizedVertex) {
-		
-		float x = normalizedVertex[0][0];
-		float y = normalizedVertex[1][0];
-		float z = normalizedVertex[2][0];
-		
-		boolean clip = false;
-		
-		 if ((x <= -1 || x >= 1) || (y <= -1 || y >= 1) || (z <= -1 || z >= 1)) {
-			 clip = true;
-		 }
-		 
-		return clip;
+	public void setSortMode(SortMode sortMode) {
+		this.sortMode = sortMode;
 	}
 
 	/**
-	 * Just a Temporary Method to draw the axis lines
+	 * Getter for how the Renderer orders triangles
+	 * @return The sort mode
 	 */
-	private void addAxis(Vector v1, Vector v2, Camera camera, Color color) {
+	public SortMode getSortMode() {
+		return sortMode;
+	}
 
-		float[][] v1C = Matrix.matrixMultiply(viewMatrix(camera), v1.getVectorMatrix());
-		v1C = Matrix.matrixMultiply(perspectiveMatrix(camera), v1C);
-		v1C = normalize(v1C);
+	/**
+	 * Getter for the number of triangles skipped by backface culling in the last frame
+	 * @return The number of culled triangles
+	 */
+	public int getCulledTriangles() {
+		return culledTriangles;
+	}
 
-		float[][] v2C = Matrix.matrixMultiply(viewMatrix(camera), v2.getVectorMatrix());
-		v2C = Matrix.matrixMultiply(perspectiveMatrix(camera), v2C);
-		v2C = normalize(v2C);
+	/**
+	 * Getter for the number of meshes that were inside the view frustum in the last frame
+	 * @return The number of visible meshes
+	 */
+	public int getVisibleMeshes() {
+		return visibleMeshes;
+	}
 
-		if (!clip(v1C) || !clip(v2C)) {
-			
-			float[][] viewM1 = Matrix.matrixMultiply(viewportMatrix(camera), v1C);
-			int v1X = (int) viewM1[0][0];
-			int v1Y = (int) viewM1[1][0];
+	/**
+	 * Getter for the number of meshes thrown out by frustum culling in the last frame
+	 * @return The number of culled meshes
+	 */
+	public int getCulledMeshes() {
+		return culledMeshes;
+	}
 
-			float[][] viewM2 = Matrix.matrixMultiply(viewportMatrix(camera), v2C);
-			int v2X = (int) viewM2[0][0];
-			int v2Y = (int) viewM2[1][0];
+	/**
+	 * Getter for the number of swaps the depth sort needed to repair last frame's order
+	 * @return The number of swaps in the last frame
+	 */
+	public int getSortSwaps() {
+		return sortSwaps;
+	}
 
-			EZ.addLine(v1X, v1Y, v1X, v1Y, color, 1);
-			EZ.addLine(v2X, v2Y, v1X, v1Y, color, 1);
-			
-		}
+	/**
+	 * Checks if the last frame's depth sort started over instead of repairing the previous order
+	 * @return True if the last frame used a full sort
+	 */
+	public boolean wasFullSort() {
+		return fullSort;
 	}
-	
+
+	/**
+	 * Getter for the backend used to fill triangles
+	 * @return The backend
+	 */
+	public Backend getBackend() {
+		return backend;
+	}
+
 	/**
 	 * Toggle Wire Frame Mode
 	 */
@@ -0,0 +1,88 @@
+package ezgraphics3d;
+
+import java.util.ArrayList;
+
+/**
+ * Scene Class.
+ * A tree of Nodes under one root node, passed to Renderer.render(Scene, Camera) instead of a list of meshes.
+ * Every frame the Renderer calls update(), which only rebuilds the world matrices and bounds of nodes
+ * that moved or are under a node that moved, and then collect(), which skips every subtree whose
+ * bounding box is outside the view frustum without looking at the nodes inside it.
+ * @author Ryan Theriot
+ */
+public class Scene {
+
+	private Node root = new Node();
+	private int culledNodes = 0;
+
+	/**
+	 * Adds a node under the root
+	 * @param node The node to add
+	 * @return The node
+	 */
+	public Node add(Node node) {
+		return root.addChild(node);
+	}
+
+	/**
+	 * Removes a node from under the root
+	 * @param node The node to remove
+	 * @return True if the node was under the root
+	 */
+	public boolean remove(Node node) {
+		return root.removeChild(node);
+	}
+
+	/**
+	 * Getter for the root node. Moving it moves the whole scene
+	 * @return The root node
+	 */
+	public Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * Brings every world matrix and bounding box in the scene up to date
+	 */
+	public void update() {
+		root.updateSubtree();
+	}
+
+	/**
+	 * Lists the nodes with a mesh that are at least partly inside the camera's view frustum.
+	 * Call update() first
+	 * @param camera The camera
+	 * @param out The list to write the nodes to. It is cleared first
+	 * @return out
+	 */
+	public ArrayList<Renderable> collect(Camera camera, ArrayList<Renderable> out) {
+		out.clear();
+		culledNodes = 0;
+		collect(root, camera.getFrustumPlanes(), out);
+		return out;
+	}
+
+	private void collect(Node node, float[] planes, ArrayList<Renderable> out) {
+		if (!node.getSubtreeBoundingBox().intersectsPlanes(planes, 6)) {
+			culledNodes++;
+			return;
+		}
+		if (node.getMesh() != null) {
+			out.add(node);
+		}
+
+		ArrayList<Node> children = node.getChildren();
+		for (int i = 0; i < children.size(); i++) {
+			collect(children.get(i), planes, out);
+		}
+	}
+
+	/**
+	 * Getter for the number of subtrees collect() skipped in the last call
+	 * @return The number of culled subtrees
+	 */
+	public int getCulledNodes() {
+		return culledNodes;
+	}
+
+}
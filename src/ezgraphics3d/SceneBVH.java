@@ -0,0 +1,207 @@
+package ezgraphics3d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SceneBVH Class.
+ * A BVH over the world bounding boxes of anything Renderable (meshes, MeshInstances and the nodes
+ * of a Scene), for culling, picking and collision without looking at every one of them. Each
+ * leaf is a world box, a model matrix and a mesh that may be shared, and each mesh has its own
+ * MeshBVH over its triangles, which raycast() uses once the top level tree finds a leaf the ray might hit.
+ *
+ * Moving something does not rebuild the tree. refit() checks whose bounds version changed and only
+ * refits the nodes above them. Call build() again after adding or removing things, or if they
+ * moved so far that the tree has become loose.
+ * @author Ryan Theriot
+ */
+public class SceneBVH implements BVH.RayTest {
+
+	private ArrayList<Renderable> renderables = new ArrayList<Renderable>();
+	private BVH bvh = new BVH();
+
+	/** Each leaf's world box when the tree was last fitted, 6 floats per leaf, and its bounds version then */
+	private float[] fittedBoxes = new float[0];
+	private int[] fittedVersions = new int[0];
+
+	/** The ray being cast, used by intersect() */
+	private float rayOX, rayOY, rayOZ, rayDX, rayDY, rayDZ;
+	private int hitTriangle;
+	private Mat4 inverse = new Mat4();
+	private float[] point = new float[4];
+	private float[] direction = new float[3];
+
+	/**
+	 * Constructor Method
+	 * @param renderables The meshes, instances or nodes to build the tree over
+	 */
+	public SceneBVH(List<? extends Renderable> renderables) {
+		build(renderables);
+	}
+
+	/**
+	 * Builds the tree from scratch
+	 * @param renderables The meshes, instances or nodes to build the tree over
+	 */
+	public void build(List<? extends Renderable> renderables) {
+		this.renderables.clear();
+		this.renderables.addAll(renderables);
+
+		int count = this.renderables.size();
+		fittedBoxes = new float[count * 6];
+		fittedVersions = new int[count];
+		for (int i = 0; i < count; i++) {
+			Renderable renderable = this.renderables.get(i);
+			storeBox(i, renderable.getBoundingBox());
+			fittedVersions[i] = renderable.getBoundsVersion();
+		}
+		bvh.build(fittedBoxes, count);
+	}
+
+	/**
+	 * Refits the tree around everything whose bounds changed since the last refit, because it moved,
+	 * rotated or scaled, a parent node did, or its vertices changed
+	 * @return The number of leaves that changed
+	 */
+	public int refit() {
+		int changed = 0;
+		for (int i = 0; i < renderables.size(); i++) {
+			Renderable renderable = renderables.get(i);
+			int version = renderable.getBoundsVersion();
+			if (version != fittedVersions[i]) {
+				BoundingBox box = renderable.getBoundingBox();
+				storeBox(i, box);
+				bvh.update(i, box);
+				fittedVersions[i] = version;
+				changed++;
+			}
+		}
+		if (changed > 0) bvh.refit();
+		return changed;
+	}
+
+	private void storeBox(int leaf, BoundingBox box) {
+		int o = leaf * 6;
+		fittedBoxes[o] = box.getMinX();
+		fittedBoxes[o + 1] = box.getMinY();
+		fittedBoxes[o + 2] = box.getMinZ();
+		fittedBoxes[o + 3] = box.getMaxX();
+		fittedBoxes[o + 4] = box.getMaxY();
+		fittedBoxes[o + 5] = box.getMaxZ();
+	}
+
+	/**
+	 * Finds everything whose box is at least partly inside a set of planes, like Camera.getFrustumPlanes()
+	 * @param planes The planes, 4 floats (a, b, c, d) per plane
+	 * @param numPlanes Number of planes
+	 * @param out Cleared and filled with what was found
+	 * @return out
+	 */
+	public ArrayList<Renderable> queryPlanes(float[] planes, int numPlanes, ArrayList<Renderable> out) {
+		out.clear();
+		int count = bvh.queryPlanes(planes, numPlanes);
+		addResults(count, out);
+		return out;
+	}
+
+	/**
+	 * Finds everything inside the camera's view frustum
+	 * @param camera The camera
+	 * @param out Cleared and filled with what was found
+	 * @return out
+	 */
+	public ArrayList<Renderable> queryFrustum(Camera camera, ArrayList<Renderable> out) {
+		return queryPlanes(camera.getFrustumPlanes(), 6, out);
+	}
+
+	/**
+	 * Finds everything whose box overlaps a box
+	 * @param box The box in world space
+	 * @param out Cleared and filled with what was found
+	 * @return out
+	 */
+	public ArrayList<Renderable> queryBox(BoundingBox box, ArrayList<Renderable> out) {
+		out.clear();
+		int count = bvh.queryBox(box);
+		addResults(count, out);
+		return out;
+	}
+
+	/**
+	 * Adds what the last query found, in the order it was given to build()
+	 */
+	private void addResults(int count, ArrayList<Renderable> out) {
+		int[] results = bvh.getResults();
+		Arrays.sort(results, 0, count);
+		for (int i = 0; i < count; i++) {
+			out.add(renderables.get(results[i]));
+		}
+	}
+
+	/**
+	 * Finds the closest triangle hit by a ray in world space, of the mesh each leaf draws
+	 * @param ox Ray origin X
+	 * @param oy Ray origin Y
+	 * @param oz Ray origin Z
+	 * @param dx Ray direction X
+	 * @param dy Ray direction Y
+	 * @param dz Ray direction Z
+	 * @param maxDistance Hits farther than this, in multiples of the direction, are ignored
+	 * @param hit Filled with the hit. What it hit is null if nothing was hit
+	 * @return True if something was hit
+	 */
+	public boolean raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance, RayHit hit) {
+		rayOX = ox; rayOY = oy; rayOZ = oz;
+		rayDX = dx; rayDY = dy; rayDZ = dz;
+		hitTriangle = -1;
+
+		float t = bvh.raycast(ox, oy, oz, dx, dy, dz, maxDistance, this);
+		int leaf = bvh.getHitPrimitive();
+		if (leaf < 0) {
+			hit.set(null, null, -1, Float.POSITIVE_INFINITY, 0, 0, 0);
+			return false;
+		}
+		Renderable renderable = renderables.get(leaf);
+		hit.set(renderable, renderable.getGeometry(), hitTriangle, t, ox + dx * t, oy + dy * t, oz + dz * t);
+		return true;
+	}
+
+	/**
+	 * Moves the ray into a leaf's model space and casts it against the triangles of the mesh it draws.
+	 * The distance along the ray does not change, since the whole ray is moved by the same matrix
+	 */
+	@Override
+	public float intersect(int primitive, float maxDistance) {
+		Renderable renderable = renderables.get(primitive);
+		Mesh mesh = renderable.getGeometry();
+		if (mesh == null || !renderable.getModelMatrix().inverse(inverse)) return Float.POSITIVE_INFINITY;
+
+		inverse.transformPoint(rayOX, rayOY, rayOZ, point, 0);
+		inverse.transformDirection(rayDX, rayDY, rayDZ, direction, 0);
+
+		MeshBVH meshBVH = mesh.getBVH();
+		float t = meshBVH.raycast(point[0], point[1], point[2], direction[0], direction[1], direction[2], maxDistance);
+		if (t < maxDistance) {
+			hitTriangle = meshBVH.getHitTriangle();
+		}
+		return t;
+	}
+
+	/**
+	 * Getter for the meshes, instances or nodes in the tree
+	 * @return The leaves in the order given to build(). Do not modify the list, call build() instead
+	 */
+	public ArrayList<Renderable> getRenderables() {
+		return renderables;
+	}
+
+	/**
+	 * Getter for the top level tree
+	 * @return The BVH over the leaves' world boxes
+	 */
+	public BVH getBVH() {
+		return bvh;
+	}
+
+}
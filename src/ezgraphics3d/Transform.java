@@ -0,0 +1,174 @@
+package ezgraphics3d;
+
+/**
+ * Transform Class.
+ * A model transform made of a center (pivot), a scale, a quaternion rotation and a position.
+ * Rotating, scaling and translating only change these values. The model matrix is rebuilt
+ * from them the next time it is asked for, and only if something changed.
+ *
+ * A point v in model space ends up at  position + rotation * scale * (v - pivot),
+ * so the pivot is the point in model space that sits at the position in the world.
+ * @author Ryan Theriot
+ */
+public class Transform {
+
+	private float positionX, positionY, positionZ;
+	private float pivotX, pivotY, pivotZ;
+	private float scaleX = 1, scaleY = 1, scaleZ = 1;
+	private Quaternion rotation = new Quaternion();
+
+	private Mat4 matrix = new Mat4();
+	private boolean dirty = false;
+	private int version = 0;
+
+	/** Reused by rotate, setCenter and setPivot */
+	private Quaternion scratchRotation = new Quaternion();
+	private Mat4 inverse = new Mat4();
+	private float[] point = new float[4];
+
+	/**
+	 * Rotates about the current center. Successive calls add up.
+	 * @param xDeg The X Degree of rotation
+	 * @param yDeg The Y Degree of rotation
+	 * @param zDeg The Z Degree of rotation
+	 */
+	public void rotate(float xDeg, float yDeg, float zDeg) {
+		scratchRotation.setEuler(xDeg, yDeg, zDeg).mulInto(rotation, rotation).normalize();
+		changed();
+	}
+
+	/**
+	 * Scales about the current center. Successive calls multiply.
+	 * The scale is applied in model space, before the rotation.
+	 * @param x The X scaling
+	 * @param y The Y scaling
+	 * @param z The Z scaling
+	 */
+	public void scale(float x, float y, float z) {
+		scaleX *= x;
+		scaleY *= y;
+		scaleZ *= z;
+		changed();
+	}
+
+	/**
+	 * Moves the transform. Successive calls add up.
+	 * @param x The X translation
+	 * @param y The Y translation
+	 * @param z The Z translation
+	 */
+	public void translate(float x, float y, float z) {
+		positionX += x;
+		positionY += y;
+		positionZ += z;
+		changed();
+	}
+
+	/**
+	 * Sets the center that rotations and scaling happen around, in world coordinates.
+	 * The transformed object does not move. Ignored if the transform is scaled to zero.
+	 * @param x - X coordinate
+	 * @param y - Y coordinate
+	 * @param z - Z coordinate
+	 */
+	public void setCenter(float x, float y, float z) {
+		if (!getMatrix().inverse(inverse)) return;
+		inverse.transformPoint(x, y, z, point, 0);
+		setPivot(point[0], point[1], point[2]);
+	}
+
+	/**
+	 * Sets the center that rotations and scaling happen around, in model coordinates.
+	 * The transformed object does not move, the position is moved to where the pivot ends up.
+	 * @param x - X coordinate
+	 * @param y - Y coordinate
+	 * @param z - Z coordinate
+	 */
+	public void setPivot(float x, float y, float z) {
+		getMatrix().transformPoint(x, y, z, point, 0);
+		positionX = point[0];
+		positionY = point[1];
+		positionZ = point[2];
+		pivotX = x;
+		pivotY = y;
+		pivotZ = z;
+		changed();
+	}
+
+	/**
+	 * Returns the model matrix, rebuilding it first if the transform changed
+	 * @return The model matrix. Do not modify it
+	 */
+	public Mat4 getMatrix() {
+		if (dirty) {
+			/** T(position) * R * S * T(-pivot) */
+			float[] m = rotation.toMatrix(matrix).m;
+			m[0] *= scaleX; m[1] *= scaleY; m[2] *= scaleZ;
+			m[4] *= scaleX; m[5] *= scaleY; m[6] *= scaleZ;
+			m[8] *= scaleX; m[9] *= scaleY; m[10] *= scaleZ;
+			m[3] = positionX - (m[0] * pivotX + m[1] * pivotY + m[2] * pivotZ);
+			m[7] = positionY - (m[4] * pivotX + m[5] * pivotY + m[6] * pivotZ);
+			m[11] = positionZ - (m[8] * pivotX + m[9] * pivotY + m[10] * pivotZ);
+			dirty = false;
+		}
+		return matrix;
+	}
+
+	/**
+	 * Marks the matrix as needing to be rebuilt
+	 */
+	private void changed() {
+		dirty = true;
+		version++;
+	}
+
+	/**
+	 * Checks if the transform changed since the matrix was last built
+	 * @return True if the matrix needs to be rebuilt
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * A number that goes up every time the transform changes.
+	 * Lets other code cache things built from the matrix and know when they are stale.
+	 * @return The version of the transform
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Getter for the rotation
+	 * @return The rotation. Do not modify it
+	 */
+	public Quaternion getRotation() {
+		return rotation;
+	}
+
+	public float getPositionX() {
+		return positionX;
+	}
+
+	public float getPositionY() {
+		return positionY;
+	}
+
+	public float getPositionZ() {
+		return positionZ;
+	}
+
+	public float getScaleX() {
+		return scaleX;
+	}
+
+	public float getScaleY() {
+		return scaleY;
+	}
+
+	public float getScaleZ() {
+		return scaleZ;
+	}
+
+}
@@ -4,90 +4,154 @@ import java.awt.Color;
 import java.util.Comparator;
 
 /**
- * Triangle Class. 
+ * Triangle Class.
  * 3 Vectors makes up a Triangle.
+ * A Triangle is a lightweight view of one triangle in a Mesh. It does not store its own vertices,
+ * it reads them from the mesh's vertex and index buffers, so changing a vertex through a Triangle
+ * also moves it for every other triangle that shares it.
  * @author Ryan Theriot
  */
 
 public class Triangle {
 
-	private Vector v1, v2, v3;
+	private Mesh mesh;
+	private int index;
 	private Vector surfaceNormal;
 	private float distanceToCamera;
 	private Color color;
 
 	/**
 	 * Constructor Class
+	 * Creates a triangle that is not part of any other mesh.
+	 * It is backed by a one triangle mesh that holds just the 3 vertices
 	 * @param v1 - Vector 1
 	 * @param v2 - Vector 2
 	 * @param v3 - Vector 3
 	 */
 	public Triangle(Vector v1, Vector v2, Vector v3) {
-		this.v1 = new Vector(v1.getX(), v1.getY(), v1.getZ());
-		this.v2 = new Vector(v2.getX(), v2.getY(), v2.getZ());
-		this.v3 = new Vector(v3.getX(), v3.getY(), v3.getZ());
+		this.mesh = new Mesh(v1, v2, v3);
+		this.index = 0;
+		surfaceNormal = new Vector(0,0,0);
+	}
+
+	/**
+	 * Constructor Class
+	 * Creates a view of a triangle in a mesh. Use Mesh.getTriangle() instead
+	 * @param mesh The mesh the triangle is in
+	 * @param index Index of the triangle in the mesh
+	 */
+	Triangle(Mesh mesh, int index) {
+		this.mesh = mesh;
+		this.index = index;
 		surfaceNormal = new Vector(0,0,0);
 	}
 
 	/**
 	 * Returns this triangles vectors in an array
+	 * The vectors are copies of the vertices in the mesh, in model space
 	 * @return The vectors in this triangle in an array
 	 */
 	public Vector[] getVectors() {
-		Vector[] vertexArray = { v1, v2, v3 };
+		Vector[] vertexArray = { getV1(), getV2(), getV3() };
 		return vertexArray;
 	}
-	
+
+	/**
+	 * Returns the surface normal of the triangle, normalized.
+	 * The normal is read from the mesh's normal buffer, so it is only calculated again when the vertices change.
+	 * The normal is in the mesh's model space, it does not include the mesh's transform
+	 * @return The surface normal
+	 */
 	public Vector getSurfaceNormal () {
 
-		Vector U = new Vector (v2.getX() - v1.getX(), v2.getY() - v1.getY(), v2.getZ() - v1.getZ());
-		Vector V = new Vector (v3.getX() - v1.getX(), v3.getY() - v1.getY(), v3.getZ() - v1.getZ());
-		
-		this.surfaceNormal.setX((U.getY() * V.getZ()) - ( U.getZ() * V.getY()));
-		this.surfaceNormal.setY((U.getZ() * V.getX()) - ( U.getX() * V.getZ()));   
-		this.surfaceNormal.setZ((U.getX() * V.getY()) - ( U.getY() * V.getX()));   
+		float[] n = mesh.getNormals();
+		this.surfaceNormal.setX(n[index * 3]);
+		this.surfaceNormal.setY(n[index * 3 + 1]);
+		this.surfaceNormal.setZ(n[index * 3 + 2]);
 
 		return this.surfaceNormal;
-		
+
 	}
-	
+
 	/**
-	 * Rotates the triangle
-	 * Do use this class directly, should use the scale method on the Mesh this triangle is apart of 
+	 * Rotates the triangle's vertices in the mesh, which moves them for neighboring triangles too
+	 * Do use this class directly, should use the scale method on the Mesh this triangle is apart of
 	 * @param matrix The Rotation Matrix
 	 * @param meshCX The X-Coordinate for the center of the mesh this Triangle is apart of
 	 * @param meshCY The Y-Coordinate for the center of the mesh this Triangle is apart of
 	 * @param meshCZ The Z-Coordinate for the center of the mesh this Triangle is apart of
 	 */
 	public void rotate(float[][] matrix, float meshCX, float meshCY, float meshCZ) {
-		v1.rotate(matrix, meshCX, meshCY, meshCZ);
-		v2.rotate(matrix, meshCX, meshCY, meshCZ);
-		v3.rotate(matrix, meshCX, meshCY, meshCZ);
+		rotate(new Mat4(matrix), meshCX, meshCY, meshCZ);
 	}
-	
+
 	/**
-	 * Scales the triangle
-	 * Do use this class directly, should use the scale method on the Mesh this triangle is apart of 
+	 * Scales the triangle's vertices in the mesh, which moves them for neighboring triangles too
+	 * Do use this class directly, should use the scale method on the Mesh this triangle is apart of
 	 * @param matrix The Scale Matrix
 	 * @param meshCX The X-Coordinate for the center of the mesh this Triangle is apart of
 	 * @param meshCY The Y-Coordinate for the center of the mesh this Triangle is apart of
 	 * @param meshCZ The Z-Coordinate for the center of the mesh this Triangle is apart of
 	 */
 	public void scale(float[][] matrix, float meshCX, float meshCY, float meshCZ) {
-		v1.scale(matrix, meshCX, meshCY, meshCZ);
-		v2.scale(matrix, meshCX, meshCY, meshCZ);
-		v3.scale(matrix, meshCX, meshCY, meshCZ);
+		scale(new Mat4(matrix), meshCX, meshCY, meshCZ);
 	}
 
 	/**
-	 * Translates the triangle
-	 * Do use this class directly, should use the scale method on the Mesh this triangle is apart of 
+	 * Translates the triangle's vertices in the mesh, which moves them for neighboring triangles too
+	 * Do use this class directly, should use the scale method on the Mesh this triangle is apart of
 	 * @param matrix The Translation Matrix
 	 */
 	public void translate(float[][] matrix) {
-		v1.translate(matrix);
-		v2.translate(matrix);
-		v3.translate(matrix);
+		translate(new Mat4(matrix));
+	}
+
+	/**
+	 * Rotates the triangle without allocating
+	 * @param matrix The Rotation Matrix
+	 * @param meshCX The X-Coordinate for the center of the mesh this Triangle is apart of
+	 * @param meshCY The Y-Coordinate for the center of the mesh this Triangle is apart of
+	 * @param meshCZ The Z-Coordinate for the center of the mesh this Triangle is apart of
+	 */
+	public void rotate(Mat4 matrix, float meshCX, float meshCY, float meshCZ) {
+		for (int i = 0; i < 3; i++) transformVertex(i, matrix, meshCX, meshCY, meshCZ);
+	}
+
+	/**
+	 * Scales the triangle without allocating
+	 * @param matrix The Scale Matrix
+	 * @param meshCX The X-Coordinate for the center of the mesh this Triangle is apart of
+	 * @param meshCY The Y-Coordinate for the center of the mesh this Triangle is apart of
+	 * @param meshCZ The Z-Coordinate for the center of the mesh this Triangle is apart of
+	 */
+	public void scale(Mat4 matrix, float meshCX, float meshCY, float meshCZ) {
+		for (int i = 0; i < 3; i++) transformVertex(i, matrix, meshCX, meshCY, meshCZ);
+	}
+
+	/**
+	 * Translates the triangle without allocating
+	 * @param matrix The Translation Matrix
+	 */
+	public void translate(Mat4 matrix) {
+		for (int i = 0; i < 3; i++) transformVertex(i, matrix, 0, 0, 0);
+	}
+
+	/**
+	 * Applies a matrix to one of the triangle's vertices in the mesh, around the given center
+	 */
+	private void transformVertex(int corner, Mat4 matrix, float cX, float cY, float cZ) {
+		float[] m = matrix.m;
+		float[] p = mesh.getPositions();
+		int v = mesh.getIndices()[index * 3 + corner] * 3;
+
+		float x = p[v] - cX;
+		float y = p[v + 1] - cY;
+		float z = p[v + 2] - cZ;
+
+		p[v]     = m[0] * x + m[1] * y + m[2] * z + m[3] + cX;
+		p[v + 1] = m[4] * x + m[5] * y + m[6] * z + m[7] + cY;
+		p[v + 2] = m[8] * x + m[9] * y + m[10] * z + m[11] + cZ;
+		mesh.geometryChanged();
 	}
 
 	/**
@@ -96,47 +160,115 @@ public class Triangle {
 	 *  @param camera The Camera to obtain it's location
 	 */
 	public void setDistanceToCamera(Camera camera) {
-		
-		float xAvg = (v1.getX() + v2.getX() + v3.getX() ) / 3 ;
-		float yAvg = (v1.getY() + v2.getY() + v3.getY() ) / 3 ;
-		float zAvg = (v1.getZ() + v2.getZ() + v3.getZ() ) / 3 ;
-		
-		float cX = camera.getCameraLocation().getX();
-		float cY = camera.getCameraLocation().getY();
-		float cZ = camera.getCameraLocation().getZ();
-		
+
+		Vector cLoc = camera.getCameraLocation();
+		setDistanceToCamera(cLoc.getX(), cLoc.getY(), cLoc.getZ());
+
+	}
+
+	/**
+	 *  Same as setDistanceToCamera(Camera) but takes the camera location directly,
+	 *  so the location only has to be looked up once per frame
+	 *  @param cX The X Coordinate of the camera location
+	 *  @param cY The Y Coordinate of the camera location
+	 *  @param cZ The Z Coordinate of the camera location
+	 */
+	public void setDistanceToCamera(float cX, float cY, float cZ) {
+
+		float[] p = mesh.getPositions();
+		int[] ind = mesh.getIndices();
+		int a = ind[index * 3] * 3;
+		int b = ind[index * 3 + 1] * 3;
+		int c = ind[index * 3 + 2] * 3;
+
+		float xLocal = (p[a] + p[b] + p[c] ) / 3 ;
+		float yLocal = (p[a + 1] + p[b + 1] + p[c + 1] ) / 3 ;
+		float zLocal = (p[a + 2] + p[b + 2] + p[c + 2] ) / 3 ;
+
+		/** The centroid is in model space, move it to the world with the mesh's model matrix */
+		float[] m = mesh.getModelMatrix().m;
+		float xAvg = m[0] * xLocal + m[1] * yLocal + m[2] * zLocal + m[3];
+		float yAvg = m[4] * xLocal + m[5] * yLocal + m[6] * zLocal + m[7];
+		float zAvg = m[8] * xLocal + m[9] * yLocal + m[10] * zLocal + m[11];
+
 		this.distanceToCamera = (float) Math.sqrt(Math.pow((xAvg - cX), 2) +  Math.pow((yAvg - cY), 2) + Math.pow((zAvg - cZ), 2) );
-		
+
 	}
-	
+
 	public float getDistanceToCamera () {
 		return distanceToCamera;
 	}
-	
+
+	/**
+	 * Getter for the mesh this triangle is a view of
+	 * @return The Mesh
+	 */
+	public Mesh getMesh() {
+		return mesh;
+	}
+
+	/**
+	 * Getter for this triangle's index in its mesh
+	 * @return The index of the triangle
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Getter for the index of one of the triangle's vertices in its mesh
+	 * @param corner 0, 1 or 2
+	 * @return The vertex index
+	 */
+	public int getVertexIndex(int corner) {
+		return mesh.getIndices()[index * 3 + corner];
+	}
+
 	public Vector getV1() {
-		return v1;
+		return getVertex(0);
 	}
 
 	public void setV1(Vector v1) {
-		this.v1 = v1;
+		setVertex(0, v1);
 	}
 
 	public Vector getV2() {
-		return v2;
+		return getVertex(1);
 	}
 
 	public void setV2(Vector v2) {
-		this.v2 = v2;
+		setVertex(1, v2);
 	}
 
 	public Vector getV3() {
-		return v3;
+		return getVertex(2);
 	}
 
 	public void setV3(Vector v3) {
-		this.v3 = v3;
+		setVertex(2, v3);
+	}
+
+	/**
+	 * Returns a copy of one of the triangle's vertices
+	 */
+	private Vector getVertex(int corner) {
+		float[] p = mesh.getPositions();
+		int v = getVertexIndex(corner) * 3;
+		return new Vector(p[v], p[v + 1], p[v + 2]);
 	}
-	
+
+	/**
+	 * Moves one of the triangle's vertices in the mesh
+	 */
+	private void setVertex(int corner, Vector vector) {
+		float[] p = mesh.getPositions();
+		int v = getVertexIndex(corner) * 3;
+		p[v] = vector.getX();
+		p[v + 1] = vector.getY();
+		p[v + 2] = vector.getZ();
+		mesh.geometryChanged();
+	}
+
 	public Color getColor() {
 		return color;
 	}
@@ -144,7 +276,7 @@ public class Triangle {
 	public void setColor(Color color) {
 		this.color = color;
 	}
-	
+
 	/**
 	 * Comparator for calculating which triangles are closer to camera
 	 */
@@ -155,8 +287,8 @@ public class Triangle {
 		 * Compare method for the comparator
 		 * @param t1 The first triangle
 		 * @param t2 The second triangle
-		 * @return Returns -1 t1 is closer to camera. 
-		 * Return 1 if t2 is closer to camera. 
+		 * @return Returns -1 t1 is closer to camera.
+		 * Return 1 if t2 is closer to camera.
 		 * Returns 0 if they are the same distance.
 		 */
 		public int compare(Triangle t1, Triangle t2) {
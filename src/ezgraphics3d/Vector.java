@@ -94,6 +94,53 @@ public class Vector {
 		this.w = newValues[3][0];
 	}
 
+	/**
+	 * Rotates the vector around the center of its mesh without allocating.
+	 * @param matrix The rotation matrix 
+	 * @param meshCenterX The X center of the mesh this vector is apart of
+	 * @param meshCenterY The Y center of the mesh this vector is apart of
+	 * @param meshCenterZ The Z center of the mesh this vector is apart of
+	 */
+	public void rotate(Mat4 matrix, float meshCenterX, float meshCenterY, float meshCenterZ) {
+		transformAround(matrix, meshCenterX, meshCenterY, meshCenterZ);
+	}
+
+	/**
+	 * Scales the vector around the center of its mesh without allocating.
+	 * @param matrix The scale matrix 
+	 * @param meshCenterX The X center of the mesh this vector is apart of
+	 * @param meshCenterY The Y center of the mesh this vector is apart of
+	 * @param meshCenterZ The Z center of the mesh this vector is apart of
+	 */
+	public void scale(Mat4 matrix, float meshCenterX, float meshCenterY, float meshCenterZ) {
+		transformAround(matrix, meshCenterX, meshCenterY, meshCenterZ);
+	}
+
+	/**
+	 * Translate the vector without allocating.
+	 * @param matrix The translation matrix to apply
+	 */
+	public void translate(Mat4 matrix) {
+		transformAround(matrix, 0, 0, 0);
+	}
+
+	/**
+	 * Applies a matrix to the vector after moving the given center to the origin,
+	 * then moves it back.
+	 */
+	private void transformAround(Mat4 matrix, float centerX, float centerY, float centerZ) {
+		float[] m = matrix.m;
+		float xt = this.x - centerX;
+		float yt = this.y - centerY;
+		float zt = this.z - centerZ;
+		float wt = this.w;
+
+		this.x = m[0] * xt + m[1] * yt + m[2] * zt + m[3] * wt + centerX;
+		this.y = m[4] * xt + m[5] * yt + m[6] * zt + m[7] * wt + centerY;
+		this.z = m[8] * xt + m[9] * yt + m[10] * zt + m[11] * wt + centerZ;
+		this.w = m[12] * xt + m[13] * yt + m[14] * zt + m[15] * wt;
+	}
+
 	public Vector getNormal() {
 		float magnitude = (float) Math.sqrt(Math.pow(this.x, 2) + Math.pow(this.y, 2) + Math.pow(this.z, 2));
 		Vector normal = new Vector (this.x / magnitude, this.y / magnitude, this.z / magnitude);
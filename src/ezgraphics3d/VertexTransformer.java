@@ -0,0 +1,118 @@
+package ezgraphics3d;
+
+/**
+ * VertexTransformer Class.
+ * Transforms vertex positions from primitive float buffers to the screen using one combined matrix.
+ * The view, perspective and viewport matrices are concatenated once per frame so every vertex
+ * only needs a single matrix multiply, and the results are written into caller owned buffers
+ * so nothing is allocated per vertex.
+ * @author Ryan Theriot
+ */
+public class VertexTransformer {
+
+	/** The view, perspective and viewport matrices combined */
+	private Mat4 frameMatrix = new Mat4();
+	/** The frame matrix combined with the current model matrix */
+	private Mat4 matrix = new Mat4();
+
+	/**
+	 * Sets the combined matrix from the view, perspective and viewport matrices
+	 * Any model matrix set before is cleared
+	 * @param view The View Matrix
+	 * @param perspective The Perspective Matrix
+	 * @param viewport The Viewport Matrix
+	 */
+	public void setMatrices(Mat4 view, Mat4 perspective, Mat4 viewport) {
+		viewport.mulInto(perspective, frameMatrix).mulInto(view, frameMatrix);
+		matrix.set(frameMatrix);
+	}
+
+	/**
+	 * Folds a mesh's model matrix into the combined matrix, so the mesh's vertices
+	 * go from model space to the screen in the same single multiply
+	 * @param model The Model Matrix
+	 */
+	public void setModelMatrix(Mat4 model) {
+		frameMatrix.mulInto(model, matrix);
+	}
+
+	/**
+	 * Sets the combined matrix directly
+	 * @param matrix The matrix to copy
+	 */
+	public void setMatrix(Mat4 matrix) {
+		this.frameMatrix.set(matrix);
+		this.matrix.set(matrix);
+	}
+
+	/**
+	 * Transforms vertices to screen space.
+	 * Each output vertex is 4 floats: screen x, screen y, depth, and w before the divide.
+	 * A w of zero or less means the vertex was on or behind the camera.
+	 * @param positions Input positions, 3 floats (x, y, z) per vertex
+	 * @param vertexCount Number of vertices to transform
+	 * @param out Output buffer, must hold 4 * vertexCount floats
+	 */
+	public void transform(float[] positions, int vertexCount, float[] out) {
+		transform(positions, vertexCount, out, 0);
+	}
+
+	/**
+	 * Transforms vertices to screen space, writing them into the output buffer starting at an offset
+	 * @param positions Input positions, 3 floats (x, y, z) per vertex
+	 * @param vertexCount Number of vertices to transform
+	 * @param out Output buffer, must hold outOffset + 4 * vertexCount floats
+	 * @param outOffset Where in the output buffer to write the first vertex
+	 */
+	public void transform(float[] positions, int vertexCount, float[] out, int outOffset) {
+
+		float[] m = matrix.m;
+		float m00 = m[0], m01 = m[1], m02 = m[2], m03 = m[3];
+		float m10 = m[4], m11 = m[5], m12 = m[6], m13 = m[7];
+		float m20 = m[8], m21 = m[9], m22 = m[10], m23 = m[11];
+		float m30 = m[12], m31 = m[13], m32 = m[14], m33 = m[15];
+
+		for (int i = 0, in = 0, o = outOffset; i < vertexCount; i++, in += 3, o += 4) {
+			float x = positions[in];
+			float y = positions[in + 1];
+			float z = positions[in + 2];
+
+			float w = m30 * x + m31 * y + m32 * z + m33;
+			float invW = 1 / w;
+
+			out[o] = (m00 * x + m01 * y + m02 * z + m03) * invW;
+			out[o + 1] = (m10 * x + m11 * y + m12 * z + m13) * invW;
+			out[o + 2] = (m20 * x + m21 * y + m22 * z + m23) * invW;
+			out[o + 3] = w;
+		}
+	}
+
+	/**
+	 * Transforms vertices with the combined matrix but does not divide by w, so they can be clipped.
+	 * Each output vertex is 4 floats: x, y, depth and w, all still multiplied by w.
+	 * @param positions Input positions, 3 floats (x, y, z) per vertex
+	 * @param vertexCount Number of vertices to transform
+	 * @param out Output buffer, must hold outOffset + 4 * vertexCount floats
+	 * @param outOffset Where in the output buffer to write the first vertex
+	 */
+	public void transformHomogeneous(float[] positions, int vertexCount, float[] out, int outOffset) {
+
+		float[] m = matrix.m;
+		float m00 = m[0], m01 = m[1], m02 = m[2], m03 = m[3];
+		float m10 = m[4], m11 = m[5], m12 = m[6], m13 = m[7];
+		float m20 = m[8], m21 = m[9], m22 = m[10], m23 = m[11];
+		float m30 = m[12], m31 = m[13], m32 = m[14], m33 = m[15];
+
+		for (int i = 0, in = 0, o = outOffset; i < vertexCount; i++, in += 3, o += 4) {
+			float x = positions[in];
+			float y = positions[in + 1];
+			float z = positions[in + 2];
+
+			out[o] = m00 * x + m01 * y + m02 * z + m03;
+			out[o + 1] = m10 * x + m11 * y + m12 * z + m13;
+			out[o + 2] = m20 * x + m21 * y + m22 * z + m23;
+			out[o + 3] = m30 * x + m31 * y + m32 * z + m33;
+		}
+	}
+
+}